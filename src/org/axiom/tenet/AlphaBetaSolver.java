@@ -0,0 +1,284 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alpha-beta search for two-player constant-sum sequential games.
+ * Values are the first player's payoff: the first player maximizes and the
+ * second minimizes. Chance nodes are averaged with a full window.
+ *
+ * The transposition table is indexed directly by compiled node id, so a node
+ * reached along several paths (a DAG-shaped tree) is searched once. Entries
+ * remember the best move, which is tried first on later visits and on the
+ * next pass of iterative deepening.
+ */
+class AlphaBetaSolver {
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final byte NONE = 0;
+    private static final byte EXACT = 1;
+    private static final byte LOWER = 2;
+    private static final byte UPPER = 3;
+
+    static class Result {
+        final double value; // first player's payoff
+        final List<String> principalVariation;
+        final long nodesVisited;
+        final int depthReached; // UNLIMITED when the search reached every terminal
+        final boolean complete;
+
+        Result(double value, List<String> principalVariation, long nodesVisited, int depthReached,
+                boolean complete) {
+            this.value = value;
+            this.principalVariation = principalVariation;
+            this.nodesVisited = nodesVisited;
+            this.depthReached = depthReached;
+            this.complete = complete;
+        }
+    }
+
+    private final CompiledGameTree tree;
+    private final double horizonValue;
+
+    // Transposition table, one entry per node id
+    private final double[] ttValue;
+    private final byte[] ttFlag;
+    private final int[] ttDepth;
+    private final int[] ttBest;
+
+    private long nodesVisited;
+    private boolean horizonHit;
+
+    AlphaBetaSolver(CompiledGameTree tree) {
+        this.tree = tree;
+        this.ttValue = new double[tree.nodeCount];
+        this.ttFlag = new byte[tree.nodeCount];
+        this.ttDepth = new int[tree.nodeCount];
+        this.ttBest = new int[tree.nodeCount];
+
+        // Positions cut off by a depth limit are scored halfway between the
+        // best and worst outcomes, since the tree carries no evaluation function
+        double lowest = Double.POSITIVE_INFINITY;
+        double highest = Double.NEGATIVE_INFINITY;
+        for (int node = 0; node < tree.nodeCount; node++) {
+            if (tree.owner[node] == GameTree.TERMINAL) {
+                lowest = Math.min(lowest, tree.payoff[node * 2]);
+                highest = Math.max(highest, tree.payoff[node * 2]);
+            }
+        }
+        this.horizonValue = lowest <= highest ? (lowest + highest) / 2 : 0;
+    }
+
+    /**
+     * The total every terminal pays out if the game has two players and one
+     * player's gain is exactly the other's loss; NaN otherwise.
+     */
+    static double constantSum(CompiledGameTree tree) {
+        if (tree.numPlayers != 2)
+            return Double.NaN;
+        double total = Double.NaN;
+        for (int node = 0; node < tree.nodeCount; node++) {
+            if (tree.owner[node] != GameTree.TERMINAL)
+                continue;
+            double sum = tree.payoff[node * 2] + tree.payoff[node * 2 + 1];
+            if (Double.isNaN(total)) {
+                total = sum;
+            } else if (Math.abs(sum - total) > 1e-9) {
+                return Double.NaN;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Searches to maxDepth plies (UNLIMITED for the whole tree). With iterative
+     * deepening the limit grows one ply at a time and stops early once a pass
+     * no longer reaches the horizon.
+     */
+    Result solve(int maxDepth, boolean iterativeDeepening) {
+        double value = 0;
+        int depth = iterativeDeepening ? 1 : maxDepth;
+        while (true) {
+            horizonHit = false;
+            value = search(0, depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            if (!horizonHit || depth >= maxDepth)
+                break;
+            depth++;
+        }
+        boolean complete = !horizonHit;
+        int reached = complete ? UNLIMITED : depth;
+        return new Result(value, principalVariation(reached), nodesVisited, reached, complete);
+    }
+
+    private double search(int node, int depth, double alpha, double beta) {
+        nodesVisited++;
+        int who = tree.owner[node];
+        if (who == GameTree.TERMINAL) {
+            return tree.payoff[node * 2];
+        }
+        if (depth == 0) {
+            horizonHit = true;
+            return horizonValue;
+        }
+
+        if (ttFlag[node] != NONE && ttDepth[node] >= depth) {
+            double stored = ttValue[node];
+            if (ttFlag[node] == EXACT) {
+                horizonHit |= ttDepth[node] != UNLIMITED;
+                return stored;
+            }
+            if (ttFlag[node] == LOWER)
+                alpha = Math.max(alpha, stored);
+            else
+                beta = Math.min(beta, stored);
+            if (alpha >= beta) {
+                horizonHit |= ttDepth[node] != UNLIMITED;
+                return stored;
+            }
+        }
+
+        boolean outerHorizon = horizonHit;
+        horizonHit = false;
+        int from = tree.firstEdge[node];
+        int childDepth = depth == UNLIMITED ? UNLIMITED : depth - 1;
+
+        if (who == GameTree.CHANCE) {
+            double value = 0;
+            for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                value += tree.edgeProbability[e] * search(tree.edgeTarget[e], childDepth,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            }
+            store(node, value, EXACT, depth, ttBest[node]);
+            horizonHit |= outerHorizon;
+            return value;
+        }
+
+        boolean maximizing = who == 0;
+        double originalAlpha = alpha;
+        double originalBeta = beta;
+        double best = maximizing ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        int bestMove = -1;
+        for (int a : orderMoves(node, maximizing)) {
+            double value = search(tree.edgeTarget[from + a], childDepth, alpha, beta);
+            if (maximizing ? value > best : value < best) {
+                best = value;
+                bestMove = a;
+            }
+            if (maximizing)
+                alpha = Math.max(alpha, best);
+            else
+                beta = Math.min(beta, best);
+            if (alpha >= beta)
+                break;
+        }
+
+        byte flag = best <= originalAlpha ? UPPER : best >= originalBeta ? LOWER : EXACT;
+        store(node, best, flag, depth, bestMove);
+        horizonHit |= outerHorizon;
+        return best;
+    }
+
+    private void store(int node, double value, byte flag, int depth, int bestMove) {
+        ttValue[node] = value;
+        ttFlag[node] = flag;
+        // A subtree searched without touching the horizon is valid at any depth
+        ttDepth[node] = horizonHit ? depth : UNLIMITED;
+        ttBest[node] = bestMove;
+    }
+
+    /**
+     * Remembered best move first, then the rest ordered by what is already
+     * known about each child: terminal payoffs and earlier table entries.
+     */
+    private int[] orderMoves(int node, boolean maximizing) {
+        int from = tree.firstEdge[node];
+        int count = tree.actionCount(node);
+        int[] moves = new int[count];
+        double[] keys = new double[count];
+        for (int a = 0; a < count; a++) {
+            int child = tree.edgeTarget[from + a];
+            moves[a] = a;
+            if (tree.owner[child] == GameTree.TERMINAL) {
+                keys[a] = tree.payoff[child * 2];
+            } else if (ttFlag[child] != NONE) {
+                keys[a] = ttValue[child];
+            } else {
+                keys[a] = horizonValue;
+            }
+            if (!maximizing)
+                keys[a] = -keys[a];
+        }
+
+        // Insertion sort keeps declaration order among equal keys
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            double key = keys[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] < key) {
+                moves[j + 1] = moves[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            keys[j + 1] = key;
+        }
+
+        if (ttFlag[node] != NONE && ttBest[node] >= 0) {
+            int remembered = ttBest[node];
+            int at = 0;
+            while (moves[at] != remembered)
+                at++;
+            System.arraycopy(moves, 0, moves, 1, at);
+            moves[0] = remembered;
+        }
+        return moves;
+    }
+
+    /**
+     * Follows remembered best moves from the root for at most 'plies' moves,
+     * since entries past the horizon are left over from shallower passes;
+     * chance nodes follow their most likely outcome, shown in brackets.
+     */
+    private List<String> principalVariation(int plies) {
+        List<String> path = new ArrayList<>();
+        int node = 0;
+        boolean[] seen = new boolean[tree.nodeCount];
+        while (tree.owner[node] != GameTree.TERMINAL && !seen[node] && path.size() < plies) {
+            seen[node] = true;
+            int from = tree.firstEdge[node];
+            if (tree.owner[node] == GameTree.CHANCE) {
+                int likeliest = from;
+                for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                    if (tree.edgeProbability[e] > tree.edgeProbability[likeliest])
+                        likeliest = e;
+                }
+                path.add("[" + tree.edgeAction[likeliest] + "]");
+                node = tree.edgeTarget[likeliest];
+            } else {
+                if (ttFlag[node] == NONE || ttBest[node] < 0)
+                    break;
+                path.add(tree.edgeAction[from + ttBest[node]]);
+                node = tree.edgeTarget[from + ttBest[node]];
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Number of nodes in the fully unrolled tree, counting a shared node once
+     * per path that reaches it. Returned as a double since it can be enormous.
+     */
+    static double unrolledSize(CompiledGameTree tree) {
+        double[] paths = new double[tree.nodeCount];
+        paths[0] = 1;
+        double total = 0;
+        for (int node : tree.topologicalOrder) {
+            total += paths[node];
+            for (int e = tree.firstEdge[node]; e < tree.firstEdge[node + 1]; e++) {
+                paths[tree.edgeTarget[e]] += paths[node];
+            }
+        }
+        return total;
+    }
+}
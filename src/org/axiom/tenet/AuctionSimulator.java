@@ -0,0 +1,163 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Monte Carlo runs of a sealed-bid auction for one item among bidders with
+ * private values drawn independently from uniform(low, high).
+ *
+ * Each run draws every value into a primitive array, turns the whole array
+ * into bids, then finds the winner and price in one pass, so the work per
+ * bidder is a few array reads and writes. Without a bid function bidders
+ * follow the symmetric risk-neutral equilibrium, with F(v) = (v - low) /
+ * (high - low) and n bidders:
+ * <pre>
+ * first_price    low + (n - 1) / n * (v - low)
+ * second_price   v
+ * all_pay        F(v)^(n - 1) * (v - (v - low) / n)
+ * </pre>
+ * By revenue equivalence all three then raise low + (high - low)(n - 1) /
+ * (n + 1) on average.
+ *
+ * Runs go in fixed blocks, each drawing from its own generator split off the
+ * seed in block order, and the statistics are summed in run order, so
+ * results do not depend on the thread count.
+ */
+class AuctionSimulator {
+    static final String FIRST_PRICE = "first_price";
+    static final String SECOND_PRICE = "second_price";
+    static final String ALL_PAY = "all_pay";
+    static final List<String> FORMATS = Arrays.asList(FIRST_PRICE, SECOND_PRICE, ALL_PAY);
+    private static final int BLOCK = 64; // runs per worker task
+
+    /** A bidder's bid given their value; not thread-safe. */
+    interface BidFunction {
+        double of(double value);
+    }
+
+    static class Result {
+        final double revenue; // mean over runs
+        final double revenueDeviation; // standard deviation over runs
+        final double efficiency; // mean of the winner's value over the highest value
+        final int efficientRuns; // runs won by a bidder with the highest value
+        final double surplus; // mean of the winner's value less everything paid
+        final int runs;
+
+        Result(double revenue, double revenueDeviation, double efficiency, int efficientRuns, double surplus,
+                int runs) {
+            this.revenue = revenue;
+            this.revenueDeviation = revenueDeviation;
+            this.efficiency = efficiency;
+            this.efficientRuns = efficientRuns;
+            this.surplus = surplus;
+            this.runs = runs;
+        }
+    }
+
+    /** Mean revenue when everyone bids in equilibrium, the same for every format. */
+    static double equilibriumRevenue(int bidders, double low, double high) {
+        return low + (high - low) * (bidders - 1) / (bidders + 1);
+    }
+
+    /**
+     * Simulates the auction; 'workers' gives each thread its bid function,
+     * or is null for equilibrium bids.
+     */
+    static Result simulate(String format, int bidders, double low, double high, Supplier<BidFunction> workers,
+            int runs, long seed, int threads) {
+        double[] revenue = new double[runs];
+        double[] efficiency = new double[runs];
+        double[] surplus = new double[runs];
+        boolean[] efficient = new boolean[runs];
+        ThreadLocal<BidFunction> local = workers == null ? null : ThreadLocal.withInitial(workers);
+        SplittableRandom root = new SplittableRandom(seed);
+        List<Runnable> blocks = new ArrayList<>();
+        for (int start = 0; start < runs; start += BLOCK) {
+            int from = start;
+            int to = Math.min(runs, start + BLOCK);
+            SplittableRandom random = root.split();
+            blocks.add(() -> {
+                double[] value = new double[bidders];
+                double[] bid = new double[bidders];
+                BidFunction function = local == null ? null : local.get();
+                for (int run = from; run < to; run++) {
+                    for (int i = 0; i < bidders; i++) {
+                        value[i] = low + (high - low) * random.nextDouble();
+                    }
+                    if (function == null) {
+                        equilibriumBids(format, value, bid, low, high);
+                    } else {
+                        for (int i = 0; i < bidders; i++) {
+                            bid[i] = function.of(value[i]);
+                        }
+                    }
+
+                    // Highest bid wins, ties to the lower index; NaN never wins
+                    int winner = 0;
+                    double top = Double.NEGATIVE_INFINITY;
+                    double second = Double.NEGATIVE_INFINITY;
+                    double highest = value[0];
+                    double paid = 0;
+                    for (int i = 0; i < bidders; i++) {
+                        double b = bid[i];
+                        if (b > top) {
+                            second = top;
+                            top = b;
+                            winner = i;
+                        } else if (b > second) {
+                            second = b;
+                        }
+                        highest = Math.max(highest, value[i]);
+                        paid += b;
+                    }
+                    double price = format.equals(FIRST_PRICE) ? top : format.equals(SECOND_PRICE) ? second : paid;
+                    revenue[run] = price;
+                    efficiency[run] = highest == 0 ? 1 : value[winner] / highest;
+                    efficient[run] = value[winner] == highest;
+                    surplus[run] = value[winner] - price;
+                }
+            });
+        }
+        ParallelBlocks.run(blocks, threads);
+
+        double revenueSum = 0;
+        double efficiencySum = 0;
+        double surplusSum = 0;
+        int efficientRuns = 0;
+        for (int run = 0; run < runs; run++) {
+            revenueSum += revenue[run];
+            efficiencySum += efficiency[run];
+            surplusSum += surplus[run];
+            if (efficient[run])
+                efficientRuns++;
+        }
+        double mean = revenueSum / runs;
+        double squares = 0;
+        for (int run = 0; run < runs; run++) {
+            squares += (revenue[run] - mean) * (revenue[run] - mean);
+        }
+        double deviation = runs > 1 ? Math.sqrt(squares / (runs - 1)) : 0;
+        return new Result(mean, deviation, efficiencySum / runs, efficientRuns, surplusSum / runs, runs);
+    }
+
+    private static void equilibriumBids(String format, double[] value, double[] bid, double low, double high) {
+        int n = value.length;
+        if (format.equals(FIRST_PRICE)) {
+            double shade = (n - 1.0) / n;
+            for (int i = 0; i < n; i++) {
+                bid[i] = low + shade * (value[i] - low);
+            }
+        } else if (format.equals(SECOND_PRICE)) {
+            System.arraycopy(value, 0, bid, 0, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                double rank = (value[i] - low) / (high - low);
+                bid[i] = Math.pow(rank, n - 1) * (value[i] - (value[i] - low) / n);
+            }
+        }
+    }
+}
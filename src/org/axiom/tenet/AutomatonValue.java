@@ -0,0 +1,20 @@
+package org.axiom.tenet;
+
+/**
+ * Runtime value of an automaton declaration. Action names are only checked
+ * when the automaton is played in a particular game.
+ */
+class AutomatonValue {
+    final String name;
+    final Stmt.Automaton declaration;
+
+    AutomatonValue(Stmt.Automaton declaration) {
+        this.name = declaration.name.lexeme;
+        this.declaration = declaration;
+    }
+
+    @Override
+    public String toString() {
+        return "<automaton " + name + ">";
+    }
+}
@@ -1,12 +1,25 @@
 package org.axiom.tenet;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Backward induction solver for sequential games.
  * Finds subgame perfect equilibrium by working backwards from terminal nodes.
+ *
+ * Works on the compiled tree: each distinct node is solved once, children
+ * before parents. Node values are kept between calls so that after some leaf
+ * payoffs change, resolve() recomputes only the ancestors of those leaves.
+ *
+ * solve(threads) groups nodes by height (longest path to a leaf). Nodes of
+ * one height only read children of lower heights, so each level is split
+ * across a fork/join pool; the finished levels act as the shared memo for
+ * nodes reached along several paths. Every node is computed exactly as in
+ * the serial pass, so the result, ties included, is the same.
  */
 class BackwardInductionSolver {
+    // Nodes per parallel block; levels no larger are solved on the calling thread
+    private static final int PARALLEL_GRAIN = 256;
 
     static class Solution {
         final List<String> path; // Sequence of actions
@@ -18,82 +31,206 @@ class BackwardInductionSolver {
         }
     }
 
+    private final CompiledGameTree tree;
+    private final int players;
+    private final double[] value; // value[node * players + p]
+    private final int[] choice; // chosen move, or likeliest outcome at chance nodes
+
+    // Built on the first incremental solve
+    private int[] firstParent;
+    private int[] parents;
+    private int[] position; // index of each node in the topological order
+
+    int lastRecomputed; // nodes evaluated by the most recent solve
+
+    BackwardInductionSolver(CompiledGameTree tree) {
+        this.tree = tree;
+        this.players = tree.numPlayers;
+        this.value = new double[tree.nodeCount * players];
+        this.choice = new int[tree.nodeCount];
+    }
+
     /**
      * Solve the game using backward induction.
      * Returns the subgame perfect equilibrium path and payoffs.
      */
-    Solution solve(SequentialGameValue game) {
-        if (game.rootNodeName == null) {
-            return new Solution(new ArrayList<>(), new ArrayList<>());
+    Solution solve() {
+        int[] order = tree.topologicalOrder;
+        for (int i = order.length - 1; i >= 0; i--) {
+            solveNode(order[i]);
         }
-
-        // Memoize solutions for each node
-        Map<String, Solution> solutions = new HashMap<>();
-
-        return solveNode(game, game.rootNodeName, solutions, new ArrayList<>());
+        lastRecomputed = order.length;
+        return solution();
     }
 
-    private Solution solveNode(SequentialGameValue game, String nodeName,
-            Map<String, Solution> memo, List<String> pathSoFar) {
-        if (memo.containsKey(nodeName)) {
-            return memo.get(nodeName);
+    /**
+     * Solves with the given number of threads; one thread is solve().
+     */
+    Solution solve(int threads) {
+        if (threads <= 1)
+            return solve();
+
+        int[] order = tree.topologicalOrder;
+        int[] height = new int[tree.nodeCount];
+        int maxHeight = 0;
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            for (int e = tree.firstEdge[node]; e < tree.firstEdge[node + 1]; e++) {
+                height[node] = Math.max(height[node], height[tree.edgeTarget[e]] + 1);
+            }
+            maxHeight = Math.max(maxHeight, height[node]);
         }
 
-        Stmt.GameNode node = game.nodes.get(nodeName);
-        if (node == null || node.moves.isEmpty()) {
-            // Dead end - shouldn't happen in well-formed games
-            return new Solution(new ArrayList<>(), new ArrayList<>());
+        // Bucket nodes by height (counting sort)
+        int[] levelStart = new int[maxHeight + 2];
+        for (int node : order) {
+            levelStart[height[node] + 1]++;
+        }
+        for (int h = 0; h <= maxHeight; h++) {
+            levelStart[h + 1] += levelStart[h];
+        }
+        int[] byLevel = new int[order.length];
+        int[] fill = Arrays.copyOf(levelStart, maxHeight + 1);
+        for (int node : order) {
+            byLevel[fill[height[node]]++] = node;
         }
 
-        // Find the player index for this node
-        int playerIndex = getPlayerIndex(game, node.player);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int h = 0; h <= maxHeight; h++) {
+                int first = levelStart[h];
+                ParallelBlocks.forRanges(pool, levelStart[h + 1] - first, PARALLEL_GRAIN, (from, to) -> {
+                    for (int i = first + from; i < first + to; i++) {
+                        solveNode(byLevel[i]);
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+        lastRecomputed = order.length;
+        return solution();
+    }
 
-        // Evaluate all moves
-        Solution bestSolution = null;
-        String bestAction = null;
+    /**
+     * Re-solves after the payoffs of the given leaves changed, recomputing
+     * only nodes on a path from the root to one of them. solve() must have
+     * run once before.
+     */
+    Solution resolve(int[] changedLeaves) {
+        if (position == null)
+            indexParents();
+
+        // Collect the changed leaves and all their ancestors
+        boolean[] dirty = new boolean[tree.nodeCount];
+        int[] stack = new int[tree.nodeCount];
+        int top = 0;
+        int count = 0;
+        for (int leaf : changedLeaves) {
+            if (position[leaf] >= 0 && !dirty[leaf]) {
+                dirty[leaf] = true;
+                stack[top++] = leaf;
+            }
+        }
+        int[] affected = new int[tree.nodeCount];
+        while (top > 0) {
+            int node = stack[--top];
+            affected[count++] = node;
+            for (int i = firstParent[node]; i < firstParent[node + 1]; i++) {
+                int parent = parents[i];
+                if (!dirty[parent]) {
+                    dirty[parent] = true;
+                    stack[top++] = parent;
+                }
+            }
+        }
 
-        for (Stmt.GameMove move : node.moves) {
-            Solution moveSolution;
+        // Children before parents: descending topological position
+        Integer[] byPosition = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byPosition[i] = affected[i];
+        }
+        Arrays.sort(byPosition, (a, b) -> position[b] - position[a]);
+        for (int node : byPosition) {
+            solveNode(node);
+        }
+        lastRecomputed = count;
+        return solution();
+    }
 
-            if (move.isTerminal()) {
-                // Terminal node - payoffs are known
-                moveSolution = new Solution(new ArrayList<>(), move.payoffs);
-            } else {
-                // Recursive call to child node
-                List<String> newPath = new ArrayList<>(pathSoFar);
-                newPath.add(move.action.lexeme);
-                moveSolution = solveNode(game, move.targetNode.lexeme, memo, newPath);
+    private void solveNode(int node) {
+        int who = tree.owner[node];
+        int from = tree.firstEdge[node];
+        if (who == GameTree.TERMINAL) {
+            System.arraycopy(tree.payoff, node * players, value, node * players, players);
+        } else if (who == GameTree.CHANCE) {
+            // Nature's move: payoffs are the probability-weighted average over
+            // all outcomes, and the reported path follows the most likely one
+            Arrays.fill(value, node * players, (node + 1) * players, 0);
+            int likeliest = 0;
+            for (int a = 0; a < tree.actionCount(node); a++) {
+                double probability = tree.edgeProbability[from + a];
+                int child = tree.edgeTarget[from + a];
+                for (int p = 0; p < players; p++) {
+                    value[node * players + p] += probability * value[child * players + p];
+                }
+                if (probability > tree.edgeProbability[from + likeliest])
+                    likeliest = a;
             }
-
-            // Player picks the move that maximizes their payoff
-            if (bestSolution == null ||
-                    (playerIndex < moveSolution.payoffs.size() &&
-                            (bestSolution.payoffs.isEmpty() ||
-                                    moveSolution.payoffs.get(playerIndex) > bestSolution.payoffs.get(playerIndex)))) {
-                bestSolution = moveSolution;
-                bestAction = move.action.lexeme;
+            choice[node] = likeliest;
+        } else {
+            // Player picks the move that maximizes their payoff; ties go to
+            // the first move declared
+            int best = 0;
+            for (int a = 1; a < tree.actionCount(node); a++) {
+                if (value[tree.edgeTarget[from + a] * players + who] >
+                        value[tree.edgeTarget[from + best] * players + who])
+                    best = a;
             }
+            System.arraycopy(value, tree.edgeTarget[from + best] * players, value, node * players, players);
+            choice[node] = best;
         }
+    }
 
-        // Build path including this action
-        List<String> resultPath = new ArrayList<>();
-        resultPath.add(bestAction);
-        if (bestSolution != null) {
-            resultPath.addAll(bestSolution.path);
+    private Solution solution() {
+        List<String> path = new ArrayList<>();
+        int node = 0;
+        while (tree.owner[node] != GameTree.TERMINAL) {
+            String action = tree.edgeAction[tree.firstEdge[node] + choice[node]];
+            path.add(tree.owner[node] == GameTree.CHANCE ? "[" + action + "]" : action);
+            node = tree.edgeTarget[tree.firstEdge[node] + choice[node]];
         }
-
-        Solution result = new Solution(resultPath,
-                bestSolution != null ? bestSolution.payoffs : new ArrayList<>());
-        memo.put(nodeName, result);
-        return result;
+        List<Double> payoffs = new ArrayList<>();
+        for (int p = 0; p < players; p++) {
+            payoffs.add(value[p]);
+        }
+        return new Solution(path, payoffs);
     }
 
-    private int getPlayerIndex(SequentialGameValue game, Token player) {
-        for (int i = 0; i < game.players.size(); i++) {
-            if (game.players.get(i).lexeme.equals(player.lexeme)) {
-                return i;
+    private void indexParents() {
+        position = new int[tree.nodeCount];
+        Arrays.fill(position, -1);
+        int[] order = tree.topologicalOrder;
+        for (int i = 0; i < order.length; i++) {
+            position[order[i]] = i;
+        }
+
+        // Reverse edges of reachable nodes, grouped by child
+        firstParent = new int[tree.nodeCount + 1];
+        for (int node : order) {
+            for (int e = tree.firstEdge[node]; e < tree.firstEdge[node + 1]; e++) {
+                firstParent[tree.edgeTarget[e] + 1]++;
+            }
+        }
+        for (int n = 0; n < tree.nodeCount; n++) {
+            firstParent[n + 1] += firstParent[n];
+        }
+        parents = new int[firstParent[tree.nodeCount]];
+        int[] fill = Arrays.copyOf(firstParent, tree.nodeCount);
+        for (int node : order) {
+            for (int e = tree.firstEdge[node]; e < tree.firstEdge[node + 1]; e++) {
+                parents[fill[tree.edgeTarget[e]]++] = node;
             }
         }
-        return 0; // Default to first player
     }
 }
@@ -0,0 +1,192 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Pure Bayes-Nash equilibria of a game with independent private types, found
+ * by best-response iteration over type-contingent strategies.
+ *
+ * A strategy gives each type of a player an action. The induced normal form
+ * would have |A|^|T| strategies per player; instead each type's best response
+ * is computed directly from the compiled payoffs: the expected payoff of an
+ * action sums over the other players' type profiles, each weighted by its
+ * prior and paired with the actions the current strategies give it. One
+ * sweep therefore costs (type profiles) x (actions) per player.
+ *
+ * Sweeps update one type at a time and only switch on a strict improvement,
+ * so a sweep with no switch is an equilibrium. Best-response dynamics can
+ * cycle, so the search runs from several starting profiles and reports the
+ * distinct equilibria it reaches; it is not an exhaustive enumeration.
+ */
+class BayesNashSolver {
+    private static final double EPSILON = 1e-9;
+
+    final int players;
+    final int[] actionCount;
+    final int[] typeCount;
+    private final double[][] prior; // prior[p][t]
+    private final double[][] payoff; // payoff[p][typeProfile * actionProfiles + actionProfile]
+    private final int actionProfiles;
+    private final int typeProfiles;
+    private final int[] actionStride; // player 0 most significant
+    private final int[] typeStride;
+
+    int sweeps; // best-response sweeps over all searches
+
+    BayesNashSolver(int[] actionCount, int[] typeCount, double[][] prior, double[][] payoff) {
+        this.players = actionCount.length;
+        this.actionCount = actionCount;
+        this.typeCount = typeCount;
+        this.prior = prior;
+        this.payoff = payoff;
+        this.actionStride = strides(actionCount);
+        this.typeStride = strides(typeCount);
+        this.actionProfiles = actionStride[0] * actionCount[0];
+        this.typeProfiles = typeStride[0] * typeCount[0];
+    }
+
+    private static int[] strides(int[] radix) {
+        int[] stride = new int[radix.length];
+        int product = 1;
+        for (int p = radix.length - 1; p >= 0; p--) {
+            stride[p] = product;
+            product *= radix[p];
+        }
+        return stride;
+    }
+
+    /**
+     * Runs best-response iteration from every constant profile (all types
+     * playing their k-th action) and from the given number of random
+     * profiles. Returns the distinct equilibria found, as strategy[p][t].
+     */
+    List<int[][]> solve(int randomStarts, int maxSweeps, long seed) {
+        List<int[][]> starts = new ArrayList<>();
+        int widest = 0;
+        for (int count : actionCount) {
+            widest = Math.max(widest, count);
+        }
+        for (int k = 0; k < widest; k++) {
+            int[][] start = new int[players][];
+            for (int p = 0; p < players; p++) {
+                start[p] = new int[typeCount[p]];
+                Arrays.fill(start[p], Math.min(k, actionCount[p] - 1));
+            }
+            starts.add(start);
+        }
+        Random random = new Random(seed);
+        for (int r = 0; r < randomStarts; r++) {
+            int[][] start = new int[players][];
+            for (int p = 0; p < players; p++) {
+                start[p] = new int[typeCount[p]];
+                for (int t = 0; t < typeCount[p]; t++) {
+                    start[p][t] = random.nextInt(actionCount[p]);
+                }
+            }
+            starts.add(start);
+        }
+
+        Map<String, int[][]> found = new LinkedHashMap<>();
+        for (int[][] strategy : starts) {
+            if (iterate(strategy, maxSweeps))
+                found.putIfAbsent(Arrays.deepToString(strategy), strategy);
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    // Best-response sweeps in place; true if they reached an equilibrium
+    private boolean iterate(int[][] strategy, int maxSweeps) {
+        double[] value = new double[0];
+        for (int sweep = 0; sweep < maxSweeps; sweep++) {
+            sweeps++;
+            boolean changed = false;
+            for (int p = 0; p < players; p++) {
+                if (value.length < actionCount[p])
+                    value = new double[actionCount[p]];
+                for (int t = 0; t < typeCount[p]; t++) {
+                    actionValues(strategy, p, t, value);
+                    int best = strategy[p][t];
+                    for (int a = 0; a < actionCount[p]; a++) {
+                        if (value[a] > value[best] + EPSILON)
+                            best = a;
+                    }
+                    if (best != strategy[p][t]) {
+                        strategy[p][t] = best;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Interim expected payoff of each action of player p with type t, given
+     * the others' strategies (not normalized by the prior of t).
+     */
+    private void actionValues(int[][] strategy, int p, int t, double[] value) {
+        Arrays.fill(value, 0, actionCount[p], 0);
+        double[] u = payoff[p];
+        int[] types = new int[players];
+        types[p] = t;
+        int profile = t * typeStride[p];
+        while (true) {
+            double weight = 1;
+            int others = 0;
+            for (int q = 0; q < players; q++) {
+                if (q == p)
+                    continue;
+                weight *= prior[q][types[q]];
+                others += strategy[q][types[q]] * actionStride[q];
+            }
+            if (weight > 0) {
+                int base = profile * actionProfiles + others;
+                for (int a = 0; a < actionCount[p]; a++) {
+                    value[a] += weight * u[base + a * actionStride[p]];
+                }
+            }
+
+            // Next type profile of the others, player p's type held fixed
+            int q = players - 1;
+            while (q >= 0) {
+                if (q != p) {
+                    if (++types[q] < typeCount[q]) {
+                        profile += typeStride[q];
+                        break;
+                    }
+                    profile -= (typeCount[q] - 1) * typeStride[q];
+                    types[q] = 0;
+                }
+                q--;
+            }
+            if (q < 0)
+                return;
+        }
+    }
+
+    /** Ex-ante expected payoff of each player under the given strategies. */
+    double[] expectedPayoffs(int[][] strategy) {
+        double[] expected = new double[players];
+        int[] types = new int[players];
+        for (int profile = 0; profile < typeProfiles; profile++) {
+            double weight = 1;
+            int actions = 0;
+            for (int q = 0; q < players; q++) {
+                types[q] = profile / typeStride[q] % typeCount[q];
+                weight *= prior[q][types[q]];
+                actions += strategy[q][types[q]] * actionStride[q];
+            }
+            for (int p = 0; p < players; p++) {
+                expected[p] += weight * payoff[p][profile * actionProfiles + actions];
+            }
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,104 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runtime representation of a Bayesian game. Payoffs are expressions,
+ * evaluated into the solver's arrays each time the game is solved.
+ */
+class BayesianGameValue {
+    final String name;
+    final List<Token> players;
+    final Stmt.BayesianGame declaration;
+
+    BayesianGameValue(Stmt.BayesianGame declaration) {
+        this.name = declaration.name.lexeme;
+        this.players = declaration.players;
+        this.declaration = declaration;
+    }
+
+    boolean hasTypes(int player) {
+        return !declaration.types.get(player).isEmpty();
+    }
+
+    /**
+     * Evaluates every payoff entry once. General entries fill all type
+     * profiles first, so entries with types override them.
+     */
+    BayesNashSolver compile(Interpreter interpreter) {
+        int n = players.size();
+        int[] actionCount = new int[n];
+        int[] typeCount = new int[n];
+        double[][] prior = new double[n][];
+        List<Integer> typed = new ArrayList<>();
+        for (int p = 0; p < n; p++) {
+            actionCount[p] = declaration.strategies.get(p).size();
+            if (hasTypes(p)) {
+                typed.add(p);
+                typeCount[p] = declaration.types.get(p).size();
+                prior[p] = new double[typeCount[p]];
+                for (int t = 0; t < typeCount[p]; t++) {
+                    prior[p][t] = declaration.priors.get(p).get(t);
+                }
+            } else {
+                typeCount[p] = 1;
+                prior[p] = new double[] { 1 };
+            }
+        }
+
+        int actionProfiles = 1;
+        int typeProfiles = 1;
+        for (int p = 0; p < n; p++) {
+            actionProfiles *= actionCount[p];
+            typeProfiles *= typeCount[p];
+        }
+        double[][] payoff = new double[n][typeProfiles * actionProfiles];
+        for (boolean specific : new boolean[] { false, true }) {
+            for (Stmt.BayesianPayoff entry : declaration.payoffs) {
+                if ((entry.types != null) != specific)
+                    continue;
+                int player = indexOf(players, entry.player);
+                int actions = 0;
+                for (int p = 0; p < n; p++) {
+                    actions = actions * actionCount[p] +
+                            indexOf(declaration.strategies.get(p), entry.actions.get(p));
+                }
+                Object value = interpreter.evaluate(entry.value);
+                if (!(value instanceof Double)) {
+                    throw new RuntimeError(entry.player, "Payoffs of game '" + name + "' must be numbers.");
+                }
+                if (!specific) {
+                    for (int profile = 0; profile < typeProfiles; profile++) {
+                        payoff[player][profile * actionProfiles + actions] = (Double) value;
+                    }
+                    continue;
+                }
+                int profile = 0;
+                int next = 0;
+                for (int p = 0; p < n; p++) {
+                    int type = 0;
+                    if (hasTypes(p))
+                        type = indexOf(declaration.types.get(p), entry.types.get(next++));
+                    profile = profile * typeCount[p] + type;
+                }
+                payoff[player][profile * actionProfiles + actions] = (Double) value;
+            }
+        }
+        return new BayesNashSolver(actionCount, typeCount, prior, payoff);
+    }
+
+    // Names were checked at parse time
+    private static int indexOf(List<Token> tokens, Token name) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).lexeme.equals(name.lexeme))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "<bayesian game " + name + ">";
+    }
+}
@@ -0,0 +1,445 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counterfactual regret minimization for imperfect-information sequential
+ * games. Runs over a CompiledGameTree; regrets and cumulative strategies are
+ * flat double arrays indexed by information-set slot.
+ *
+ * Two modes:
+ * - full traversal CFR+ (regret matching+, alternating updates, linear averaging)
+ * - external-sampling Monte Carlo CFR, optionally spread over several threads.
+ * Sampling threads work in rounds against the regrets as they stood at the
+ * start of the round and merge their updates in thread order, so a run is
+ * reproducible for a given seed and thread count.
+ */
+class CfrSolver {
+
+    interface Progress {
+        void report(int iteration, double exploitability);
+    }
+
+    static class Result {
+        final double[] averageStrategy; // per slot, sums to 1 within each information set
+        final double[] expectedPayoffs;
+        final double exploitability;
+        final int iterations;
+
+        Result(double[] averageStrategy, double[] expectedPayoffs, double exploitability, int iterations) {
+            this.averageStrategy = averageStrategy;
+            this.expectedPayoffs = expectedPayoffs;
+            this.exploitability = exploitability;
+            this.iterations = iterations;
+        }
+    }
+
+    // Iterations each sampling thread runs before updates are merged
+    private static final int ROUND_SIZE = 16;
+
+    private final CompiledGameTree tree;
+    private final double[] regrets;
+    private final double[] strategySum;
+
+    CfrSolver(CompiledGameTree tree) {
+        this.tree = tree;
+        this.regrets = new double[tree.slotCount()];
+        this.strategySum = new double[tree.slotCount()];
+    }
+
+    /**
+     * Full-traversal CFR+. Reports exploitability every reportEvery iterations.
+     */
+    Result solveCfrPlus(int iterations, int reportEvery, Progress progress) {
+        double[] current = new double[regrets.length];
+        for (int t = 1; t <= iterations; t++) {
+            for (int player = 0; player < tree.numPlayers; player++) {
+                currentStrategy(regrets, current);
+                cfrPlus(0, player, 1.0, 1.0, t, current);
+            }
+            if (t % reportEvery == 0 && t < iterations) {
+                progress.report(t, exploitability(averageStrategy()));
+            }
+        }
+        return finish(iterations, progress);
+    }
+
+    private double cfrPlus(int node, int player, double ownReach, double othersReach, int t, double[] current) {
+        int who = tree.owner[node];
+        if (who == GameTree.TERMINAL) {
+            return tree.payoff[node * tree.numPlayers + player];
+        }
+
+        int from = tree.firstEdge[node];
+        int to = tree.firstEdge[node + 1];
+        if (who == GameTree.CHANCE) {
+            double value = 0;
+            for (int e = from; e < to; e++) {
+                double p = tree.edgeProbability[e];
+                value += p * cfrPlus(tree.edgeTarget[e], player, ownReach, othersReach * p, t, current);
+            }
+            return value;
+        }
+
+        int slot = tree.infoSetFirstSlot[tree.infoSet[node]];
+        if (who != player) {
+            double value = 0;
+            for (int e = from; e < to; e++) {
+                double p = current[slot + e - from];
+                if (p > 0)
+                    value += p * cfrPlus(tree.edgeTarget[e], player, ownReach, othersReach * p, t, current);
+            }
+            return value;
+        }
+
+        int actions = to - from;
+        double[] values = new double[actions];
+        double value = 0;
+        for (int a = 0; a < actions; a++) {
+            double p = current[slot + a];
+            values[a] = cfrPlus(tree.edgeTarget[from + a], player, ownReach * p, othersReach, t, current);
+            value += p * values[a];
+        }
+        for (int a = 0; a < actions; a++) {
+            regrets[slot + a] = Math.max(0, regrets[slot + a] + othersReach * (values[a] - value));
+            strategySum[slot + a] += t * ownReach * current[slot + a];
+        }
+        return value;
+    }
+
+    /**
+     * External-sampling MCCFR. Each iteration samples chance and opponent
+     * actions once per traversing player.
+     */
+    Result solveExternalSampling(int iterations, int threads, long seed, int reportEvery, Progress progress) {
+        SplittableRandom root = new SplittableRandom(seed);
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker(root.split()));
+        }
+
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            int done = 0;
+            int nextReport = reportEvery;
+            while (done < iterations) {
+                // Share out this round's iterations across the workers
+                int round = Math.min(iterations - done, ROUND_SIZE * threads);
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    Worker worker = workers.get(i);
+                    worker.iterations = round / threads + (i < round % threads ? 1 : 0);
+                    tasks.add(worker);
+                }
+                runAll(pool, tasks);
+
+                for (Worker worker : workers) {
+                    worker.mergeInto(regrets, strategySum);
+                }
+                done += round;
+
+                if (done >= nextReport && done < iterations) {
+                    progress.report(done, exploitability(averageStrategy()));
+                    nextReport += reportEvery;
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+        return finish(iterations, progress);
+    }
+
+    private void runAll(ExecutorService pool, List<Callable<Void>> tasks) {
+        try {
+            if (pool == null) {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+                return;
+            }
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("CFR worker failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("CFR interrupted", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("CFR worker failed", e);
+        }
+    }
+
+    /**
+     * One sampling thread: plays regret matching on the shared regrets (frozen
+     * during a round) plus its own not-yet-merged updates.
+     */
+    private class Worker implements Callable<Void> {
+        private final SplittableRandom random;
+        private final double[] regretDelta = new double[regrets.length];
+        private final double[] strategyDelta = new double[regrets.length];
+        int iterations;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public Void call() {
+            for (int i = 0; i < iterations; i++) {
+                for (int player = 0; player < tree.numPlayers; player++) {
+                    traverse(0, player);
+                }
+            }
+            return null;
+        }
+
+        private double traverse(int node, int player) {
+            int who = tree.owner[node];
+            if (who == GameTree.TERMINAL) {
+                return tree.payoff[node * tree.numPlayers + player];
+            }
+
+            int from = tree.firstEdge[node];
+            int to = tree.firstEdge[node + 1];
+            if (who == GameTree.CHANCE) {
+                int e = sample(tree.edgeProbability, from, to);
+                return traverse(tree.edgeTarget[e], player);
+            }
+
+            int slot = tree.infoSetFirstSlot[tree.infoSet[node]];
+            int actions = to - from;
+            double[] strategy = new double[actions];
+            double positive = 0;
+            for (int a = 0; a < actions; a++) {
+                strategy[a] = Math.max(0, regrets[slot + a] + regretDelta[slot + a]);
+                positive += strategy[a];
+            }
+            for (int a = 0; a < actions; a++) {
+                strategy[a] = positive > 0 ? strategy[a] / positive : 1.0 / actions;
+            }
+
+            if (who != player) {
+                for (int a = 0; a < actions; a++) {
+                    strategyDelta[slot + a] += strategy[a];
+                }
+                int a = sample(strategy, 0, actions);
+                return traverse(tree.edgeTarget[from + a], player);
+            }
+
+            double[] values = new double[actions];
+            double value = 0;
+            for (int a = 0; a < actions; a++) {
+                values[a] = traverse(tree.edgeTarget[from + a], player);
+                value += strategy[a] * values[a];
+            }
+            for (int a = 0; a < actions; a++) {
+                regretDelta[slot + a] += values[a] - value;
+            }
+            return value;
+        }
+
+        private int sample(double[] probabilities, int from, int to) {
+            double r = random.nextDouble();
+            for (int i = from; i < to - 1; i++) {
+                r -= probabilities[i];
+                if (r < 0)
+                    return i;
+            }
+            return to - 1;
+        }
+
+        void mergeInto(double[] regretTotals, double[] strategyTotals) {
+            for (int i = 0; i < regretDelta.length; i++) {
+                regretTotals[i] += regretDelta[i];
+                strategyTotals[i] += strategyDelta[i];
+                regretDelta[i] = 0;
+                strategyDelta[i] = 0;
+            }
+        }
+    }
+
+    private Result finish(int iterations, Progress progress) {
+        double[] average = averageStrategy();
+        double exploitability = exploitability(average);
+        progress.report(iterations, exploitability);
+        return new Result(average, expectedPayoffs(average), exploitability, iterations);
+    }
+
+    // ===== Strategies =====
+
+    private void currentStrategy(double[] regretTable, double[] out) {
+        for (int set = 0; set < tree.infoSetCount; set++) {
+            int slot = tree.infoSetFirstSlot[set];
+            int actions = tree.infoSetFirstSlot[set + 1] - slot;
+            regretMatching(regretTable, slot, actions, out, slot);
+        }
+    }
+
+    /**
+     * Play in proportion to positive regret; uniformly if no action has any.
+     */
+    private static void regretMatching(double[] regretTable, int slot, int actions, double[] out, int offset) {
+        double positive = 0;
+        for (int a = 0; a < actions; a++) {
+            positive += Math.max(0, regretTable[slot + a]);
+        }
+        for (int a = 0; a < actions; a++) {
+            out[offset + a] = positive > 0 ? Math.max(0, regretTable[slot + a]) / positive : 1.0 / actions;
+        }
+    }
+
+    double[] averageStrategy() {
+        double[] average = new double[strategySum.length];
+        for (int set = 0; set < tree.infoSetCount; set++) {
+            int slot = tree.infoSetFirstSlot[set];
+            int actions = tree.infoSetFirstSlot[set + 1] - slot;
+            double total = 0;
+            for (int a = 0; a < actions; a++) {
+                total += strategySum[slot + a];
+            }
+            for (int a = 0; a < actions; a++) {
+                average[slot + a] = total > 0 ? strategySum[slot + a] / total : 1.0 / actions;
+            }
+        }
+        return average;
+    }
+
+    // ===== Evaluation =====
+
+    /**
+     * Expected payoff vector when every player follows the given strategy.
+     */
+    double[] expectedPayoffs(double[] strategy) {
+        int n = tree.numPlayers;
+        double[] values = new double[tree.nodeCount * n];
+        int[] order = tree.topologicalOrder;
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            int who = tree.owner[node];
+            if (who == GameTree.TERMINAL) {
+                System.arraycopy(tree.payoff, node * n, values, node * n, n);
+                continue;
+            }
+            int from = tree.firstEdge[node];
+            int slot = who == GameTree.CHANCE ? -1 : tree.infoSetFirstSlot[tree.infoSet[node]];
+            for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                double p = slot < 0 ? tree.edgeProbability[e] : strategy[slot + e - from];
+                int child = tree.edgeTarget[e];
+                for (int q = 0; q < n; q++) {
+                    values[node * n + q] += p * values[child * n + q];
+                }
+            }
+        }
+        double[] root = new double[n];
+        System.arraycopy(values, 0, root, 0, n);
+        return root;
+    }
+
+    /**
+     * Average gain a player could get by switching to a best response,
+     * i.e. NashConv divided by the number of players. Zero at a Nash equilibrium.
+     */
+    double exploitability(double[] strategy) {
+        double[] onPolicy = expectedPayoffs(strategy);
+        double nashConv = 0;
+        for (int player = 0; player < tree.numPlayers; player++) {
+            nashConv += bestResponseValue(strategy, player) - onPolicy[player];
+        }
+        return Math.max(0, nashConv / tree.numPlayers);
+    }
+
+    /**
+     * Value of the best response for one player against the others' fixed
+     * strategies. Actions are chosen per information set, weighting each member
+     * node by the probability that chance and the opponents reach it.
+     */
+    private double bestResponseValue(double[] strategy, int player) {
+        double[] reach = new double[tree.nodeCount];
+        reach[0] = 1;
+        for (int node : tree.topologicalOrder) {
+            int who = tree.owner[node];
+            if (who == GameTree.TERMINAL || reach[node] == 0)
+                continue;
+            int from = tree.firstEdge[node];
+            int slot = who >= 0 ? tree.infoSetFirstSlot[tree.infoSet[node]] : -1;
+            for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                double p;
+                if (who == GameTree.CHANCE) {
+                    p = tree.edgeProbability[e];
+                } else if (who == player) {
+                    p = 1;
+                } else {
+                    p = strategy[slot + e - from];
+                }
+                reach[tree.edgeTarget[e]] += reach[node] * p;
+            }
+        }
+
+        double[] values = new double[tree.nodeCount];
+        boolean[] known = new boolean[tree.nodeCount];
+        int[] choice = new int[tree.infoSetCount];
+        java.util.Arrays.fill(choice, -1);
+        return responseValue(0, player, strategy, reach, values, known, choice);
+    }
+
+    private double responseValue(int node, int player, double[] strategy, double[] reach,
+            double[] values, boolean[] known, int[] choice) {
+        if (known[node])
+            return values[node];
+
+        int who = tree.owner[node];
+        double value = 0;
+        if (who == GameTree.TERMINAL) {
+            value = tree.payoff[node * tree.numPlayers + player];
+        } else if (who == player) {
+            int set = tree.infoSet[node];
+            if (choice[set] < 0) {
+                choice[set] = bestAction(set, player, strategy, reach, values, known, choice);
+            }
+            value = responseValue(tree.edgeTarget[tree.firstEdge[node] + choice[set]], player, strategy, reach,
+                    values, known, choice);
+        } else {
+            int from = tree.firstEdge[node];
+            int slot = who >= 0 ? tree.infoSetFirstSlot[tree.infoSet[node]] : -1;
+            for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                double p = slot < 0 ? tree.edgeProbability[e] : strategy[slot + e - from];
+                if (p > 0)
+                    value += p * responseValue(tree.edgeTarget[e], player, strategy, reach, values, known, choice);
+            }
+        }
+        values[node] = value;
+        known[node] = true;
+        return value;
+    }
+
+    private int bestAction(int set, int player, double[] strategy, double[] reach,
+            double[] values, boolean[] known, int[] choice) {
+        int[] members = tree.infoSetNodes[set];
+        int actions = tree.actionCount(members[0]);
+        int best = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < actions; a++) {
+            double total = 0;
+            for (int node : members) {
+                if (reach[node] > 0) {
+                    total += reach[node] * responseValue(tree.edgeTarget[tree.firstEdge[node] + a], player,
+                            strategy, reach, values, known, choice);
+                }
+            }
+            if (total > bestValue) {
+                bestValue = total;
+                best = a;
+            }
+        }
+        return best;
+    }
+}
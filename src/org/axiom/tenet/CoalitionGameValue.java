@@ -0,0 +1,154 @@
+package org.axiom.tenet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runtime representation of a cooperative game with transferable utility.
+ * Coalitions are bitmasks over the players, in declaration order (player 0
+ * is bit 0), so games have at most 63 players.
+ */
+class CoalitionGameValue {
+    // Class of the coalition objects passed to a worth function
+    private static final TenetClass COALITION = new TenetClass("Coalition", null, new HashMap<>());
+    private static final int BLOCK = 1 << 14; // coalitions per worker task
+
+    /** Worth of coalitions on one interpreter; not thread-safe. */
+    interface Worth {
+        double of(long coalition);
+    }
+
+    final String name;
+    final List<Token> players;
+    final Stmt.CoalitionGame declaration;
+    private final TenetCallable function; // null for a table
+
+    CoalitionGameValue(Stmt.CoalitionGame declaration, TenetCallable function) {
+        this.name = declaration.name.lexeme;
+        this.players = declaration.players;
+        this.declaration = declaration;
+        this.function = function;
+    }
+
+    boolean isTable() {
+        return function == null;
+    }
+
+    /**
+     * Worth on the given interpreter. Table entries are evaluated once, up
+     * front; a function is called for every coalition asked for.
+     */
+    Worth worth(Interpreter interpreter, Token where) {
+        if (isTable()) {
+            Map<Long, Double> table = table(interpreter, where);
+            return coalition -> table.getOrDefault(coalition, 0.0);
+        }
+        return call(interpreter, function, where);
+    }
+
+    /**
+     * Supplies one Worth per worker thread. A worth function runs on an
+     * isolated copy of the interpreter per worker; a table is evaluated once
+     * and shared.
+     */
+    Supplier<Worth> workers(Interpreter source, Token where) {
+        if (isTable()) {
+            Worth shared = worth(source, where);
+            return () -> shared;
+        }
+        return () -> {
+            Snapshot.Isolated<TenetCallable> isolated = Snapshot.isolate(source, function);
+            return call(isolated.interpreter, isolated.value, where);
+        };
+    }
+
+    /**
+     * Worth of all 2^n coalitions, indexed by bitmask. A table fills only its
+     * listed entries; a function is called on every coalition, in blocks
+     * spread over worker threads.
+     */
+    double[] allCoalitions(Interpreter interpreter, Token where, int threads) {
+        int n = players.size();
+        double[] worth = new double[1 << n];
+        if (isTable()) {
+            for (Map.Entry<Long, Double> entry : table(interpreter, where).entrySet()) {
+                worth[(int) (long) entry.getKey()] = entry.getValue();
+            }
+            return worth;
+        }
+        if (threads <= 1 || worth.length <= BLOCK) {
+            Worth of = worth(interpreter, where);
+            for (int coalition = 0; coalition < worth.length; coalition++) {
+                worth[coalition] = of.of(coalition);
+            }
+            return worth;
+        }
+        ThreadLocal<Worth> local = ThreadLocal.withInitial(workers(interpreter, where));
+        ParallelBlocks.forRanges(worth.length, BLOCK, threads, (from, to) -> {
+            Worth of = local.get();
+            for (int coalition = from; coalition < to; coalition++) {
+                worth[coalition] = of.of(coalition);
+            }
+        });
+        return worth;
+    }
+
+    private Map<Long, Double> table(Interpreter interpreter, Token where) {
+        Map<Long, Double> table = new HashMap<>();
+        for (int i = 0; i < declaration.coalitions.size(); i++) {
+            Object value = interpreter.evaluate(declaration.values.get(i));
+            if (!(value instanceof Double)) {
+                throw new RuntimeError(where, "Coalition values of game '" + name + "' must be numbers.");
+            }
+            table.put(mask(declaration.coalitions.get(i)), (Double) value);
+        }
+        return table;
+    }
+
+    long mask(List<Token> members) {
+        long mask = 0;
+        for (Token member : members) {
+            for (int p = 0; p < players.size(); p++) {
+                if (players.get(p).lexeme.equals(member.lexeme))
+                    mask |= 1L << p;
+            }
+        }
+        return mask;
+    }
+
+    String describe(long coalition) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int p = 0; p < players.size(); p++) {
+            if ((coalition & (1L << p)) != 0) {
+                if (sb.length() > 1)
+                    sb.append(", ");
+                sb.append(players.get(p).lexeme);
+            }
+        }
+        return sb.append(")").toString();
+    }
+
+    private Worth call(Interpreter interpreter, TenetCallable worth, Token where) {
+        return coalition -> {
+            TenetInstance instance = new TenetInstance(COALITION);
+            for (int p = 0; p < players.size(); p++) {
+                instance.set(players.get(p).lexeme, (coalition & (1L << p)) != 0);
+            }
+            instance.set("size", (double) Long.bitCount(coalition));
+            Object value = worth.call(interpreter, Arrays.asList((Object) instance));
+            if (!(value instanceof Double)) {
+                throw new RuntimeError(where, "The worth of coalition " + describe(coalition) + " in game '" +
+                        name + "' is not a number.");
+            }
+            return (Double) value;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "<coalition game " + name + ">";
+    }
+}
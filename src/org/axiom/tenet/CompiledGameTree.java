@@ -0,0 +1,448 @@
+package org.axiom.tenet;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Array form of a sequential game for solvers that iterate over the tree many
+ * times (CFR, best responses). Every decision, chance and terminal node gets an
+ * integer id; edges, payoffs and information sets live in flat primitive arrays
+ * so the hot loops never touch names, maps or boxed numbers.
+ *
+ * Node ids are assigned in declaration order for named nodes (the root is 0),
+ * followed by one id per terminal move.
+ */
+class CompiledGameTree implements GameTree {
+    final int numPlayers;
+    final int nodeCount;
+
+    final int[] owner; // player index, CHANCE or TERMINAL
+    final int[] firstEdge; // edges of node n are firstEdge[n] .. firstEdge[n + 1] - 1
+    final int[] edgeTarget;
+    final double[] edgeProbability; // chance edges only
+    final String[] edgeAction;
+    final double[] payoff; // payoff[n * numPlayers + p] at terminal nodes
+    final String[] nodeName;
+    final String[] playerNames;
+
+    // Information sets of decision nodes; regret/strategy tables are indexed by slot
+    final int[] infoSet; // -1 for chance and terminal nodes
+    final int infoSetCount;
+    final int[] infoSetOwner;
+    final int[] infoSetFirstSlot; // actions of set i are slots firstSlot[i] .. firstSlot[i + 1] - 1
+    final int[][] infoSetNodes;
+    final String[] infoSetName;
+
+    // Reachable nodes ordered so that every parent precedes its children
+    int[] topologicalOrder;
+
+    // Terminal move of each leaf in a node-list game, kept to re-evaluate payoffs
+    final Stmt.GameMove[] terminalMove;
+    private Map<String, int[]> leavesByVariable;
+    private int[] opaqueLeaves;
+
+    private CompiledGameTree(List<Token> players, int nodeCount, int edgeCount, int infoSetCount) {
+        this.numPlayers = players.size();
+        this.playerNames = new String[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            playerNames[i] = players.get(i).lexeme;
+        }
+        this.nodeCount = nodeCount;
+        this.owner = new int[nodeCount];
+        this.firstEdge = new int[nodeCount + 1];
+        this.edgeTarget = new int[edgeCount];
+        this.edgeProbability = new double[edgeCount];
+        this.edgeAction = new String[edgeCount];
+        this.payoff = new double[nodeCount * this.numPlayers];
+        this.nodeName = new String[nodeCount];
+        this.infoSet = new int[nodeCount];
+        this.infoSetCount = infoSetCount;
+        this.infoSetOwner = new int[infoSetCount];
+        this.infoSetFirstSlot = new int[infoSetCount + 1];
+        this.infoSetNodes = new int[infoSetCount][];
+        this.infoSetName = new String[infoSetCount];
+        this.terminalMove = new Stmt.GameMove[nodeCount];
+    }
+
+    int slotCount() {
+        return infoSetFirstSlot[infoSetCount];
+    }
+
+    @Override
+    public int numPlayers() {
+        return numPlayers;
+    }
+
+    @Override
+    public String playerName(int player) {
+        return playerNames[player];
+    }
+
+    @Override
+    public int root() {
+        return 0;
+    }
+
+    @Override
+    public int owner(int node) {
+        return owner[node];
+    }
+
+    @Override
+    public int actionCount(int node) {
+        return firstEdge[node + 1] - firstEdge[node];
+    }
+
+    @Override
+    public String action(int node, int action) {
+        return edgeAction[firstEdge[node] + action];
+    }
+
+    @Override
+    public int child(int node, int action) {
+        return edgeTarget[firstEdge[node] + action];
+    }
+
+    @Override
+    public double probability(int node, int action) {
+        return edgeProbability[firstEdge[node] + action];
+    }
+
+    @Override
+    public double payoff(int node, int player) {
+        return payoff[node * numPlayers + player];
+    }
+
+    /**
+     * Evaluates every payoff expression in the current environment. Compiling
+     * fixes only the structure, so this runs before each solve.
+     */
+    void evaluatePayoffs(Interpreter interpreter) {
+        for (int node = 0; node < nodeCount; node++) {
+            if (terminalMove[node] != null)
+                evaluatePayoffs(interpreter, node);
+        }
+    }
+
+    void evaluatePayoffs(Interpreter interpreter, int node) {
+        Stmt.GameMove move = terminalMove[node];
+        for (int p = 0; p < numPlayers && p < move.payoffs.size(); p++) {
+            Object value = interpreter.evaluate(move.payoffs.get(p));
+            if (!(value instanceof Double)) {
+                throw new RuntimeError(move.action, "Payoffs of move '" + move.action.lexeme + "' must be numbers.");
+            }
+            payoff[node * numPlayers + p] = (Double) value;
+        }
+    }
+
+    /**
+     * Leaves whose payoffs may change with a variable: those that name it,
+     * plus any that call functions or read fields, which could read anything.
+     */
+    int[] leavesReading(String variable) {
+        if (leavesByVariable == null) {
+            Map<String, List<Integer>> byVariable = new HashMap<>();
+            List<Integer> opaque = new ArrayList<>();
+            for (int node = 0; node < nodeCount; node++) {
+                if (terminalMove[node] == null)
+                    continue;
+                PayoffReads reads = new PayoffReads();
+                for (Expr expr : terminalMove[node].payoffs) {
+                    expr.accept(reads);
+                }
+                for (String name : reads.names) {
+                    byVariable.computeIfAbsent(name, k -> new ArrayList<>()).add(node);
+                }
+                if (reads.opaque)
+                    opaque.add(node);
+            }
+            leavesByVariable = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : byVariable.entrySet()) {
+                leavesByVariable.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+            opaqueLeaves = opaque.stream().mapToInt(Integer::intValue).toArray();
+        }
+        int[] direct = leavesByVariable.getOrDefault(variable, new int[0]);
+        return java.util.stream.IntStream.concat(Arrays.stream(direct), Arrays.stream(opaqueLeaves))
+                .sorted().distinct().toArray();
+    }
+
+    boolean hasHiddenInformation() {
+        for (int[] nodes : infoSetNodes) {
+            if (nodes.length > 1)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compiles a sequential game. Node ids, targets and the topological order
+     * come from the GameIndex built at parse time; this adds the checks that
+     * need the whole game: chance probabilities sum to one, and all nodes of an
+     * information set share a player and action list.
+     */
+    static CompiledGameTree compile(SequentialGameValue game, Token where) {
+        if (game.rootNodeName == null) {
+            throw new RuntimeError(where, "Sequential game '" + game.name + "' has no nodes.");
+        }
+
+        GameIndex index = game.index;
+        List<Stmt.GameNode> decisionNodes = new ArrayList<>(game.nodes.values());
+
+        // Group decision nodes into information sets (declaration order)
+        Map<String, Integer> infoSetIds = new LinkedHashMap<>();
+        List<List<Integer>> members = new ArrayList<>();
+        int[] nodeInfoSet = new int[decisionNodes.size()];
+        for (int n = 0; n < decisionNodes.size(); n++) {
+            Stmt.GameNode node = decisionNodes.get(n);
+            if (node.isChance()) {
+                nodeInfoSet[n] = -1;
+                continue;
+            }
+            String key = node.infoSet != null ? "info " + node.infoSet.lexeme : "node " + node.name.lexeme;
+            Integer id = infoSetIds.get(key);
+            if (id == null) {
+                id = infoSetIds.size();
+                infoSetIds.put(key, id);
+                members.add(new ArrayList<>());
+            }
+            members.get(id).add(n);
+            nodeInfoSet[n] = id;
+        }
+
+        int nodeCount = index.nodeCount;
+        CompiledGameTree tree = new CompiledGameTree(game.players, nodeCount, index.edgeCount, infoSetIds.size());
+
+        int edge = 0;
+        for (int n = 0; n < decisionNodes.size(); n++) {
+            Stmt.GameNode node = decisionNodes.get(n);
+            tree.nodeName[n] = node.name.lexeme;
+            tree.owner[n] = index.owner[n];
+            tree.infoSet[n] = nodeInfoSet[n];
+            tree.firstEdge[n] = edge;
+
+            double totalProbability = 0;
+            int unspecified = 0;
+            for (int m = 0; m < node.moves.size(); m++) {
+                Stmt.GameMove move = node.moves.get(m);
+                int target = index.moveTarget[n][m];
+                if (move.isTerminal()) {
+                    tree.owner[target] = TERMINAL;
+                    tree.infoSet[target] = -1;
+                    tree.nodeName[target] = node.name.lexeme + "." + move.action.lexeme;
+                    tree.terminalMove[target] = move;
+                }
+                tree.edgeTarget[edge] = target;
+                tree.edgeAction[edge] = move.action.lexeme;
+                tree.edgeProbability[edge] = move.probability;
+                if (Double.isNaN(move.probability)) {
+                    unspecified++;
+                } else {
+                    totalProbability += move.probability;
+                }
+                edge++;
+            }
+
+            if (node.isChance()) {
+                checkChanceProbabilities(tree, node, tree.firstEdge[n], edge, unspecified, totalProbability);
+            }
+        }
+        tree.firstEdge[decisionNodes.size()] = edge;
+        for (int n = decisionNodes.size(); n < nodeCount; n++) {
+            tree.firstEdge[n + 1] = edge;
+        }
+
+        // Lay out information sets and check their members agree
+        int slot = 0;
+        int set = 0;
+        for (Map.Entry<String, Integer> entry : infoSetIds.entrySet()) {
+            List<Integer> nodes = members.get(entry.getValue());
+            int first = nodes.get(0);
+            Stmt.GameNode firstNode = decisionNodes.get(first);
+            for (int n : nodes) {
+                checkSameInformation(tree, firstNode, first, decisionNodes.get(n), n);
+            }
+            tree.infoSetOwner[set] = tree.owner[first];
+            tree.infoSetFirstSlot[set] = slot;
+            tree.infoSetNodes[set] = nodes.stream().mapToInt(Integer::intValue).toArray();
+            tree.infoSetName[set] = firstNode.infoSet != null ? firstNode.infoSet.lexeme : firstNode.name.lexeme;
+            slot += tree.actionCount(first);
+            set++;
+        }
+        tree.infoSetFirstSlot[set] = slot;
+
+        tree.topologicalOrder = index.topologicalOrder;
+        return tree;
+    }
+
+    /**
+     * Expands every reachable state of a procedural game and compiles the
+     * result. Node ids are the lazy tree's own ids, so equal states stay
+     * merged. Decision states with the same owner and info label form an
+     * information set.
+     */
+    static CompiledGameTree compile(LazyGameTree lazy, List<Token> players, Token where) {
+        // New states only ever get higher ids, so one pass reaches them all
+        int edges = 0;
+        for (int n = lazy.root(); n < lazy.size(); n++) {
+            for (int a = 0; a < lazy.actionCount(n); a++) {
+                lazy.child(n, a);
+            }
+            edges += lazy.actionCount(n);
+        }
+
+        int nodeCount = lazy.size();
+        Map<String, Integer> infoSetIds = new LinkedHashMap<>();
+        List<List<Integer>> members = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        int[] nodeInfoSet = new int[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            int who = lazy.owner(n);
+            if (who < 0) {
+                nodeInfoSet[n] = -1;
+                continue;
+            }
+            String label = lazy.infoLabel(n);
+            String key = label != null ? who + " " + label : "state " + n;
+            Integer id = infoSetIds.get(key);
+            if (id == null) {
+                id = infoSetIds.size();
+                infoSetIds.put(key, id);
+                members.add(new ArrayList<>());
+                labels.add(label != null ? label : lazy.describe(n));
+            }
+            members.get(id).add(n);
+            nodeInfoSet[n] = id;
+        }
+
+        CompiledGameTree tree = new CompiledGameTree(players, nodeCount, edges, infoSetIds.size());
+        int edge = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            tree.nodeName[n] = lazy.describe(n);
+            tree.owner[n] = lazy.owner(n);
+            tree.infoSet[n] = nodeInfoSet[n];
+            tree.firstEdge[n] = edge;
+            for (int a = 0; a < lazy.actionCount(n); a++) {
+                tree.edgeTarget[edge] = lazy.child(n, a);
+                tree.edgeAction[edge] = lazy.action(n, a);
+                tree.edgeProbability[edge] = lazy.owner(n) == CHANCE ? lazy.probability(n, a) : Double.NaN;
+                edge++;
+            }
+            if (tree.owner[n] == TERMINAL) {
+                for (int p = 0; p < tree.numPlayers; p++) {
+                    tree.payoff[n * tree.numPlayers + p] = lazy.payoff(n, p);
+                }
+            }
+        }
+        tree.firstEdge[nodeCount] = edge;
+
+        int slot = 0;
+        for (int set = 0; set < members.size(); set++) {
+            List<Integer> nodes = members.get(set);
+            int first = nodes.get(0);
+            for (int n : nodes) {
+                boolean sameActions = tree.actionCount(n) == tree.actionCount(first);
+                for (int a = 0; sameActions && a < tree.actionCount(n); a++) {
+                    sameActions = tree.action(n, a).equals(tree.action(first, a));
+                }
+                if (!sameActions) {
+                    throw new RuntimeError(where, "States " + tree.nodeName[first] + " and " + tree.nodeName[n] +
+                            " share information set '" + labels.get(set) + "' but offer different moves.");
+                }
+            }
+            tree.infoSetOwner[set] = tree.owner[first];
+            tree.infoSetFirstSlot[set] = slot;
+            tree.infoSetNodes[set] = nodes.stream().mapToInt(Integer::intValue).toArray();
+            tree.infoSetName[set] = labels.get(set);
+            slot += tree.actionCount(first);
+        }
+        tree.infoSetFirstSlot[members.size()] = slot;
+
+        tree.topologicalOrder = topologicalOrder(tree, n -> new RuntimeError(where,
+                "State " + tree.nodeName[n] + " can lead back to itself; procedural games must always end."));
+        return tree;
+    }
+
+    private static void checkChanceProbabilities(CompiledGameTree tree, Stmt.GameNode node,
+            int from, int to, int unspecified, double total) {
+        if (unspecified == node.moves.size()) {
+            // No probabilities given: nature picks uniformly
+            for (int e = from; e < to; e++) {
+                tree.edgeProbability[e] = 1.0 / node.moves.size();
+            }
+            return;
+        }
+        if (unspecified > 0) {
+            throw new RuntimeError(node.name,
+                    "Chance node '" + node.name.lexeme + "' must give a probability for every move or none.");
+        }
+        if (Math.abs(total - 1.0) > 1e-9) {
+            throw new RuntimeError(node.name,
+                    "Probabilities at chance node '" + node.name.lexeme + "' sum to " + total + ", not 1.");
+        }
+    }
+
+    private static void checkSameInformation(CompiledGameTree tree, Stmt.GameNode first, int firstId,
+            Stmt.GameNode node, int nodeId) {
+        if (tree.owner[nodeId] != tree.owner[firstId]) {
+            throw new RuntimeError(node.name, "Nodes '" + first.name.lexeme + "' and '" + node.name.lexeme +
+                    "' share information set '" + node.infoSet.lexeme + "' but belong to different players.");
+        }
+        boolean sameActions = tree.actionCount(nodeId) == tree.actionCount(firstId);
+        for (int a = 0; sameActions && a < tree.actionCount(nodeId); a++) {
+            sameActions = tree.edgeAction[tree.firstEdge[nodeId] + a]
+                    .equals(tree.edgeAction[tree.firstEdge[firstId] + a]);
+        }
+        if (!sameActions) {
+            throw new RuntimeError(node.name, "Nodes '" + first.name.lexeme + "' and '" + node.name.lexeme +
+                    "' share information set '" + node.infoSet.lexeme + "' but offer different moves.");
+        }
+    }
+
+    /**
+     * Kahn's algorithm over the nodes reachable from the root. Nodes left with
+     * unresolved parents can only sit on a cycle.
+     */
+    private static int[] topologicalOrder(CompiledGameTree tree, IntFunction<RuntimeError> cycleError) {
+        boolean[] reachable = new boolean[tree.nodeCount];
+        int[] stack = new int[tree.nodeCount];
+        int top = 0;
+        stack[top++] = 0;
+        reachable[0] = true;
+        int reachableCount = 0;
+        int[] parents = new int[tree.nodeCount];
+        while (top > 0) {
+            int n = stack[--top];
+            reachableCount++;
+            for (int e = tree.firstEdge[n]; e < tree.firstEdge[n + 1]; e++) {
+                int child = tree.edgeTarget[e];
+                parents[child]++;
+                if (!reachable[child]) {
+                    reachable[child] = true;
+                    stack[top++] = child;
+                }
+            }
+        }
+
+        int[] order = new int[reachableCount];
+        int head = 0;
+        int tail = 0;
+        if (parents[0] == 0)
+            order[tail++] = 0;
+        while (head < tail) {
+            int n = order[head++];
+            for (int e = tree.firstEdge[n]; e < tree.firstEdge[n + 1]; e++) {
+                int child = tree.edgeTarget[e];
+                if (--parents[child] == 0)
+                    order[tail++] = child;
+            }
+        }
+        if (tail < reachableCount) {
+            for (int n = 0; n < tree.nodeCount; n++) {
+                if (reachable[n] && parents[n] > 0)
+                    throw cycleError.apply(n);
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,401 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Least core and nucleolus of a cooperative game, by linear programming with
+ * constraint generation.
+ *
+ * The least core maximizes the smallest excess x(S) - v(S) over proper
+ * coalitions S, subject to x(N) = v(N); the core is non-empty exactly when
+ * that excess is at least 0. The nucleolus repeats this lexicographically:
+ * once a stage's best excess is known, the coalitions held at it in every
+ * optimal solution (those with a non-zero dual) are fixed there, coalitions
+ * whose excess the fixed ones already determine are dropped, and the next
+ * stage raises the smallest excess among the rest. Each stage fixes at least
+ * one independent coalition, so there are at most n stages.
+ *
+ * No program ever holds all 2^n coalition constraints. A stage starts from
+ * the singletons and the coalitions kept from earlier stages; after each
+ * solve, a scan over the worth array finds the coalitions whose excess is
+ * below the program's, and the worst few are added as constraints. The
+ * scan splits coalitions into fixed blocks over the threads and keeps the
+ * same cuts on any number of them.
+ */
+class CoreSolver {
+    static final int PLAYER_LIMIT = ShapleySolver.EXACT_LIMIT;
+    private static final int LOW_BITS = 12; // coalitions per scan block: 2^LOW_BITS
+    private static final int LEAF_BLOCKS = 16; // scan blocks per parallel task
+    private static final double DUAL_EPSILON = 1e-9;
+
+    private final double[] worth;
+    private final int n;
+    private final long grand;
+    private final int threads;
+    private final double tolerance;
+    private final int cutsPerRound;
+
+    // Coalitions fixed at the excess of the stage that fixed them
+    private final List<Long> fixed = new ArrayList<>();
+    private final List<Double> fixedExcess = new ArrayList<>();
+    // Coalitions whose excess constraint is in the current program
+    private final List<Long> working = new ArrayList<>();
+    private final Set<Long> known = new HashSet<>();
+    // Echelon basis of the fixed coalitions' indicator vectors
+    private final List<double[]> basis = new ArrayList<>();
+    private final List<Integer> pivots = new ArrayList<>();
+
+    private double[] lastDuals;
+
+    double excess; // best smallest excess of the last stage
+    int programs; // linear programs solved
+    int stages;
+    int generated; // coalition constraints ever added
+
+    CoreSolver(double[] worth, int n, int threads) {
+        this.worth = worth;
+        this.n = n;
+        this.grand = (1L << n) - 1;
+        this.threads = threads;
+        this.cutsPerRound = Math.max(1, n);
+        double scale = 1;
+        for (double w : worth) {
+            scale = Math.max(scale, Math.abs(w));
+        }
+        this.tolerance = 1e-7 * scale;
+    }
+
+    /** An allocation in the least core; sets excess. */
+    double[] leastCore() {
+        reset();
+        if (n == 1)
+            return new double[] { worth[1] };
+        ForkJoinPool pool = pool();
+        try {
+            return round(stage(pool));
+        } finally {
+            shutdown(pool);
+        }
+    }
+
+    double[] nucleolus() {
+        reset();
+        if (n == 1)
+            return new double[] { worth[1] };
+        ForkJoinPool pool = pool();
+        try {
+            double[] x = null;
+            while (basis.size() < n) {
+                x = stage(pool);
+                int rank = basis.size();
+                fix();
+                if (basis.size() == rank)
+                    throw new IllegalStateException("A nucleolus stage fixed no new coalition.");
+            }
+            return round(x);
+        } finally {
+            shutdown(pool);
+        }
+    }
+
+    /**
+     * The coalition whose worth exceeds what the allocation gives it by the
+     * most, or -1 if there is none (the allocation is then in the core,
+     * provided it splits exactly v(N)).
+     */
+    long blocking(double[] x) {
+        ForkJoinPool pool = pool();
+        try {
+            Cuts cuts = scan(pool, x, 0, 1, false);
+            return cuts.size == 0 ? -1 : cuts.mask[0];
+        } finally {
+            shutdown(pool);
+        }
+    }
+
+    // One pool for every scan of a call, or null to scan on this thread
+    private ForkJoinPool pool() {
+        boolean split = (1 << (n - Math.min(n, LOW_BITS))) > LEAF_BLOCKS;
+        return threads > 1 && split ? new ForkJoinPool(threads) : null;
+    }
+
+    private static void shutdown(ForkJoinPool pool) {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private void reset() {
+        fixed.clear();
+        fixedExcess.clear();
+        working.clear();
+        known.clear();
+        basis.clear();
+        pivots.clear();
+        programs = 0;
+        stages = 0;
+        generated = 0;
+        double[] all = new double[n];
+        Arrays.fill(all, 1);
+        addToBasis(all);
+        known.add(grand);
+    }
+
+    // Runs constraint generation for one stage; returns the optimal allocation
+    private double[] stage(ForkJoinPool pool) {
+        stages++;
+        if (working.isEmpty()) {
+            // Singletons not yet determined keep the program bounded
+            for (int p = 0; p < n; p++) {
+                long singleton = 1L << p;
+                if (!known.contains(singleton) && !inSpan(singleton)) {
+                    working.add(singleton);
+                    known.add(singleton);
+                    generated++;
+                }
+            }
+        }
+        while (true) {
+            LinearProgram program = program();
+            programs++;
+            if (program.solve() != LinearProgram.Status.OPTIMAL) {
+                throw new IllegalStateException("Least-core program is " + program.status + ".");
+            }
+            double[] x = new double[n];
+            for (int p = 0; p < n; p++) {
+                x[p] = program.solution[p] - program.solution[n + p];
+            }
+            double e = program.solution[2 * n] - program.solution[2 * n + 1];
+
+            Cuts cuts = scan(pool, x, e, cutsPerRound, true);
+            if (cuts.size == 0) {
+                excess = e;
+                lastDuals = program.duals;
+                return x;
+            }
+            for (int i = 0; i < cuts.size; i++) {
+                working.add(cuts.mask[i]);
+                known.add(cuts.mask[i]);
+            }
+            generated += cuts.size;
+        }
+    }
+
+    /**
+     * Variables: x = p - q and the excess e = e+ - e-, all split so the
+     * program's variables stay non-negative. Rows: the grand coalition, the
+     * fixed coalitions, then the working ones.
+     */
+    private LinearProgram program() {
+        int variables = 2 * n + 2;
+        LinearProgram program = new LinearProgram(variables);
+        double[] objective = new double[variables];
+        objective[2 * n] = 1;
+        objective[2 * n + 1] = -1;
+        program.maximize(objective);
+        program.equal(row(grand, 0), worth[(int) grand]);
+        for (int i = 0; i < fixed.size(); i++) {
+            long coalition = fixed.get(i);
+            program.equal(row(coalition, 0), worth[(int) coalition] + fixedExcess.get(i));
+        }
+        for (long coalition : working) {
+            program.atLeast(row(coalition, -1), worth[(int) coalition]);
+        }
+        return program;
+    }
+
+    private double[] row(long coalition, double excessCoefficient) {
+        double[] row = new double[2 * n + 2];
+        for (int p = 0; p < n; p++) {
+            if ((coalition & (1L << p)) != 0) {
+                row[p] = 1;
+                row[n + p] = -1;
+            }
+        }
+        row[2 * n] = excessCoefficient;
+        row[2 * n + 1] = -excessCoefficient;
+        return row;
+    }
+
+    // Fixes the working coalitions with a non-zero dual, then drops the ones now determined
+    private void fix() {
+        int offset = 1 + fixed.size();
+        List<Long> stage = new ArrayList<>(working);
+        for (int i = 0; i < stage.size(); i++) {
+            long coalition = stage.get(i);
+            if (Math.abs(lastDuals[offset + i]) > DUAL_EPSILON && addToBasis(indicator(coalition))) {
+                fixed.add(coalition);
+                fixedExcess.add(excess);
+            }
+        }
+        working.clear();
+        for (long coalition : stage) {
+            if (!inSpan(coalition))
+                working.add(coalition);
+        }
+    }
+
+    private double[] indicator(long coalition) {
+        double[] v = new double[n];
+        for (int p = 0; p < n; p++) {
+            if ((coalition & (1L << p)) != 0)
+                v[p] = 1;
+        }
+        return v;
+    }
+
+    // Reduces v by the basis in place; each basis row is zero at earlier rows' pivots
+    private void reduce(double[] v) {
+        for (int r = 0; r < basis.size(); r++) {
+            double factor = v[pivots.get(r)];
+            if (factor != 0) {
+                double[] row = basis.get(r);
+                for (int p = 0; p < n; p++) {
+                    v[p] -= factor * row[p];
+                }
+            }
+        }
+    }
+
+    private boolean inSpan(long coalition) {
+        double[] v = indicator(coalition);
+        reduce(v);
+        for (double entry : v) {
+            if (Math.abs(entry) > 1e-9)
+                return false;
+        }
+        return true;
+    }
+
+    // Adds v to the basis if it is independent of it; true if added
+    private boolean addToBasis(double[] v) {
+        reduce(v);
+        int pivot = -1;
+        for (int p = 0; p < n; p++) {
+            if (Math.abs(v[p]) > 1e-9 && (pivot < 0 || Math.abs(v[p]) > Math.abs(v[pivot])))
+                pivot = p;
+        }
+        if (pivot < 0)
+            return false;
+        double scale = v[pivot];
+        for (int p = 0; p < n; p++) {
+            v[p] /= scale;
+        }
+        basis.add(v);
+        pivots.add(pivot);
+        return true;
+    }
+
+    // Trims simplex round-off so exact answers print exactly
+    private static double[] round(double[] x) {
+        for (int p = 0; p < x.length; p++) {
+            x[p] = Math.rint(x[p] * 1e9) / 1e9;
+        }
+        return x;
+    }
+
+    /** The most violated coalitions of a scan, worst first. */
+    private static class Cuts {
+        final long[] mask;
+        final double[] violation;
+        int size;
+
+        Cuts(int capacity) {
+            mask = new long[capacity];
+            violation = new double[capacity];
+        }
+
+        // Orders by violation, then by mask, so any split yields the same cuts
+        private boolean before(double v, long m, int i) {
+            return v > violation[i] || (v == violation[i] && m < mask[i]);
+        }
+
+        boolean wants(double v, long m) {
+            return size < mask.length || before(v, m, size - 1);
+        }
+
+        void offer(double v, long m) {
+            if (!wants(v, m))
+                return;
+            int i = Math.min(size, mask.length - 1);
+            while (i > 0 && before(v, m, i - 1)) {
+                mask[i] = mask[i - 1];
+                violation[i] = violation[i - 1];
+                i--;
+            }
+            mask[i] = m;
+            violation[i] = v;
+            size = Math.min(size + 1, mask.length);
+        }
+
+        void merge(Cuts other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.violation[i], other.mask[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds up to 'limit' proper coalitions whose excess under x is below e
+     * by more than the tolerance. With 'generate', coalitions already in a
+     * program or determined by the fixed ones are skipped. Without a pool
+     * the scan runs on this thread.
+     */
+    private Cuts scan(ForkJoinPool pool, double[] x, double e, int limit, boolean generate) {
+        // x(S) = low[S & lowMask] + high[S >>> lowBits]
+        int lowBits = Math.min(n, LOW_BITS);
+        double[] low = subsetSums(x, 0, lowBits);
+        double[] high = subsetSums(x, lowBits, n - lowBits);
+        // Each task keeps its own best cuts; merging them in any order gives the same cuts
+        Cuts[] found = new Cuts[(high.length + LEAF_BLOCKS - 1) / LEAF_BLOCKS];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int t = 0; t < found.length; t++) {
+            int task = t;
+            int from = t * LEAF_BLOCKS;
+            int to = Math.min(high.length, from + LEAF_BLOCKS);
+            tasks.add(() -> found[task] = scanBlocks(low, high, lowBits, e, limit, generate, from, to));
+        }
+        ParallelBlocks.run(pool, tasks);
+        Cuts cuts = found[0];
+        for (int t = 1; t < found.length; t++) {
+            cuts.merge(found[t]);
+        }
+        return cuts;
+    }
+
+    private static double[] subsetSums(double[] x, int from, int bits) {
+        double[] sums = new double[1 << bits];
+        for (int s = 1; s < sums.length; s++) {
+            int bit = Integer.numberOfTrailingZeros(s);
+            sums[s] = sums[s & (s - 1)] + x[from + bit];
+        }
+        return sums;
+    }
+
+    // Scans the coalitions whose high bits run from..to-1
+    private Cuts scanBlocks(double[] low, double[] high, int lowBits, double e, int limit, boolean generate,
+            int from, int to) {
+        Cuts cuts = new Cuts(limit);
+        for (int h = from; h < to; h++) {
+            long base = (long) h << lowBits;
+            double highSum = high[h];
+            for (int l = 0; l < low.length; l++) {
+                long coalition = base | l;
+                if (coalition == 0 || coalition == grand)
+                    continue;
+                double violation = e - (highSum + low[l] - worth[(int) coalition]);
+                if (violation <= tolerance || !cuts.wants(violation, coalition))
+                    continue;
+                // The basis and known set are only read during a scan
+                if (generate && (known.contains(coalition) || inSpan(coalition)))
+                    continue;
+                cuts.offer(violation, coalition);
+            }
+        }
+        return cuts;
+    }
+}
@@ -1,5 +1,6 @@
 package org.axiom.tenet;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,6 +41,10 @@ class Environment {
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
+    Map<String, Object> values() {
+        return Collections.unmodifiableMap(values);
+    }
+
     Object getAt(int distance, String name) {
         return ancestor(distance).values.get(name);
     }
@@ -0,0 +1,170 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Pure equilibria of normal-form games, kept for repeated solves. An entry is
+ * keyed by the game's structure (players, strategies and the shape of every
+ * payoff) and the values of the variables its payoffs read, so a game
+ * declared again, or solved again once its parameters return to old values,
+ * is a hash lookup. Payoffs that call functions or read fields could depend
+ * on anything and are always solved afresh, as are games whose variables
+ * hold objects rather than numbers, strings or booleans.
+ *
+ * The least recently used entry is dropped once there are more than the
+ * capacity. Each interpreter has its own cache; it is not thread-safe.
+ */
+class EquilibriumCache {
+    static final int CAPACITY = 1024;
+
+    private final LinkedHashMap<Key, List<StrategyProfile>> entries;
+    private final Map<GameValue, Shape> shapes = new WeakHashMap<>();
+    private final int capacity;
+    long hits;
+    long misses;
+    long evictions;
+
+    // What a game's payoffs look like and read, worked out once per game
+    private static class Shape {
+        String text; // null when the payoffs are opaque
+        Expr.Variable[] reads;
+    }
+
+    private static class Key {
+        private final String shape;
+        private final Object[] values;
+        private final int hash;
+
+        Key(String shape, Object[] values) {
+            this.shape = shape;
+            this.values = values;
+            this.hash = 31 * shape.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return hash == key.hash && shape.equals(key.shape) && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    EquilibriumCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, List<StrategyProfile>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<StrategyProfile>> eldest) {
+                if (size() <= EquilibriumCache.this.capacity)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /** The game's equilibria from the cache, or from 'solve' when they are not there. */
+    List<StrategyProfile> lookup(GameValue game, Interpreter interpreter, Supplier<List<StrategyProfile>> solve) {
+        Key key = key(game, interpreter);
+        if (key == null) {
+            misses++;
+            return solve.get();
+        }
+        List<StrategyProfile> equilibria = entries.get(key);
+        if (equilibria != null) {
+            hits++;
+            return equilibria;
+        }
+        misses++;
+        equilibria = Collections.unmodifiableList(solve.get());
+        entries.put(key, equilibria);
+        return equilibria;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Names of the variables the game's payoffs read, or null when they could
+     * depend on more: a payoff calls a function or reads a field, or the game
+     * is not one the cache handles.
+     */
+    static List<String> variablesRead(GameValue game) {
+        if (!PayoffMatrix.supports(game))
+            return null;
+        Shape shape = shapeOf(game);
+        if (shape.text == null)
+            return null;
+        List<String> names = new ArrayList<>();
+        for (Expr.Variable variable : shape.reads) {
+            if (!names.contains(variable.name.lexeme))
+                names.add(variable.name.lexeme);
+        }
+        return names;
+    }
+
+    // Null when the game cannot be cached
+    private Key key(GameValue game, Interpreter interpreter) {
+        if (!PayoffMatrix.supports(game))
+            return null; // Subclasses compute payoffs another way; other sizes are not solved
+        Shape shape = shapes.computeIfAbsent(game, EquilibriumCache::shapeOf);
+        if (shape.text == null)
+            return null;
+        Object[] values = new Object[shape.reads.length];
+        for (int v = 0; v < values.length; v++) {
+            Object value = interpreter.evaluate(shape.reads[v]);
+            if (value != null && !(value instanceof Double) && !(value instanceof String)
+                    && !(value instanceof Boolean))
+                return null;
+            values[v] = value;
+        }
+        return new Key(shape.text, values);
+    }
+
+    private static Shape shapeOf(GameValue game) {
+        PayoffReads reads = new PayoffReads();
+        StringBuilder text = reads.shape;
+        for (Token player : game.players) {
+            text.append(player.lexeme).append(',');
+        }
+        for (int p = 0; p < game.players.size(); p++) {
+            text.append('|');
+            for (Token strategy : game.strategiesFor(p)) {
+                text.append(strategy.lexeme).append(',');
+            }
+        }
+        // Every payoff of the two players, in strategy order; undeclared ones are 0
+        for (Token s1 : game.strategiesFor(0)) {
+            for (Token s2 : game.strategiesFor(1)) {
+                StrategyProfile profile = new StrategyProfile(Arrays.asList(s1, s2));
+                for (Token player : game.players) {
+                    text.append('|');
+                    Expr payoff = game.payoffExpr(player, profile);
+                    if (payoff != null)
+                        payoff.accept(reads);
+                }
+            }
+        }
+        Shape shape = new Shape();
+        shape.text = reads.opaque ? null : text.toString();
+        shape.reads = reads.variables.toArray(new Expr.Variable[0]);
+        return shape;
+    }
+}
@@ -0,0 +1,167 @@
+package org.axiom.tenet;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Structure of a node-list sequential game, checked and indexed once when the
+ * declaration is parsed. Node names become integer ids: named nodes in
+ * declaration order (the first is the root), then one id per terminal move.
+ * Every move target must exist, every node must be reachable from the root,
+ * and the graph must be acyclic; the topological order found on the way is
+ * kept so solvers never resolve names or sort the tree again.
+ */
+class GameIndex {
+    final int namedCount;
+    final int nodeCount;
+    final int edgeCount;
+    final int[] owner; // player index or GameTree.CHANCE, per named node
+    final int[][] moveTarget; // target id of each move of each named node
+    final int[] topologicalOrder; // every node, parents before children
+
+    private GameIndex(int namedCount, int nodeCount, int edgeCount, int[] owner, int[][] moveTarget,
+            int[] topologicalOrder) {
+        this.namedCount = namedCount;
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.owner = owner;
+        this.moveTarget = moveTarget;
+        this.topologicalOrder = topologicalOrder;
+    }
+
+    /**
+     * Indexes the nodes in time linear in their moves, reporting each problem
+     * found. Returns null if there were any.
+     */
+    static GameIndex build(List<Token> players, List<Stmt.GameNode> nodes, BiConsumer<Token, String> error) {
+        boolean valid = true;
+        Map<String, Integer> ids = new HashMap<>();
+        int terminals = 0;
+        int edges = 0;
+        for (Stmt.GameNode node : nodes) {
+            if (ids.containsKey(node.name.lexeme)) {
+                error.accept(node.name, "Node '" + node.name.lexeme + "' is declared twice.");
+                valid = false;
+            }
+            ids.put(node.name.lexeme, ids.size());
+            if (node.moves.isEmpty()) {
+                error.accept(node.name, "Node '" + node.name.lexeme + "' has no moves.");
+                valid = false;
+            }
+            edges += node.moves.size();
+            for (Stmt.GameMove move : node.moves) {
+                if (move.isTerminal())
+                    terminals++;
+            }
+        }
+
+        int namedCount = nodes.size();
+        int nodeCount = namedCount + terminals;
+        int[] owner = new int[namedCount];
+        int[][] moveTarget = new int[namedCount][];
+        int nextTerminal = namedCount;
+        for (int n = 0; n < namedCount; n++) {
+            Stmt.GameNode node = nodes.get(n);
+            owner[n] = node.isChance() ? GameTree.CHANCE : playerIndex(players, node.player);
+            if (owner[n] == -1) {
+                error.accept(node.player, "Player '" + node.player.lexeme + "' is not declared in this game.");
+                valid = false;
+            }
+            moveTarget[n] = new int[node.moves.size()];
+            for (int m = 0; m < node.moves.size(); m++) {
+                Stmt.GameMove move = node.moves.get(m);
+                if (move.isTerminal()) {
+                    moveTarget[n][m] = nextTerminal++;
+                    continue;
+                }
+                Integer target = ids.get(move.targetNode.lexeme);
+                if (target == null) {
+                    error.accept(move.targetNode, "Move '" + move.action.lexeme + "' leads to undefined node '" +
+                            move.targetNode.lexeme + "'.");
+                    valid = false;
+                    target = -1;
+                }
+                moveTarget[n][m] = target;
+            }
+        }
+        if (!valid || namedCount == 0)
+            return valid ? new GameIndex(0, 0, 0, owner, moveTarget, new int[0]) : null;
+
+        // Kahn's algorithm from the root: count parents, then peel off nodes
+        // whose parents are all placed. Named nodes never placed are either
+        // unreachable or sit on (or below) a cycle.
+        int[] parents = new int[nodeCount];
+        for (int n = 0; n < namedCount; n++) {
+            for (int target : moveTarget[n]) {
+                parents[target]++;
+            }
+        }
+        int[] order = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        boolean[] reachable = new boolean[nodeCount];
+        markReachable(moveTarget, namedCount, reachable);
+        for (int n = 0; n < namedCount; n++) {
+            if (!reachable[n]) {
+                // Unreachable nodes do not hold up the nodes they lead to
+                for (int target : moveTarget[n]) {
+                    parents[target]--;
+                }
+            }
+        }
+        if (parents[0] == 0)
+            order[tail++] = 0;
+        while (head < tail) {
+            int n = order[head++];
+            if (n >= namedCount)
+                continue;
+            for (int target : moveTarget[n]) {
+                if (--parents[target] == 0)
+                    order[tail++] = target;
+            }
+        }
+
+        for (int n = 0; n < namedCount; n++) {
+            Stmt.GameNode node = nodes.get(n);
+            if (!reachable[n]) {
+                error.accept(node.name, "Node '" + node.name.lexeme + "' can't be reached from the root '" +
+                        nodes.get(0).name.lexeme + "'.");
+                valid = false;
+            } else if (parents[n] > 0) {
+                error.accept(node.name,
+                        "Node '" + node.name.lexeme + "' is part of a cycle; sequential games must be trees.");
+                valid = false;
+                break;
+            }
+        }
+        return valid ? new GameIndex(namedCount, nodeCount, edges, owner, moveTarget, order) : null;
+    }
+
+    private static void markReachable(int[][] moveTarget, int namedCount, boolean[] reachable) {
+        int[] stack = new int[reachable.length];
+        int top = 0;
+        stack[top++] = 0;
+        reachable[0] = true;
+        while (top > 0) {
+            int n = stack[--top];
+            if (n >= namedCount)
+                continue;
+            for (int target : moveTarget[n]) {
+                if (!reachable[target]) {
+                    reachable[target] = true;
+                    stack[top++] = target;
+                }
+            }
+        }
+    }
+
+    private static int playerIndex(List<Token> players, Token player) {
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).lexeme.equals(player.lexeme))
+                return i;
+        }
+        return -1;
+    }
+}
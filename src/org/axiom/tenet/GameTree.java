@@ -0,0 +1,42 @@
+package org.axiom.tenet;
+
+/**
+ * Node-by-node view of a sequential game for solvers that only look at the
+ * parts of the tree they visit (e.g. Monte Carlo tree search). Nodes are
+ * integer ids; implementations may create children on demand, so a search
+ * never forces the whole tree into memory.
+ */
+interface GameTree {
+    int TERMINAL = -1;
+    int CHANCE = -2;
+
+    int numPlayers();
+
+    String playerName(int player);
+
+    int root();
+
+    /** Player index to move, CHANCE, or TERMINAL. */
+    int owner(int node);
+
+    int actionCount(int node);
+
+    String action(int node, int action);
+
+    /** Node reached by taking an action; may expand the tree. */
+    int child(int node, int action);
+
+    /** Probability of an action at a chance node. */
+    double probability(int node, int action);
+
+    double payoff(int node, int player);
+
+    /**
+     * A view another thread can search alongside this one. Trees that are
+     * only read return themselves; trees that expand on demand return a copy
+     * with states of its own.
+     */
+    default GameTree forThread() {
+        return this;
+    }
+}
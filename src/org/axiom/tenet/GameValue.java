@@ -21,6 +21,14 @@ class GameValue {
         this.payoffs = payoffs;
     }
 
+    /**
+     * Strategies available to one player. Games declared in matrix form give
+     * every player the same list.
+     */
+    List<Token> strategiesFor(int player) {
+        return strategies;
+    }
+
     String getPlayersString() {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < players.size(); i++) {
@@ -42,6 +50,12 @@ class GameValue {
     }
 
     Object getPayoff(Token player, StrategyProfile profile, Interpreter interpreter) {
+        Expr payoff = payoffExpr(player, profile);
+        return payoff == null ? 0.0 : interpreter.evaluate(payoff);
+    }
+
+    /** The payoff expression declared for a player at a profile, or null if none. */
+    Expr payoffExpr(Token player, StrategyProfile profile) {
         Map<StrategyProfile, Expr> playerPayoffs = null;
         for (Token key : payoffs.keySet()) {
             if (key.lexeme.equals(player.lexeme)) {
@@ -51,14 +65,14 @@ class GameValue {
         }
 
         if (playerPayoffs == null)
-            return 0.0;
+            return null;
 
         for (Map.Entry<StrategyProfile, Expr> entry : playerPayoffs.entrySet()) {
             if (matches(entry.getKey(), profile)) {
-                return interpreter.evaluate(entry.getValue());
+                return entry.getValue();
             }
         }
-        return 0.0;
+        return null;
     }
 
     private boolean matches(StrategyProfile p1, StrategyProfile p2) {
@@ -0,0 +1,34 @@
+package org.axiom.tenet;
+
+import java.util.SplittableRandom;
+
+/**
+ * Standard normal draws by Marsaglia's polar method, which turns a pair of
+ * uniform draws inside the unit circle into two independent normals.
+ */
+class Gaussian {
+    /** Fills the array with draws, two at a time. */
+    static void fill(SplittableRandom random, double[] out) {
+        for (int k = 0; k < out.length; k += 2) {
+            double u;
+            double v;
+            double s;
+            do {
+                u = 2 * random.nextDouble() - 1;
+                v = 2 * random.nextDouble() - 1;
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+            double factor = Math.sqrt(-2 * Math.log(s) / s);
+            out[k] = u * factor;
+            if (k + 1 < out.length)
+                out[k + 1] = v * factor;
+        }
+    }
+
+    /** One draw; the pair's second value is dropped. */
+    static double next(SplittableRandom random) {
+        double[] one = new double[1];
+        fill(random, one);
+        return one[0];
+    }
+}
@@ -202,11 +202,7 @@ class GraphGenerator {
                 for (int i = 0; i < move.payoffs.size(); i++) {
                     if (i > 0)
                         payoffs.append(", ");
-                    double p = move.payoffs.get(i);
-                    if (p == (long) p)
-                        payoffs.append((long) p);
-                    else
-                        payoffs.append(p);
+                    payoffs.append(payoffLabel(move.payoffs.get(i)));
                 }
                 payoffs.append(")");
 
@@ -246,6 +242,20 @@ class GraphGenerator {
         }
     }
 
+    // Numbers (possibly negated) are shown; other payoff expressions are not evaluated
+    private static String payoffLabel(Expr payoff) {
+        String sign = "";
+        if (payoff instanceof Expr.Unary && ((Expr.Unary) payoff).operator.type == TokenType.MINUS) {
+            sign = "-";
+            payoff = ((Expr.Unary) payoff).right;
+        }
+        if (payoff instanceof Expr.Literal && ((Expr.Literal) payoff).value instanceof Double) {
+            double p = (Double) ((Expr.Literal) payoff).value;
+            return sign + (p == (long) p ? String.valueOf((long) p) : String.valueOf(p));
+        }
+        return "expr";
+    }
+
     private static String getPayoff(GameValue game, String player, Token s1, Token s2) {
         Map<StrategyProfile, Expr> playerPayoffs = null;
 
@@ -1,15 +1,31 @@
 package org.axiom.tenet;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+    // Largest tweak grid printed as a map of set ids, in points and columns
+    private static final int GRID_MAP_POINTS = 2500;
+    private static final int GRID_MAP_COLUMNS = 30;
+    private static final int ADAPTIVE_INTERVALS = 64; // first, even sampling of an adaptive tweak
 
     final Environment globals = new Environment();
     private Environment environment = globals;
     private final Map<Expr, Integer> locals = new HashMap<>();
+    SweepCluster cluster; // set by Tenet to spread grid tweaks over worker processes
+    final EquilibriumCache equilibriumCache = new EquilibriumCache(EquilibriumCache.CAPACITY);
 
     Interpreter() {
         // Native function: clock()
@@ -523,11 +539,21 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         locals.put(expr, depth);
     }
 
+    // Names of the globals read while a procedural game's rules run; null otherwise
+    Set<String> globalReads;
+
+    // Resolved depths are per expression, so an isolated copy can reuse them
+    void copyLocals(Interpreter source) {
+        locals.putAll(source.locals);
+    }
+
     private Object lookUpVariable(Token name, Expr expr) {
         Integer distance = locals.get(expr);
         if (distance != null) {
             return environment.getAt(distance, name.lexeme);
         } else {
+            if (globalReads != null)
+                globalReads.add(name.lexeme);
             return globals.get(name);
         }
     }
@@ -547,6 +573,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     // Game theory: solve statement - handles both normal form and sequential games
     @Override
     public Void visitSolveStmt(Stmt.Solve stmt) {
+        if (sweepWorker())
+            return null;
         Object game = environment.get(stmt.gameName);
 
         // Handle sequential games
@@ -554,6 +582,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             return solveSequentialGame((SequentialGameValue) game, stmt);
         }
 
+        if (game instanceof StochasticGameValue) {
+            return solveStochasticGame((StochasticGameValue) game, stmt);
+        }
+
+        if (game instanceof BayesianGameValue) {
+            return solveBayesianGame((BayesianGameValue) game, stmt);
+        }
+
+        if (game instanceof CoalitionGameValue) {
+            return solveCoalitionGame((CoalitionGameValue) game, stmt);
+        }
+
         // Handle normal form games
         if (!(game instanceof GameValue)) {
             throw new RuntimeError(stmt.gameName, "Can only solve games.");
@@ -564,8 +604,14 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         System.out.println("Players: " + gameValue.getPlayersString());
         System.out.println("Strategies: " + gameValue.getStrategiesString());
         System.out.println("-------------------------------------------");
+        printPureEquilibria(gameValue);
+        System.out.println("-------------------------------------------");
+        return null;
+    }
 
+    private void printPureEquilibria(GameValue gameValue) {
         NashSolver solver = new NashSolver(this);
+        long hits = equilibriumCache.hits;
         List<StrategyProfile> equilibria = solver.findPureEquilibria(gameValue);
 
         if (equilibria.isEmpty()) {
@@ -596,8 +642,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 System.out.println(sb.toString());
             }
         }
-        System.out.println("-------------------------------------------");
-        return null;
+        if (equilibriumCache.hits > hits)
+            System.out.println("(Solved before with these values; cache hits " + equilibriumCache.hits + ", misses "
+                    + equilibriumCache.misses + ", entries " + equilibriumCache.size() + " of "
+                    + equilibriumCache.capacity() + ", evictions " + equilibriumCache.evictions + ")");
     }
 
     private Void solveSequentialGame(SequentialGameValue game, Stmt.Solve stmt) {
@@ -610,13 +658,39 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             System.out.print(game.players.get(i).lexeme);
         }
         System.out.println();
-        System.out.println("Nodes: " + game.nodes.size());
+        if (game.isProcedural()) {
+            System.out.println("Nodes: generated by rules");
+        } else {
+            System.out.println("Nodes: " + game.nodes.size());
+        }
         System.out.println("-------------------------------------------");
 
-        BackwardInductionSolver solver = new BackwardInductionSolver();
-        BackwardInductionSolver.Solution solution = solver.solve(game);
+        String algorithm = stmt.algorithm == null ? "backward" : stmt.algorithm.lexeme;
+        int threads = 1;
+        switch (algorithm) {
+            case "backward":
+                threads = new SolverOptions("backward", stmt.options, "threads").count("threads", 1);
+                break;
+            case "cfr":
+                return solveWithCfr(game, stmt);
+            case "alphabeta":
+                return solveWithAlphaBeta(game, stmt);
+            case "mcts":
+                return solveWithMcts(game, stmt);
+            case "nash":
+                return solveWithNormalForm(game, stmt);
+            default:
+                throw new RuntimeError(stmt.algorithm, "Unknown algorithm '" + algorithm +
+                        "' for sequential games. Expected: backward, cfr, alphabeta, mcts, nash.");
+        }
+
+        CompiledGameTree tree = game.compile(this, stmt.gameName);
+        BackwardInductionSolver.Solution solution = new BackwardInductionSolver(tree).solve(threads);
 
         System.out.println("Subgame Perfect Equilibrium (Backward Induction):");
+        if (game.hasInformationSets()) {
+            System.out.println("  (information sets ignored; use 'solve " + game.name + " using cfr')");
+        }
 
         // Print the equilibrium path
         System.out.print("  Path: ");
@@ -635,7 +709,183 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             System.out.print(formatNumber(solution.payoffs.get(i)));
         }
         System.out.println(")");
+        if (game.isProcedural()) {
+            System.out.println("  Distinct states: " + tree.nodeCount);
+        }
+
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    /**
+     * solve G using nash: pure Nash equilibria of the reduced normal form,
+     * which includes equilibria backed by threats that are not credible.
+     */
+    private Void solveWithNormalForm(SequentialGameValue game, Stmt.Solve stmt) {
+        new SolverOptions("nash", stmt.options);
+        CompiledGameTree tree = game.compile(this, stmt.gameName);
+        ReducedNormalForm normalForm = ReducedNormalForm.of(game, tree, stmt.gameName);
+
+        System.out.println("Reduced normal form:");
+        System.out.println("  " + normalForm.getStrategiesString());
+        if (game.players.size() != 2) {
+            System.out.println("  Pure equilibria are only searched in two-player games.");
+        } else {
+            printPureEquilibria(normalForm);
+        }
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    /**
+     * solve G using cfr { iterations N, sampling external, threads T, seed S, report R, show K }
+     */
+    private Void solveWithCfr(SequentialGameValue game, Stmt.Solve stmt) {
+        SolverOptions options = new SolverOptions("cfr", stmt.options,
+                "iterations", "sampling", "threads", "seed", "report", "show");
+        int iterations = options.count("iterations", 1000);
+        int threads = options.count("threads", 1);
+        String sampling = options.word("sampling", threads > 1 ? "external" : "none", "none", "external");
+        if (threads > 1 && sampling.equals("none")) {
+            throw new RuntimeError(options.token("threads"),
+                    "Multithreaded CFR needs 'sampling external'; full traversals run on one thread.");
+        }
+        int reportEvery = options.count("report", Math.max(1, iterations / 10));
+        int show = options.count("show", 50);
+
+        CompiledGameTree tree = game.compile(this, stmt.gameName);
+        CfrSolver solver = new CfrSolver(tree);
+        CfrSolver.Progress progress = (iteration, exploitability) -> System.out
+                .println("  iteration " + iteration + ": exploitability " + String.format("%.6f", exploitability));
+
+        CfrSolver.Result result;
+        if (sampling.equals("external")) {
+            System.out.println("Monte Carlo CFR (external sampling, " + threads +
+                    (threads == 1 ? " thread" : " threads") + "):");
+            long seed = (long) options.number("seed", 1);
+            result = solver.solveExternalSampling(iterations, threads, seed, reportEvery, progress);
+        } else {
+            System.out.println("Counterfactual Regret Minimization (CFR+):");
+            result = solver.solveCfrPlus(iterations, reportEvery, progress);
+        }
+
+        System.out.println("Average strategy:");
+        for (int set = 0; set < tree.infoSetCount && set < show; set++) {
+            StringBuilder sb = new StringBuilder("  ");
+            sb.append(tree.infoSetName[set]).append(" (")
+                    .append(game.players.get(tree.infoSetOwner[set]).lexeme).append("): ");
+            int node = tree.infoSetNodes[set][0];
+            int slot = tree.infoSetFirstSlot[set];
+            for (int a = 0; a < tree.actionCount(node); a++) {
+                if (a > 0)
+                    sb.append(", ");
+                sb.append(tree.edgeAction[tree.firstEdge[node] + a]).append(" ")
+                        .append(String.format("%.3f", result.averageStrategy[slot + a]));
+            }
+            System.out.println(sb.toString());
+        }
+        if (tree.infoSetCount > show) {
+            System.out.println("  ... " + (tree.infoSetCount - show) + " more information sets");
+        }
 
+        System.out.print("  Expected payoffs: (");
+        for (int i = 0; i < result.expectedPayoffs.length; i++) {
+            if (i > 0)
+                System.out.print(", ");
+            System.out.print(formatNumber(result.expectedPayoffs[i]));
+        }
+        System.out.println(")");
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    /**
+     * solve G using alphabeta { depth D, deepening on }
+     */
+    private Void solveWithAlphaBeta(SequentialGameValue game, Stmt.Solve stmt) {
+        SolverOptions options = new SolverOptions("alphabeta", stmt.options, "depth", "deepening");
+        int depth = options.count("depth", AlphaBetaSolver.UNLIMITED);
+        boolean deepening = options.word("deepening", "off", "on", "off").equals("on");
+
+        CompiledGameTree tree = game.compile(this, stmt.gameName);
+        double total = AlphaBetaSolver.constantSum(tree);
+        if (Double.isNaN(total)) {
+            throw new RuntimeError(stmt.algorithm,
+                    "Alpha-beta needs a two-player game where every outcome pays the same total (zero-sum).");
+        }
+
+        AlphaBetaSolver.Result result = new AlphaBetaSolver(tree).solve(depth, deepening);
+
+        System.out.println("Alpha-Beta Search (two-player zero-sum):");
+        if (game.hasInformationSets()) {
+            System.out.println("  (information sets ignored; use 'solve " + game.name + " using cfr')");
+        }
+        System.out.print("  Path: ");
+        for (int i = 0; i < result.principalVariation.size(); i++) {
+            if (i > 0)
+                System.out.print(" -> ");
+            System.out.print(result.principalVariation.get(i));
+        }
+        System.out.println();
+
+        // Past a depth limit the value scores the horizon as neutral, so it is only an estimate
+        System.out.println("  " + (result.complete ? "Payoffs" : "Estimated payoffs") + ": (" +
+                formatNumber(result.value) + ", " + formatNumber(total - result.value) + ")");
+        if (!result.complete) {
+            System.out.println("  Depth limit " + result.depthReached +
+                    " reached; the path stops there and positions beyond it were scored as neutral.");
+        }
+        System.out.println("  Nodes explored: " + result.nodesVisited + " (tree has " +
+                String.format("%.0f", AlphaBetaSolver.unrolledSize(tree)) + " nodes, " +
+                tree.topologicalOrder.length + " distinct)");
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    /**
+     * solve G using mcts { iterations N, time S, threads T, seed X, exploration C }
+     * With only a time budget the search runs until the clock expires.
+     */
+    private Void solveWithMcts(SequentialGameValue game, Stmt.Solve stmt) {
+        SolverOptions options = new SolverOptions("mcts", stmt.options,
+                "iterations", "time", "threads", "seed", "exploration");
+        double seconds = options.number("time", 0);
+        if (seconds < 0) {
+            throw new RuntimeError(options.token("time"), "Option 'time' for mcts must not be negative.");
+        }
+        long iterations = options.has("iterations") || seconds == 0
+                ? options.count("iterations", 10000)
+                : Long.MAX_VALUE;
+        int threads = options.count("threads", 1);
+        long seed = (long) options.number("seed", 1);
+        double exploration = options.number("exploration", Math.sqrt(2));
+
+        GameTree tree = game.tree(this, stmt.gameName);
+        MctsSolver.Result result = new MctsSolver(tree, exploration).search(iterations, seconds, threads, seed);
+
+        System.out.println("Monte Carlo Tree Search (UCT, " + threads + (threads == 1 ? " thread" : " threads") +
+                ", " + result.iterations + " iterations):");
+        if (result.recommended < 0) {
+            System.out.println("  The root is terminal; nothing to search.");
+            System.out.println("-------------------------------------------");
+            return null;
+        }
+        System.out.println("  Recommended move: " + result.rootMoves.get(result.recommended).action);
+        for (MctsSolver.MoveStats move : result.rootMoves) {
+            StringBuilder sb = new StringBuilder("    ");
+            sb.append(move.action).append(": ").append(move.visits).append(" visits");
+            if (move.visits > 0) {
+                sb.append(", estimated payoffs (");
+                for (int p = 0; p < move.meanPayoffs.length; p++) {
+                    if (p > 0)
+                        sb.append(", ");
+                    sb.append(formatNumber(move.meanPayoffs[p]));
+                }
+                sb.append(")");
+            }
+            System.out.println(sb.toString());
+        }
+        System.out.println("  Search tree: " + result.searchNodes + " nodes");
         System.out.println("-------------------------------------------");
         return null;
     }
@@ -664,9 +914,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     // Visualization statement
     @Override
     public Void visitVisualizeStmt(Stmt.Visualize stmt) {
+        if (sweepWorker())
+            return null;
         Object game = environment.get(stmt.gameName);
 
         if (game instanceof SequentialGameValue) {
+            if (((SequentialGameValue) game).isProcedural()) {
+                throw new RuntimeError(stmt.gameName, "Cannot draw procedural game '" + stmt.gameName.lexeme +
+                        "'; its nodes are only generated while solving.");
+            }
             String dot = GraphGenerator.generateGameTree((SequentialGameValue) game);
             System.out.println(dot);
         } else if (game instanceof GameValue) {
@@ -713,67 +969,817 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitTweakStmt(Stmt.Tweak stmt) {
         Object gameObj = environment.get(stmt.gameName);
+        SolverOptions options = new SolverOptions("tweak", stmt.options, "threads", "export");
+        int threads = options.count("threads", 1);
+        String export = options.string("export", null);
+        if (export != null && stmt.ranges.get(0).tolerance != null) {
+            throw new RuntimeError(options.token("export"), "Adaptive sweeps cannot be exported; they have no " +
+                    "grid of points.");
+        }
+        if (sweepWorker()) {
+            // A sweep worker solves only the grid shards it is sent; the coordinator prints
+            if (gameObj instanceof GameValue && stmt.ranges.get(0).tolerance == null)
+                sweepGrid((GameValue) gameObj, stmt, threads);
+            return null;
+        }
+        if (gameObj instanceof SequentialGameValue) {
+            if (threads > 1) {
+                throw new RuntimeError(options.token("threads"), "Sequential games are swept serially; each step " +
+                        "re-solves only what the variable changes.");
+            }
+            if (stmt.ranges.size() > 1) {
+                throw new RuntimeError(stmt.ranges.get(1).variable, "Sequential games are tweaked one variable " +
+                        "at a time.");
+            }
+            if (stmt.ranges.get(0).tolerance != null) {
+                throw new RuntimeError(stmt.ranges.get(0).tolerance, "Adaptive sweeps need a normal-form game; " +
+                        "a sequential game's payoffs change at every step.");
+            }
+            if (export != null) {
+                throw new RuntimeError(options.token("export"), "Only normal-form sweeps can be exported.");
+            }
+            return tweakSequentialGame((SequentialGameValue) gameObj, stmt);
+        }
         if (!(gameObj instanceof GameValue)) {
             throw new RuntimeError(stmt.gameName, "Can only tweak games.");
         }
 
         GameValue game = (GameValue) gameObj;
-        NashSolver solver = new NashSolver(this);
+        System.out.println("-----------------------------------------------------------");
+        if (stmt.ranges.size() == 1) {
+            Stmt.TweakRange range = stmt.ranges.get(0);
+            System.out.println("MECHANISM DESIGN: Tweaking '" + range.variable.lexeme +
+                    "' in game '" + game.name + "'");
+            if (range.tolerance != null) {
+                System.out.println("Range: " + formatNumber(range.fromValue) + " to " +
+                        formatNumber(range.toValue) + " (adaptive, tolerance " + range.tolerance.lexeme + ")");
+                System.out.println("-----------------------------------------------------------");
+                tweakAdaptive(game, range, threads);
+                System.out.println("-----------------------------------------------------------");
+                return null;
+            }
+            System.out.println("Range: " + formatNumber(range.fromValue) + " to " +
+                    formatNumber(range.toValue) + " (step " + formatNumber(range.stepValue) + ")");
+            System.out.println("-----------------------------------------------------------");
+            TweakGrid grid = sweepGrid(game, stmt, threads);
+            if (export != null) {
+                // Each point is in the file; only the sets are listed
+                printGrid(grid);
+                export(grid, export, options.token("export"));
+            } else {
+                for (int point = 0; point < grid.points; point++) {
+                    System.out.println(range.variable.lexeme + "=" + formatNumber(grid.values[0][point]) + ": " +
+                            describeEquilibria(grid.sets.list.get(grid.setId[point])));
+                }
+            }
+        } else {
+            StringBuilder names = new StringBuilder();
+            StringBuilder ranges = new StringBuilder();
+            for (Stmt.TweakRange range : stmt.ranges) {
+                names.append(names.length() > 0 ? ", '" : "'").append(range.variable.lexeme).append("'");
+                ranges.append(ranges.length() > 0 ? " x " : "").append(range.variable.lexeme).append(" ")
+                        .append(formatNumber(range.fromValue)).append(" to ").append(formatNumber(range.toValue))
+                        .append(" (step ").append(formatNumber(range.stepValue)).append(")");
+            }
+            System.out.println("MECHANISM DESIGN: Tweaking " + names + " in game '" + game.name + "'");
+            System.out.println("Grid: " + ranges);
+            System.out.println("-----------------------------------------------------------");
+            TweakGrid grid = sweepGrid(game, stmt, threads);
+            printGrid(grid);
+            if (export != null)
+                export(grid, export, options.token("export"));
+        }
+        System.out.println("-----------------------------------------------------------");
+        return null;
+    }
+
+    // Writes a swept grid to the file named by the export option, then reads
+    // it back to check the layout and that every point landed in its set
+    private void export(TweakGrid grid, String file, Token path) {
+        long bytes;
+        SweepFile.Contents written;
+        try {
+            bytes = SweepFile.write(grid, Paths.get(file));
+            written = SweepFile.read(Paths.get(file));
+        } catch (IOException | InvalidPathException e) {
+            throw new RuntimeError(path, "Could not export to '" + file + "': " + e.getMessage());
+        }
+        if (written.points != grid.points || !Arrays.equals(written.count, Arrays.stream(grid.counts())
+                .asLongStream().toArray()))
+            throw new RuntimeError(path, "Exported file '" + file + "' does not match the sweep.");
+        StringBuilder columns = new StringBuilder();
+        for (int v = 0; v < written.variables.length; v++) {
+            columns.append(v > 0 ? ", " : "").append(written.variables[v]).append(" ")
+                    .append(formatNumber(written.first[v])).append(" .. ").append(formatNumber(written.last[v]));
+        }
+        System.out.println("Exported " + grid.points + " points to '" + file + "' (" + bytes + " bytes; " + columns
+                + "; columns at byte " + written.columnsAt + ")");
+    }
+
+    private String describeEquilibria(List<StrategyProfile> equilibria) {
+        StringBuilder sb = new StringBuilder();
+        if (equilibria.isEmpty()) {
+            sb.append("No pure Nash equilibrium");
+        } else {
+            sb.append("Equilibria = ");
+            for (int i = 0; i < equilibria.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                StrategyProfile eq = equilibria.get(i);
+                sb.append("(");
+                for (int j = 0; j < eq.strategies.size(); j++) {
+                    if (j > 0)
+                        sb.append(", ");
+                    sb.append(eq.strategies.get(j).lexeme);
+                }
+                sb.append(")");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * True in a sweep worker, which skips every analysis that only prints and
+     * leaves the globals as they were; the coordinator runs them. Otherwise
+     * each worker would repeat them alongside it, on the same cores, before
+     * the first shard.
+     */
+    private boolean sweepWorker() {
+        return cluster != null && cluster.serving();
+    }
+
+    // A tweak's grid, spread over the sweep workers when there are any, along with the globals the game reads
+    private TweakGrid sweepGrid(GameValue game, Stmt.Tweak stmt, int threads) {
+        TweakGrid grid = new TweakGrid(stmt.ranges);
+        if (cluster == null)
+            return sweep(game, grid, threads);
+        List<String> inputs = EquilibriumCache.variablesRead(game);
+        if (inputs == null) {
+            inputs = new ArrayList<>(globals.values().keySet());
+            Collections.sort(inputs);
+        }
+        return cluster.sweep(grid, stmt.keyword, globals, inputs, () -> {
+            Interpreter worker = Snapshot.isolate(this);
+            int[][] changed = PayoffMatrix.supports(game) ? changedCells(new PayoffMatrix(game, worker), stmt.ranges)
+                    : null;
+            PayoffMatrix matrix = changed == null ? null : new PayoffMatrix(game, worker);
+            NashSolver solver = new NashSolver(worker);
+            return (from, to) -> sweepPoints(grid, game, changed, from, to, worker.globals, matrix, solver);
+        });
+    }
+
+    /**
+     * Solves a game at every point of a grid. Serially the
+     * variables are set here and restored afterwards. With several threads
+     * each worker has its own isolated copy of the globals, so this
+     * interpreter is never touched; points are split into fixed chunks whose
+     * sets are merged in sweep order, so the grid is the same either way.
+     */
+    private TweakGrid sweep(GameValue game, TweakGrid grid, int threads) {
+        List<Stmt.TweakRange> ranges = grid.ranges;
+        int[][] changed = PayoffMatrix.supports(game) ? changedCells(new PayoffMatrix(game, this), ranges) : null;
+        if (threads <= 1) {
+            Object[] original = new Object[ranges.size()];
+            for (int v = 0; v < original.length; v++) {
+                try {
+                    original[v] = environment.get(ranges.get(v).variable);
+                } catch (RuntimeError e) {
+                    // Variable doesn't exist yet - that's okay
+                }
+            }
+            PayoffMatrix matrix = changed == null ? null : new PayoffMatrix(game, this);
+            grid.merge(0, grid.points, sweepPoints(grid, game, changed, 0, grid.points, environment, matrix,
+                    new NashSolver(this)));
+            for (int v = 0; v < original.length; v++) {
+                if (original[v] != null)
+                    environment.define(ranges.get(v).variable.lexeme, original[v]);
+            }
+            return grid;
+        }
+
+        ThreadLocal<Interpreter> workers = ThreadLocal.withInitial(() -> Snapshot.isolate(this));
+        ThreadLocal<PayoffMatrix> matrices = ThreadLocal.withInitial(() -> new PayoffMatrix(game, workers.get()));
+        int chunk = Math.max(1, Math.min(4096, grid.points / (threads * 8)));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<TweakGrid.Sets>> tasks = new ArrayList<>();
+            for (int start = 0; start < grid.points; start += chunk) {
+                int from = start;
+                int to = Math.min(grid.points, start + chunk);
+                tasks.add(pool.submit(() -> {
+                    Interpreter worker = workers.get();
+                    return sweepPoints(grid, game, changed, from, to, worker.globals,
+                            changed == null ? null : matrices.get(), new NashSolver(worker));
+                }));
+            }
+            for (int t = 0; t < tasks.size(); t++) {
+                int from = t * chunk;
+                grid.merge(from, Math.min(grid.points, from + chunk), tasks.get(t).join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return grid;
+    }
+
+    /**
+     * Finds where the equilibria change along a range. The range is sampled
+     * at ADAPTIVE_INTERVALS + 1 evenly spaced points, then each interval whose
+     * ends differ is bisected until narrower than the tolerance, so k changes
+     * cost about k log2(width / tolerance) solves. A change that comes and goes
+     * between two samples is missed. Intervals are bisected independently, on
+     * worker threads when there are several.
+     */
+    private void tweakAdaptive(GameValue game, Stmt.TweakRange range, int threads) {
+        double tolerance = (double) range.tolerance.literal;
+        double[] samples = new double[ADAPTIVE_INTERVALS + 1];
+        for (int k = 0; k <= ADAPTIVE_INTERVALS; k++) {
+            samples[k] = range.fromValue + (range.toValue - range.fromValue) * k / ADAPTIVE_INTERVALS;
+        }
+        TweakGrid coarse = sweep(game, new TweakGrid(range, samples), threads);
+        List<Integer> changes = new ArrayList<>();
+        for (int k = 0; k < ADAPTIVE_INTERVALS; k++) {
+            if (coarse.setId[k] != coarse.setId[k + 1])
+                changes.add(k);
+        }
+
+        String variable = range.variable.lexeme;
+        int[] cells = PayoffMatrix.supports(game) ? new PayoffMatrix(game, this).cellsReading(variable) : null;
+        List<List<TweakGrid.Threshold>> found = new ArrayList<>();
+        long solves = samples.length;
+        if (threads <= 1) {
+            Object original = null;
+            try {
+                original = environment.get(range.variable);
+            } catch (RuntimeError e) {
+                // Variable doesn't exist yet - that's okay
+            }
+            PayoffMatrix matrix = cells == null ? null : new PayoffMatrix(game, this);
+            NashSolver solver = new NashSolver(this);
+            for (int k : changes) {
+                List<TweakGrid.Threshold> thresholds = new ArrayList<>();
+                solves += bisect(game, variable, samples[k], samples[k + 1], coarse.sets.list.get(coarse.setId[k]),
+                        coarse.sets.list.get(coarse.setId[k + 1]), tolerance, environment, matrix, cells, solver,
+                        thresholds);
+                found.add(thresholds);
+            }
+            if (original != null)
+                environment.define(variable, original);
+        } else {
+            ThreadLocal<Interpreter> workers = ThreadLocal.withInitial(() -> Snapshot.isolate(this));
+            ThreadLocal<PayoffMatrix> matrices = ThreadLocal.withInitial(() -> new PayoffMatrix(game, workers.get()));
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<ForkJoinTask<Integer>> tasks = new ArrayList<>();
+                for (int k : changes) {
+                    List<TweakGrid.Threshold> thresholds = new ArrayList<>();
+                    found.add(thresholds);
+                    tasks.add(pool.submit(() -> {
+                        Interpreter worker = workers.get();
+                        return bisect(game, variable, samples[k], samples[k + 1],
+                                coarse.sets.list.get(coarse.setId[k]), coarse.sets.list.get(coarse.setId[k + 1]),
+                                tolerance, worker.globals, cells == null ? null : matrices.get(), cells,
+                                new NashSolver(worker), thresholds);
+                    }));
+                }
+                for (ForkJoinTask<Integer> task : tasks) {
+                    solves += task.join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        // Thresholds are printed to the tolerance's decimal places, at the middle of their interval
+        String format = "%." + Math.max(2, (int) Math.ceil(-Math.log10(tolerance))) + "f";
+        System.out.println(variable + "=" + formatNumber(range.fromValue) + ": " +
+                describeEquilibria(coarse.sets.list.get(coarse.setId[0])));
+        int count = 0;
+        for (List<TweakGrid.Threshold> thresholds : found) {
+            for (TweakGrid.Threshold threshold : thresholds) {
+                double middle = threshold.below + (threshold.above - threshold.below) / 2;
+                System.out.println(variable + "=" + String.format(format, middle) + ": " +
+                        describeEquilibria(threshold.equilibria));
+                count++;
+            }
+        }
+        double fixed = Math.floor((range.toValue - range.fromValue) / tolerance) + 1;
+        System.out.println((count == 1 ? "1 threshold" : count + " thresholds") + " found to within " +
+                range.tolerance.lexeme + " in " + solves + " solves (a fixed step of " + range.tolerance.lexeme +
+                " takes " + formatNumber(fixed) + ").");
+    }
+
+    /**
+     * Narrows an interval whose ends have different equilibria, 'low' at
+     * 'below' and 'high' at 'above', adding each threshold inside it to
+     * 'found' in order. A midpoint with equilibria unlike either end splits
+     * the interval in two. Returns the number of solves.
+     */
+    private int bisect(GameValue game, String variable, double below, double above, List<StrategyProfile> low,
+            List<StrategyProfile> high, double tolerance, Environment scope, PayoffMatrix matrix, int[] cells,
+            NashSolver solver, List<TweakGrid.Threshold> found) {
+        int solves = 0;
+        while (above - below > tolerance) {
+            double middle = below + (above - below) / 2;
+            if (middle <= below || middle >= above)
+                break; // no double lies between them
+            scope.define(variable, middle);
+            List<StrategyProfile> equilibria = matrix != null ? matrix.resolve(cells)
+                    : solver.findPureEquilibria(game);
+            solves++;
+            if (TweakGrid.Sets.same(equilibria, low)) {
+                below = middle;
+            } else if (TweakGrid.Sets.same(equilibria, high)) {
+                above = middle;
+            } else {
+                solves += bisect(game, variable, below, middle, low, equilibria, tolerance, scope, matrix, cells,
+                        solver, found);
+                below = middle;
+                low = equilibria;
+            }
+        }
+        found.add(new TweakGrid.Threshold(below, above, high));
+        return solves;
+    }
+
+    // Cells to re-evaluate when a variable and every one after it change
+    private static int[][] changedCells(PayoffMatrix matrix, List<Stmt.TweakRange> ranges) {
+        int[][] changed = new int[ranges.size()][];
+        int[] after = new int[0];
+        for (int v = ranges.size() - 1; v >= 0; v--) {
+            after = IntStream.concat(Arrays.stream(after),
+                    Arrays.stream(matrix.cellsReading(ranges.get(v).variable.lexeme))).sorted().distinct().toArray();
+            changed[v] = after;
+        }
+        return changed;
+    }
+
+    /**
+     * Solves points from..to-1 into the grid, with set ids from a table of
+     * their own. Each point sets only the variables that differ from the one
+     * before, and the matrix re-evaluates only the cells reading them.
+     */
+    private TweakGrid.Sets sweepPoints(TweakGrid grid, GameValue game, int[][] changed, int from, int to,
+            Environment scope, PayoffMatrix matrix, NashSolver solver) {
+        TweakGrid.Sets sets = new TweakGrid.Sets();
+        List<StrategyProfile> previous = null;
+        int id = -1;
+        for (int point = from; point < to; point++) {
+            int first = point == from ? 0 : grid.firstChange(point - 1, point);
+            for (int v = first; v < grid.values.length; v++) {
+                scope.define(grid.ranges.get(v).variable.lexeme, grid.values[v][grid.coordinate(point, v)]);
+            }
+            List<StrategyProfile> equilibria = matrix != null ? matrix.resolve(changed[first])
+                    : solver.findPureEquilibria(game);
+            // The matrix hands back the same list while the equilibria stay put
+            if (equilibria != previous) {
+                id = sets.intern(equilibria);
+                previous = equilibria;
+            }
+            grid.setId[point] = id;
+        }
+        return sets;
+    }
+
+    /**
+     * Prints each distinct equilibrium set with how many points have it
+     * and, for grids of two or more variables small enough to read, a map of
+     * the set at each point: the last variable across, the one before it down,
+     * and a table per value of any earlier ones.
+     */
+    private void printGrid(TweakGrid grid) {
+        int dimensions = grid.values.length;
+        System.out.println(grid.points + " points, " + grid.sets.list.size() + " distinct equilibrium sets:");
+        int[] counts = grid.counts();
+        for (int id = 0; id < counts.length; id++) {
+            System.out.println("  #" + id + " (" + counts[id] + (counts[id] == 1 ? " point" : " points") + "): " +
+                    describeEquilibria(grid.sets.list.get(id)));
+        }
+        if (dimensions < 2)
+            return;
+        double[] across = grid.values[dimensions - 1];
+        double[] down = grid.values[dimensions - 2];
+        if (grid.points > GRID_MAP_POINTS || across.length > GRID_MAP_COLUMNS)
+            return;
+
+        String acrossName = grid.ranges.get(dimensions - 1).variable.lexeme;
+        String downName = grid.ranges.get(dimensions - 2).variable.lexeme;
+        int width = String.valueOf(counts.length - 1).length();
+        for (double value : across) {
+            width = Math.max(width, formatNumber(value).length());
+        }
+        int labelWidth = 0;
+        for (double value : down) {
+            labelWidth = Math.max(labelWidth, downName.length() + 1 + formatNumber(value).length());
+        }
+        int table = across.length * down.length;
+        for (int start = 0; start < grid.points; start += table) {
+            StringBuilder slice = new StringBuilder();
+            for (int v = 0; v < dimensions - 2; v++) {
+                slice.append(slice.length() > 0 ? ", " : "").append(grid.ranges.get(v).variable.lexeme).append("=")
+                        .append(formatNumber(grid.values[v][grid.coordinate(start, v)]));
+            }
+            System.out.println("Set at each point (" + downName + " down, " + acrossName + " across" +
+                    (slice.length() > 0 ? "; " + slice : "") + "):");
+            StringBuilder header = new StringBuilder("  " + pad("", labelWidth));
+            for (double value : across) {
+                header.append(" ").append(pad(formatNumber(value), width));
+            }
+            System.out.println(header);
+            for (int row = 0; row < down.length; row++) {
+                String label = downName + "=" + formatNumber(down[row]);
+                StringBuilder line = new StringBuilder("  " + pad(label, labelWidth));
+                for (int column = 0; column < across.length; column++) {
+                    int id = grid.setId[start + row * across.length + column];
+                    line.append(" ").append(pad(String.valueOf(id), width));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+
+    // Right-aligns text in a field of the given width
+    private static String pad(String text, int width) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = text.length(); i < width; i++) {
+            sb.append(' ');
+        }
+        return sb.append(text).toString();
+    }
+
+    /**
+     * Searches the ranges for the parameters whose equilibria score best on
+     * the objective. A point scores its worst pure equilibrium, judged with
+     * each player's name bound to their payoff there; points without one
+     * score nothing. Every evaluation runs on an isolated copy of the
+     * globals, so the caller's values are untouched.
+     */
+    @Override
+    public Void visitOptimizeStmt(Stmt.Optimize stmt) {
+        if (sweepWorker())
+            return null;
+        Object gameObj = environment.get(stmt.gameName);
+        if (!(gameObj instanceof GameValue)) {
+            throw new RuntimeError(stmt.gameName, "Can only optimize normal-form games.");
+        }
+        GameValue game = (GameValue) gameObj;
+        List<Stmt.TweakRange> ranges = stmt.ranges;
+        SolverOptions options = new SolverOptions("optimize", stmt.options, "samples", "starts", "iterations",
+                "seed", "threads");
+        int samples = options.count("samples", 64 * ranges.size());
+        int starts = Math.min(samples, options.count("starts", 4));
+        int iterations = options.count("iterations", 200);
+        long seed = (long) options.number("seed", 42);
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+
+        double[] lower = new double[ranges.size()];
+        double[] upper = new double[ranges.size()];
+        StringBuilder names = new StringBuilder();
+        StringBuilder bounds = new StringBuilder();
+        for (int v = 0; v < lower.length; v++) {
+            Stmt.TweakRange range = ranges.get(v);
+            lower[v] = range.fromValue;
+            upper[v] = range.toValue;
+            names.append(v > 0 ? ", '" : "'").append(range.variable.lexeme).append("'");
+            bounds.append(v > 0 ? ", " : "").append(range.variable.lexeme).append(" in [")
+                    .append(formatNumber(lower[v])).append(", ").append(formatNumber(upper[v])).append("]");
+        }
+        int[] cells = PayoffMatrix.supports(game) ? changedCells(new PayoffMatrix(game, this), ranges)[0] : null;
+        MechanismOptimizer.Result result = MechanismOptimizer.maximize(lower, upper, () -> {
+            Interpreter worker = Snapshot.isolate(this);
+            PayoffMatrix matrix = cells == null ? null : new PayoffMatrix(game, worker);
+            NashSolver solver = new NashSolver(worker);
+            return x -> {
+                List<StrategyProfile> equilibria = equilibriaAt(game, ranges, x, worker, matrix, cells, solver);
+                return worstObjective(game, stmt, equilibria, worker);
+            };
+        }, samples, starts, iterations, seed, threads);
+
+        System.out.println("-----------------------------------------------------------");
+        System.out.println("MECHANISM DESIGN: Optimizing " + names + " in game '" + game.name + "'");
+        System.out.println((stmt.maximize ? "Maximize" : "Minimize") + " the objective at the worst pure " +
+                "equilibrium over " + bounds);
+        System.out.println("-----------------------------------------------------------");
+        if (result.best == null) {
+            System.out.println("No pure Nash equilibrium at any sampled point.");
+        } else {
+            StringBuilder best = new StringBuilder("Best: ");
+            for (int v = 0; v < lower.length; v++) {
+                best.append(v > 0 ? ", " : "").append(ranges.get(v).variable.lexeme).append("=")
+                        .append(formatPrecise(result.best[v]));
+            }
+            System.out.println(best);
+            System.out.println("Objective: " + formatPrecise(stmt.maximize ? result.value : -result.value));
+            Interpreter shown = Snapshot.isolate(this);
+            System.out.println(describeEquilibria(equilibriaAt(game, ranges, result.best, shown, null, null,
+                    new NashSolver(shown))));
+        }
+        System.out.println("Search: " + result.samples + " samples, then " + result.runs + " Nelder-Mead " +
+                (result.runs == 1 ? "run" : "runs") + "; " + result.evaluations + " evaluations in all");
+        System.out.println("-----------------------------------------------------------");
+        return null;
+    }
+
+    // Equilibria with the parameters set to x in the worker's globals
+    private List<StrategyProfile> equilibriaAt(GameValue game, List<Stmt.TweakRange> ranges, double[] x,
+            Interpreter worker, PayoffMatrix matrix, int[] cells, NashSolver solver) {
+        for (int v = 0; v < x.length; v++) {
+            worker.globals.define(ranges.get(v).variable.lexeme, x[v]);
+        }
+        return matrix != null ? matrix.resolve(cells) : solver.findPureEquilibria(game);
+    }
+
+    // Objective at the worst of the equilibria, negated when minimizing; -infinity if there are none
+    private double worstObjective(GameValue game, Stmt.Optimize stmt, List<StrategyProfile> equilibria,
+            Interpreter worker) {
+        double worst = Double.POSITIVE_INFINITY;
+        for (StrategyProfile profile : equilibria) {
+            for (Token player : game.players) {
+                Object payoff = game.getPayoff(player, profile, worker);
+                if (!(payoff instanceof Double)) {
+                    throw new RuntimeError(stmt.gameName, "Payoffs of game '" + game.name + "' must be numbers.");
+                }
+                worker.globals.define(player.lexeme, payoff);
+            }
+            Object value = worker.evaluate(stmt.objective);
+            if (!(value instanceof Double) || Double.isNaN((Double) value)) {
+                throw new RuntimeError(stmt.keyword, "The objective must be a number.");
+            }
+            worst = Math.min(worst, stmt.maximize ? (Double) value : -(Double) value);
+        }
+        return equilibria.isEmpty() ? Double.NEGATIVE_INFINITY : worst;
+    }
+
+    // Whole numbers as such, others to four places
+    private String formatPrecise(double value) {
+        if (value == (long) value) {
+            return String.format("%d", (long) value);
+        }
+        return String.format("%.4f", value);
+    }
+
+    /**
+     * Solves a game at random draws of its parameters and reports how often
+     * each profile is an equilibrium, and how much of that variation each
+     * parameter explains on its own (first-order) and with the others
+     * (total). Draws are solved on isolated copies of the globals.
+     */
+    @Override
+    public Void visitSensitivityStmt(Stmt.Sensitivity stmt) {
+        if (sweepWorker())
+            return null;
+        Object gameObj = environment.get(stmt.gameName);
+        if (!(gameObj instanceof GameValue)) {
+            throw new RuntimeError(stmt.gameName, "Can only analyze normal-form games.");
+        }
+        GameValue game = (GameValue) gameObj;
+        List<Stmt.Draw> draws = stmt.draws;
+        SolverOptions options = new SolverOptions("sensitivity", stmt.options, "samples", "seed", "threads");
+        int samples = options.count("samples", 1000);
+        long seed = (long) options.number("seed", 42);
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+
+        // Cells each parameter feeds, and those any of them feeds, for incremental re-solves
+        int d = draws.size();
+        int[][] cells = null;
+        if (PayoffMatrix.supports(game)) {
+            PayoffMatrix matrix = new PayoffMatrix(game, this);
+            cells = new int[d + 1][];
+            for (int i = 0; i < d; i++) {
+                cells[i] = matrix.cellsReading(draws.get(i).variable.lexeme);
+            }
+            cells[d] = Arrays.stream(cells, 0, d).flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+        }
+        int[][] feeds = cells;
+        SensitivityAnalysis.Result result = SensitivityAnalysis.analyze(draws, () -> {
+            Interpreter worker = Snapshot.isolate(this);
+            PayoffMatrix matrix = feeds == null ? null : new PayoffMatrix(game, worker);
+            NashSolver solver = new NashSolver(worker);
+            double[] last = new double[d];
+            Arrays.fill(last, Double.NaN); // so the first draw defines every parameter
+            return x -> {
+                int changed = -1;
+                for (int i = 0; i < d; i++) {
+                    if (x[i] != last[i]) {
+                        worker.globals.define(draws.get(i).variable.lexeme, x[i]);
+                        last[i] = x[i];
+                        changed = changed == -1 ? i : d;
+                    }
+                }
+                if (matrix == null)
+                    return solver.findPureEquilibria(game);
+                return matrix.resolve(changed == -1 ? new int[0] : feeds[changed]);
+            };
+        }, samples, seed, threads);
+
+        StringBuilder names = new StringBuilder();
+        StringBuilder laws = new StringBuilder();
+        for (int i = 0; i < d; i++) {
+            Stmt.Draw draw = draws.get(i);
+            names.append(i > 0 ? ", '" : "'").append(draw.variable.lexeme).append("'");
+            laws.append(i > 0 ? ", " : "").append(draw.variable.lexeme).append(" ~ ")
+                    .append(draw.distribution.lexeme).append("(").append(formatNumber(draw.arguments[0]))
+                    .append(", ").append(formatNumber(draw.arguments[1])).append(")");
+        }
+        System.out.println("-----------------------------------------------------------");
+        System.out.println("MECHANISM DESIGN: Sensitivity of game '" + game.name + "' to " + names);
+        System.out.println("Draws: " + laws);
+        System.out.println("-----------------------------------------------------------");
+        List<String> labels = new ArrayList<>();
+        int width = 0;
+        for (StrategyProfile profile : result.outcomes) {
+            String label = profile == null ? "No pure equilibrium" : describeProfile(profile);
+            labels.add(label);
+            width = Math.max(width, label.length());
+        }
+        System.out.println("How often each is an equilibrium, of " + result.draws + " draws (95% interval):");
+        for (int o = 0; o < labels.size(); o++) {
+            double[] interval = result.interval(o);
+            System.out.println("  " + labels.get(o) + pad("", width - labels.get(o).length()) + "  " +
+                    String.format("%6.2f%%  [%.2f%%, %.2f%%]", 100.0 * result.count[o] / result.draws,
+                            100 * interval[0], 100 * interval[1]));
+        }
+        StringBuilder header = new StringBuilder("Sensitivity indices, first-order / total:\n  ")
+                .append(pad("", width));
+        for (Stmt.Draw draw : draws) {
+            header.append("  ").append(pad(draw.variable.lexeme, 15));
+        }
+        System.out.println(header);
+        for (int o = 0; o < labels.size(); o++) {
+            if (Double.isNaN(result.firstOrder[o][0]))
+                continue; // the same in every draw
+            StringBuilder line = new StringBuilder("  ").append(labels.get(o))
+                    .append(pad("", width - labels.get(o).length()));
+            for (int i = 0; i < d; i++) {
+                line.append("  ").append(pad(String.format("%.3f / %.3f", result.firstOrder[o][i],
+                        result.total[o][i]), 15));
+            }
+            System.out.println(line);
+        }
+        System.out.println("Solved " + result.solves + " draws: " + samples + " samples x (" + d + " " +
+                (d == 1 ? "parameter" : "parameters") + " + 2)");
+        System.out.println("-----------------------------------------------------------");
+        return null;
+    }
+
+    /**
+     * Simulates a sealed-bid auction many times and reports its revenue and
+     * efficiency. Bidders bid in equilibrium unless the bid option names a
+     * function from value to bid, which then runs on isolated copies of the
+     * globals when there are several threads.
+     */
+    @Override
+    public Void visitAuctionStmt(Stmt.Auction stmt) {
+        if (sweepWorker())
+            return null;
+        SolverOptions options = new SolverOptions("auction", stmt.options, "bidders", "runs", "bid", "seed",
+                "threads");
+        int bidders = options.count("bidders", 10);
+        if (bidders < 2) {
+            throw new RuntimeError(options.token("bidders"), "An auction needs at least 2 bidders.");
+        }
+        int runs = options.count("runs", 1000);
+        long seed = (long) options.number("seed", 42);
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+        double low = stmt.values.arguments[0];
+        double high = stmt.values.arguments[1];
+
+        Supplier<AuctionSimulator.BidFunction> workers = null;
+        if (options.has("bid")) {
+            Token name = options.token("bid");
+            if (name.type != TokenType.IDENTIFIER) {
+                throw new RuntimeError(name, "Option 'bid' for auction must name a function.");
+            }
+            Object function = environment.get(name);
+            if (!(function instanceof TenetCallable) || ((TenetCallable) function).arity() != 1) {
+                throw new RuntimeError(name, "Bid '" + name.lexeme + "' must be a function of a bidder's value.");
+            }
+            if (threads <= 1) {
+                workers = () -> value -> bid(this, (TenetCallable) function, name, value);
+            } else {
+                workers = () -> {
+                    Snapshot.Isolated<TenetCallable> isolated = Snapshot.isolate(this, (TenetCallable) function);
+                    return value -> bid(isolated.interpreter, isolated.value, name, value);
+                };
+            }
+        }
+        String format = stmt.format.lexeme;
+        AuctionSimulator.Result result = AuctionSimulator.simulate(format, bidders, low, high, workers, runs, seed,
+                threads);
 
         System.out.println("-----------------------------------------------------------");
-        System.out.println("MECHANISM DESIGN: Tweaking '" + stmt.variable.lexeme +
+        System.out.println("AUCTION: " + format.replace('_', '-') + ", " + bidders + " bidders with values ~ " +
+                "uniform(" + formatNumber(low) + ", " + formatNumber(high) + ")");
+        System.out.println("Bids: " + (workers == null ? "equilibrium" : "function '" + options.token("bid").lexeme +
+                "'"));
+        System.out.println("-----------------------------------------------------------");
+        double half = SensitivityAnalysis.Z95 * result.revenueDeviation / Math.sqrt(runs);
+        System.out.println("Revenue: " + formatPrecise(result.revenue) + " (95% interval " +
+                formatPrecise(result.revenue - half) + " to " + formatPrecise(result.revenue + half) + ")");
+        if (workers == null) {
+            System.out.println("Equilibrium revenue: " +
+                    formatPrecise(AuctionSimulator.equilibriumRevenue(bidders, low, high)));
+        }
+        System.out.println("Efficiency: " + String.format("%.2f%%", 100 * result.efficiency) +
+                " of the highest value goes to the winner; efficient in " +
+                String.format("%.2f%%", 100.0 * result.efficientRuns / runs) + " of runs");
+        System.out.println("Bidder surplus: " + formatPrecise(result.surplus));
+        System.out.println("Runs: " + runs + " (" + (long) runs * bidders + " bids)");
+        System.out.println("-----------------------------------------------------------");
+        return null;
+    }
+
+    private static double bid(Interpreter interpreter, TenetCallable function, Token name, double value) {
+        Object bid = function.call(interpreter, Arrays.asList(value));
+        if (!(bid instanceof Double)) {
+            throw new RuntimeError(name, "Bid '" + name.lexeme + "' must return a number.");
+        }
+        return (Double) bid;
+    }
+
+    // (S1, S2, ...)
+    private static String describeProfile(StrategyProfile profile) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int j = 0; j < profile.strategies.size(); j++) {
+            if (j > 0)
+                sb.append(", ");
+            sb.append(profile.strategies.get(j).lexeme);
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Sweeps a variable read by a sequential game's payoffs. The first value is
+     * solved in full; after that only the leaves whose payoffs read the
+     * variable are re-evaluated, and only their ancestors are re-solved.
+     */
+    private Void tweakSequentialGame(SequentialGameValue game, Stmt.Tweak stmt) {
+        Stmt.TweakRange range = stmt.ranges.get(0);
+
+        System.out.println("-----------------------------------------------------------");
+        System.out.println("MECHANISM DESIGN: Tweaking '" + range.variable.lexeme +
                 "' in game '" + game.name + "'");
-        System.out.println("Range: " + formatNumber(stmt.fromValue) + " to " +
-                formatNumber(stmt.toValue) + " (step " + formatNumber(stmt.stepValue) + ")");
+        System.out.println("Range: " + formatNumber(range.fromValue) + " to " +
+                formatNumber(range.toValue) + " (step " + formatNumber(range.stepValue) + ")");
         System.out.println("-----------------------------------------------------------");
 
-        // Store original value
         Object originalValue = null;
         try {
-            originalValue = environment.get(stmt.variable);
+            originalValue = environment.get(range.variable);
         } catch (RuntimeError e) {
             // Variable doesn't exist yet - that's okay
         }
 
-        // Sweep through values
-        for (double value = stmt.fromValue; value <= stmt.toValue; value += stmt.stepValue) {
-            // Update the variable
-            environment.define(stmt.variable.lexeme, value);
-
-            // Find equilibria at this value
-            List<StrategyProfile> equilibria = solver.findPureEquilibria(game);
-
-            // Print results
-            StringBuilder sb = new StringBuilder();
-            sb.append(stmt.variable.lexeme).append("=").append(formatNumber(value)).append(": ");
-
-            if (equilibria.isEmpty()) {
-                sb.append("No pure Nash equilibrium");
+        CompiledGameTree tree = null;
+        BackwardInductionSolver solver = null;
+        int[] leaves = null;
+        long recomputed = 0;
+        long full = 0;
+        for (double value = range.fromValue; value <= range.toValue; value += range.stepValue) {
+            environment.define(range.variable.lexeme, value);
+
+            BackwardInductionSolver.Solution solution;
+            if (game.isProcedural()) {
+                // The rules may generate other states for each value, so the
+                // game is compiled again (when they read the variable) and
+                // solved in full
+                tree = game.compile(this, stmt.gameName);
+                solver = new BackwardInductionSolver(tree);
+                solution = solver.solve();
+            } else if (solver == null) {
+                tree = game.compile(this, stmt.gameName);
+                solver = new BackwardInductionSolver(tree);
+                leaves = tree.leavesReading(range.variable.lexeme);
+                solution = solver.solve();
             } else {
-                sb.append("Equilibria = ");
-                for (int i = 0; i < equilibria.size(); i++) {
-                    if (i > 0)
-                        sb.append(", ");
-                    StrategyProfile eq = equilibria.get(i);
-                    sb.append("(");
-                    for (int j = 0; j < eq.strategies.size(); j++) {
-                        if (j > 0)
-                            sb.append(", ");
-                        sb.append(eq.strategies.get(j).lexeme);
-                    }
-                    sb.append(")");
+                for (int leaf : leaves) {
+                    tree.evaluatePayoffs(this, leaf);
                 }
+                solution = solver.resolve(leaves);
+            }
+            recomputed += solver.lastRecomputed;
+            full += tree.topologicalOrder.length;
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(range.variable.lexeme).append("=").append(formatNumber(value)).append(": Path = ");
+            sb.append(String.join(" -> ", solution.path)).append(", Payoffs = (");
+            for (int i = 0; i < solution.payoffs.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(formatNumber(solution.payoffs.get(i)));
             }
+            sb.append(")");
             System.out.println(sb.toString());
         }
 
-        // Restore original value if it existed
         if (originalValue != null) {
-            environment.define(stmt.variable.lexeme, originalValue);
+            environment.define(range.variable.lexeme, originalValue);
         }
 
+        if (tree != null) {
+            System.out.println("Re-solved " + recomputed + " node values (" + full + " for full solves).");
+        }
         System.out.println("-----------------------------------------------------------");
-
         return null;
     }
 
@@ -784,10 +1790,752 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return String.format("%.2f", value);
     }
 
+    @Override
+    public Void visitAutomatonStmt(Stmt.Automaton stmt) {
+        environment.define(stmt.name.lexeme, new AutomatonValue(stmt));
+        return null;
+    }
+
+    /**
+     * Plays every pair of listed strategies against each other in the
+     * repeated game, then looks for pure equilibria of the resulting
+     * meta-game in which each player picks a strategy.
+     */
+    @Override
+    public Void visitRepeatedStmt(Stmt.Repeated stmt) {
+        if (sweepWorker())
+            return null;
+        Object gameObj = environment.get(stmt.gameName);
+        if (!(gameObj instanceof GameValue) || ((GameValue) gameObj).players.size() != 2) {
+            throw new RuntimeError(stmt.gameName, "Can only repeat two-player normal-form games.");
+        }
+        GameValue game = (GameValue) gameObj;
+        List<Token> actions = game.strategiesFor(0);
+        double[][][] stage = stagePayoffs(game, stmt.gameName);
+
+        double rounds = Double.POSITIVE_INFINITY;
+        if (stmt.rounds != null) {
+            rounds = (double) stmt.rounds.literal;
+            if (rounds < 1 || rounds != Math.floor(rounds)) {
+                throw new RuntimeError(stmt.rounds, "Rounds must be a positive whole number.");
+            }
+        }
+        double discount = stmt.discount == null ? 1 : (double) stmt.discount.literal;
+        if (discount <= 0 || discount > 1) {
+            throw new RuntimeError(stmt.discount, "Discount must be greater than 0 and at most 1.");
+        }
+
+        List<RepeatedGameSolver.Automaton> automata = new ArrayList<>();
+        for (Token name : stmt.strategies) {
+            Object declared = lookUpStrategy(name);
+            RepeatedGameSolver.Automaton automaton = declared instanceof AutomatonValue
+                    ? RepeatedGameSolver.compile((AutomatonValue) declared, actions)
+                    : RepeatedGameSolver.builtIn(name.lexeme, actions);
+            if (automaton == null) {
+                throw new RuntimeError(name, "Unknown strategy '" + name.lexeme +
+                        "'. Declare it with 'automaton' or use TitForTat, GrimTrigger or Always<Action>.");
+            }
+            automata.add(automaton);
+        }
+
+        System.out.println("-------------------------------------------");
+        System.out.println("Repeated Game: " + game.name + " (" +
+                (stmt.rounds == null ? "infinitely repeated" : formatNumber(rounds) + " rounds") +
+                (stmt.discount == null ? "" : ", discount " + stmt.discount.lexeme) + ")");
+        System.out.println("Strategies: " + String.join(", ",
+                stmt.strategies.stream().map(t -> t.lexeme).toArray(String[]::new)));
+        System.out.println("-------------------------------------------");
+        System.out.println("Average payoff per round:");
+
+        // Meta-game payoffs, rounded so floating-point noise cannot split ties
+        RepeatedGameSolver solver = new RepeatedGameSolver(stage, rounds, discount);
+        Map<Token, Map<StrategyProfile, Expr>> payoffs = new HashMap<>();
+        for (Token player : game.players) {
+            payoffs.put(player, new HashMap<>());
+        }
+        for (int i = 0; i < automata.size(); i++) {
+            for (int j = 0; j < automata.size(); j++) {
+                double[] value = solver.evaluate(automata.get(i), automata.get(j));
+                System.out.println("  " + automata.get(i).name + " vs " + automata.get(j).name + ": (" +
+                        formatNumber(value[0]) + ", " + formatNumber(value[1]) + ")");
+                StrategyProfile profile = new StrategyProfile(
+                        Arrays.asList(stmt.strategies.get(i), stmt.strategies.get(j)));
+                for (int p = 0; p < 2; p++) {
+                    double rounded = Math.round(value[p] * 1e4) / 1e4;
+                    payoffs.get(game.players.get(p)).put(profile, new Expr.Literal(rounded));
+                }
+            }
+        }
+        System.out.println("-------------------------------------------");
+        printPureEquilibria(new GameValue(game.name + " (repeated)", game.players, stmt.strategies, payoffs));
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    /**
+     * Plays every pair of listed strategies for a fixed number of rounds, the
+     * matches spread over worker threads, and ranks the strategies by their
+     * average payoff per round.
+     */
+    @Override
+    public Void visitTournamentStmt(Stmt.Tournament stmt) {
+        if (sweepWorker())
+            return null;
+        Object gameObj = environment.get(stmt.gameName);
+        if (!(gameObj instanceof GameValue) || ((GameValue) gameObj).players.size() != 2) {
+            throw new RuntimeError(stmt.gameName, "Tournaments need a two-player normal-form game.");
+        }
+        GameValue game = (GameValue) gameObj;
+        List<Token> actions = game.strategiesFor(0);
+        double[][][] stage = stagePayoffs(game, stmt.gameName);
+
+        SolverOptions options = new SolverOptions("tournament", stmt.options, "rounds", "threads");
+        int rounds = options.count("rounds", 200);
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+
+        List<Tournament.Entrant> entrants = new ArrayList<>();
+        for (Token name : stmt.strategies) {
+            Object declared = lookUpStrategy(name);
+            if (declared instanceof TenetFunction) {
+                if (((TenetFunction) declared).arity() != 3) {
+                    throw new RuntimeError(name, "Strategy function '" + name.lexeme +
+                            "' must take (round, myLast, theirLast).");
+                }
+                entrants.add(Tournament.function(name, (TenetFunction) declared, actions));
+                continue;
+            }
+            RepeatedGameSolver.Automaton automaton = declared instanceof AutomatonValue
+                    ? RepeatedGameSolver.compile((AutomatonValue) declared, actions)
+                    : RepeatedGameSolver.builtIn(name.lexeme, actions);
+            if (automaton == null) {
+                throw new RuntimeError(name, "Unknown strategy '" + name.lexeme +
+                        "'. Use a function of (round, myLast, theirLast), an automaton, " +
+                        "or TitForTat, GrimTrigger or Always<Action>.");
+            }
+            entrants.add(Tournament.automaton(automaton));
+        }
+
+        Tournament tournament = new Tournament(stage, rounds, entrants);
+        tournament.run(this, threads);
+        int k = entrants.size();
+
+        System.out.println("-------------------------------------------");
+        System.out.println("Tournament: " + game.name + " (" + k + " strategies, " + rounds + " rounds per match)");
+        System.out.println("-------------------------------------------");
+        System.out.println("Standings (average payoff per round):");
+        double[] average = tournament.averages();
+        Integer[] ranking = new Integer[k];
+        for (int i = 0; i < k; i++) {
+            ranking[i] = i;
+        }
+        // Stable sort: ties keep the order the strategies were listed in
+        Arrays.sort(ranking, (x, y) -> Double.compare(average[y], average[x]));
+        for (int r = 0; r < k; r++) {
+            System.out.println("  " + (r + 1) + ". " + entrants.get(ranking[r]).name() + ": " +
+                    formatNumber(average[ranking[r]]));
+        }
+
+        if (k <= 20) {
+            System.out.println("Head to head (row's average per round against column):");
+            int width = 0;
+            for (Tournament.Entrant entrant : entrants) {
+                width = Math.max(width, entrant.name().length());
+            }
+            StringBuilder header = new StringBuilder(String.format("  %-" + width + "s", ""));
+            for (int j = 0; j < k; j++) {
+                header.append(String.format(" %6d", j + 1));
+            }
+            System.out.println(header);
+            for (int i = 0; i < k; i++) {
+                StringBuilder row = new StringBuilder(String.format("  %-" + width + "s", entrants.get(i).name()));
+                for (int j = 0; j < k; j++) {
+                    row.append(String.format(" %6s", formatNumber(tournament.score[i][j])));
+                }
+                System.out.println(row + "   (" + (i + 1) + ")");
+            }
+        } else {
+            System.out.println("Head to head matrix omitted for more than 20 strategies.");
+        }
+
+        int matches = k * (k + 1) / 2;
+        long total = 0;
+        int slowestRow = 0;
+        int slowestColumn = 0;
+        for (int i = 0; i < k; i++) {
+            for (int j = i; j < k; j++) {
+                total += tournament.nanos[i][j];
+                if (tournament.nanos[i][j] > tournament.nanos[slowestRow][slowestColumn]) {
+                    slowestRow = i;
+                    slowestColumn = j;
+                }
+            }
+        }
+        System.out.println("Timing: " + matches + " matches on " + threads + " threads in " +
+                String.format("%.1f", tournament.wallNanos / 1e6) + " ms (mean " +
+                String.format("%.2f", total / 1e6 / matches) + " ms per match, slowest " +
+                entrants.get(slowestRow).name() + " vs " + entrants.get(slowestColumn).name() + " " +
+                String.format("%.2f", tournament.nanos[slowestRow][slowestColumn] / 1e6) + " ms)");
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    // Stage payoffs of a two-player game, evaluated once per action profile
+    private double[][][] stagePayoffs(GameValue game, Token where) {
+        List<Token> actions = game.strategiesFor(0);
+        double[][][] stage = new double[actions.size()][actions.size()][2];
+        for (int a = 0; a < actions.size(); a++) {
+            for (int b = 0; b < actions.size(); b++) {
+                StrategyProfile profile = new StrategyProfile(Arrays.asList(actions.get(a), actions.get(b)));
+                for (int p = 0; p < 2; p++) {
+                    Object payoff = game.getPayoff(game.players.get(p), profile, this);
+                    if (!(payoff instanceof Double)) {
+                        throw new RuntimeError(where, "Payoffs of game '" + game.name + "' must be numbers.");
+                    }
+                    stage[a][b][p] = (Double) payoff;
+                }
+            }
+        }
+        return stage;
+    }
+
+    // Declared strategy of a repeated game, or null for a built-in name
+    private Object lookUpStrategy(Token name) {
+        try {
+            return environment.get(name);
+        } catch (RuntimeError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Void visitStochasticStmt(Stmt.Stochastic stmt) {
+        GameValue[] stages = new GameValue[stmt.states.size()];
+        for (int s = 0; s < stages.length; s++) {
+            Token stageName = stmt.states.get(s).game;
+            Object stage = environment.get(stageName);
+            if (!(stage instanceof GameValue) || ((GameValue) stage).players.size() != 2) {
+                throw new RuntimeError(stageName, "Stage game '" + stageName.lexeme +
+                        "' must be a two-player normal-form game.");
+            }
+            stages[s] = (GameValue) stage;
+        }
+        environment.define(stmt.name.lexeme, new StochasticGameValue(stmt, stages));
+        return null;
+    }
+
+    /**
+     * Zero-sum stochastic games default to Shapley value iteration and
+     * general-sum ones to policy iteration for a Markov perfect equilibrium.
+     */
+    private Void solveStochasticGame(StochasticGameValue game, Stmt.Solve stmt) {
+        StochasticGameSolver solver = game.compile(this, stmt.gameName);
+        String algorithm = stmt.algorithm == null ? (solver.isZeroSum() ? "shapley" : "policy")
+                : stmt.algorithm.lexeme;
+        if (!algorithm.equals("shapley") && !algorithm.equals("policy")) {
+            throw new RuntimeError(stmt.algorithm,
+                    "Unknown algorithm '" + algorithm + "' for stochastic games. Use shapley or policy.");
+        }
+        if (algorithm.equals("shapley") && !solver.isZeroSum()) {
+            throw new RuntimeError(stmt.algorithm, "Shapley iteration needs a zero-sum game; '" + game.name +
+                    "' has stage payoffs that do not add up to 0. Use policy instead.");
+        }
+        SolverOptions options = new SolverOptions(algorithm, stmt.options, "tolerance", "iterations", "threads");
+        double tolerance = options.number("tolerance", 1e-6);
+        if (tolerance <= 0) {
+            throw new RuntimeError(options.token("tolerance"), "Option 'tolerance' must be positive.");
+        }
+        int iterations = options.count("iterations", algorithm.equals("shapley") ? 10000 : 200);
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+
+        StochasticGameSolver.Result result = algorithm.equals("shapley")
+                ? solver.shapley(tolerance, iterations, threads)
+                : solver.markovPerfect(tolerance, iterations, threads);
+
+        System.out.println("-------------------------------------------");
+        System.out.println("Stochastic Game: " + game.name);
+        System.out.println("Players: " + game.players.get(0).lexeme + ", " + game.players.get(1).lexeme);
+        System.out.println("States: " + solver.stateNames.length + " (discount " +
+                game.declaration.discount.lexeme + ")");
+        System.out.println("-------------------------------------------");
+        String method = algorithm.equals("shapley") ? "Shapley value iteration" : "Policy iteration (Markov perfect)";
+        if (result.converged) {
+            System.out.println(method + ": converged after " + result.iterations +
+                    (result.iterations == 1 ? " iteration." : " iterations."));
+        } else {
+            System.out.println(method + ": stopped after " + result.iterations +
+                    " iterations without converging (last change " + String.format("%.2e", result.change) + ").");
+        }
+        for (int s = 0; s < solver.stateNames.length; s++) {
+            System.out.println("State " + solver.stateNames[s] + ":");
+            System.out.println("  Values: (" + formatNumber(result.value[s][0]) + ", " +
+                    formatNumber(result.value[s][1]) + ")");
+            for (int p = 0; p < 2; p++) {
+                System.out.println("  " + game.players.get(p).lexeme + ": " +
+                        formatMix(solver.actionNames[s][p], result.strategy[s][p]));
+            }
+        }
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    // A pure strategy by name, a mixed one as its actions with weights
+    private String formatMix(String[] actions, double[] mix) {
+        StringBuilder sb = new StringBuilder();
+        for (int a = 0; a < actions.length; a++) {
+            if (mix[a] > 1 - 1e-9)
+                return actions[a];
+            if (mix[a] < 1e-9)
+                continue;
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(actions[a]).append(" ").append(formatNumber(mix[a]));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Void visitBayesianGameStmt(Stmt.BayesianGame stmt) {
+        environment.define(stmt.name.lexeme, new BayesianGameValue(stmt));
+        return null;
+    }
+
+    private Void solveBayesianGame(BayesianGameValue game, Stmt.Solve stmt) {
+        if (stmt.algorithm != null && !stmt.algorithm.lexeme.equals("bayes")) {
+            throw new RuntimeError(stmt.algorithm, "Unknown algorithm '" + stmt.algorithm.lexeme +
+                    "' for Bayesian games. Use bayes.");
+        }
+        SolverOptions options = new SolverOptions("bayes", stmt.options, "starts", "iterations", "seed");
+        int starts = options.has("starts") ? options.count("starts", 1) : 16;
+        int iterations = options.count("iterations", 1000);
+        long seed = (long) options.number("seed", 42);
+
+        BayesNashSolver solver = game.compile(this);
+        List<int[][]> equilibria = solver.solve(starts, iterations, seed);
+
+        System.out.println("-------------------------------------------");
+        System.out.println("Bayesian Game: " + game.name);
+        System.out.println("Players: " + String.join(", ",
+                game.players.stream().map(t -> t.lexeme).toArray(String[]::new)));
+        for (int p = 0; p < game.players.size(); p++) {
+            if (!game.hasTypes(p))
+                continue;
+            StringBuilder types = new StringBuilder();
+            for (int t = 0; t < solver.typeCount[p]; t++) {
+                if (t > 0)
+                    types.append(", ");
+                types.append(game.declaration.types.get(p).get(t).lexeme).append(" ")
+                        .append(formatNumber(game.declaration.priors.get(p).get(t)));
+            }
+            System.out.println("Types of " + game.players.get(p).lexeme + ": " + types);
+        }
+        System.out.println("-------------------------------------------");
+        if (equilibria.isEmpty()) {
+            System.out.println("No pure Bayes-Nash equilibrium reached by best-response iteration.");
+        } else {
+            System.out.println("Bayes-Nash Equilibria (Pure Strategy):");
+            for (int[][] strategy : equilibria) {
+                StringBuilder sb = new StringBuilder("  -> ");
+                for (int p = 0; p < game.players.size(); p++) {
+                    if (p > 0)
+                        sb.append("; ");
+                    sb.append(game.players.get(p).lexeme).append(": ");
+                    List<Token> actions = game.declaration.strategies.get(p);
+                    if (!game.hasTypes(p)) {
+                        sb.append(actions.get(strategy[p][0]).lexeme);
+                        continue;
+                    }
+                    for (int t = 0; t < strategy[p].length; t++) {
+                        if (t > 0)
+                            sb.append(", ");
+                        sb.append(game.declaration.types.get(p).get(t).lexeme).append(" -> ")
+                                .append(actions.get(strategy[p][t]).lexeme);
+                    }
+                }
+                System.out.println(sb);
+                double[] expected = solver.expectedPayoffs(strategy);
+                StringBuilder payoffs = new StringBuilder("     Expected payoffs: (");
+                for (int p = 0; p < expected.length; p++) {
+                    if (p > 0)
+                        payoffs.append(", ");
+                    payoffs.append(formatNumber(expected[p]));
+                }
+                System.out.println(payoffs + ")");
+            }
+        }
+        System.out.println("Best-response iteration: " + solver.sweeps + " sweeps over type-contingent " +
+                "strategies.");
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    @Override
+    public Void visitMatchStmt(Stmt.Match stmt) {
+        if (sweepWorker())
+            return null;
+        SolverOptions options = new SolverOptions("match", stmt.options, "noise", "seed", "threads");
+        double noise = options.number("noise", 0);
+        long seed = (long) options.number("seed", 42);
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+        Object[] proposers = matchAgents(stmt.proposers);
+        Object[] receivers = matchAgents(stmt.receivers);
+        int[][] proposerLists = matchPreferences(stmt.proposers, proposers, stmt.receivers, receivers, noise, seed,
+                0, threads);
+        int[][] receiverLists = matchPreferences(stmt.receivers, receivers, stmt.proposers, proposers, noise, seed,
+                1, threads);
+        int[] current = stmt.current == null ? null : currentMatching(stmt, proposers, receivers);
+
+        StableMatching market = new StableMatching(proposerLists, receiverLists, threads);
+        System.out.println("-------------------------------------------");
+        System.out.println("Matching: " + stmt.name.lexeme);
+        System.out.println("Proposers: " + describeAgents(stmt.proposers, proposers));
+        System.out.println("Receivers: " + describeAgents(stmt.receivers, receivers));
+        System.out.println("-------------------------------------------");
+        int[] proposerOptimal = market.proposerOptimal();
+        printMatching("Proposer-optimal", market, proposerOptimal, proposers, receivers);
+        int[] receiverOptimal = market.receiverOptimal();
+        printMatching("Receiver-optimal", market, receiverOptimal, proposers, receivers);
+        int flexible = 0;
+        for (int i = 0; i < proposers.length; i++) {
+            if (proposerOptimal[i] != receiverOptimal[i])
+                flexible++;
+        }
+        System.out.println("Proposers with more than one stable partner: " + flexible);
+
+        if (current != null) {
+            long[] count = new long[1];
+            List<int[]> pairs = market.blockingPairs(current, 20, count);
+            String name = ((Expr.Variable) stmt.current).name.lexeme;
+            System.out.println("Blocking pairs of '" + name + "': " + (count[0] == 0 ? "none" : count[0]));
+            for (int[] pair : pairs) {
+                System.out.println("  (" + stringify(proposers[pair[0]]) + ", " + stringify(receivers[pair[1]]) +
+                        ")");
+            }
+            if (count[0] > pairs.size())
+                System.out.println("  ... and " + (count[0] - pairs.size()) + " more");
+        }
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    // Agent ids as score functions see them: names, or numbers from 1
+    private Object[] matchAgents(Stmt.MatchSide side) {
+        if (side.count == null)
+            return side.agents.stream().map(agent -> agent.lexeme).toArray();
+        double count = (double) side.count.literal;
+        if (count < 1 || count != Math.floor(count) || count > Integer.MAX_VALUE) {
+            throw new RuntimeError(side.count, "The number of " + side.keyword.lexeme +
+                    " must be a positive whole number.");
+        }
+        Object[] ids = new Object[(int) count];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (double) (i + 1);
+        }
+        return ids;
+    }
+
+    private String describeAgents(Stmt.MatchSide side, Object[] ids) {
+        if (side.count != null)
+            return ids.length + "";
+        return String.join(", ", Arrays.stream(ids).map(id -> (String) id).toArray(String[]::new));
+    }
+
+    /**
+     * Preference lists of one side: the given lists, or every agent of the
+     * other side ranked by score.
+     */
+    private int[][] matchPreferences(Stmt.MatchSide side, Object[] self, Stmt.MatchSide otherSide, Object[] other,
+            double noise, long seed, int sideIndex, int threads) {
+        if (side.score == null) {
+            Map<String, Integer> index = new HashMap<>();
+            for (int j = 0; j < other.length; j++) {
+                index.put((String) other[j], j);
+            }
+            int[][] lists = new int[self.length][];
+            for (int i = 0; i < self.length; i++) {
+                List<Token> list = side.lists.get(i);
+                lists[i] = new int[list.size()];
+                for (int k = 0; k < list.size(); k++) {
+                    lists[i][k] = index.get(list.get(k).lexeme);
+                }
+            }
+            return lists;
+        }
+
+        Token name = ((Expr.Variable) side.score).name;
+        Object function = evaluate(side.score);
+        int arity = function instanceof TenetCallable ? ((TenetCallable) function).arity() : -1;
+        if (arity != 1 && arity != 2) {
+            throw new RuntimeError(name, "Score '" + name.lexeme + "' must be a function of (self, other) " +
+                    "or (other).");
+        }
+        Supplier<StableMatching.Scores> workers;
+        if (arity == 1) {
+            // The same score for everyone on this side, so call it once per agent
+            double[] common = new double[other.length];
+            for (int j = 0; j < other.length; j++) {
+                common[j] = score(this, (TenetCallable) function, name, Arrays.asList(other[j]));
+            }
+            StableMatching.Scores shared = (i, j) -> common[j];
+            workers = () -> shared;
+        } else if (threads <= 1) {
+            workers = () -> (i, j) -> score(this, (TenetCallable) function, name, Arrays.asList(self[i], other[j]));
+        } else {
+            workers = () -> {
+                Snapshot.Isolated<TenetCallable> isolated = Snapshot.isolate(this, (TenetCallable) function);
+                return (i, j) -> score(isolated.interpreter, isolated.value, name, Arrays.asList(self[i], other[j]));
+            };
+        }
+        return StableMatching.listsFromScores(self.length, other.length, workers, noise, seed, sideIndex, threads);
+    }
+
+    private static double score(Interpreter interpreter, TenetCallable function, Token name, List<Object> arguments) {
+        Object value = function.call(interpreter, arguments);
+        if (!(value instanceof Double)) {
+            throw new RuntimeError(name, "Score '" + name.lexeme + "' must return a number.");
+        }
+        return (Double) value;
+    }
+
+    // Calls the 'current' function for each proposer; nil means unmatched
+    private int[] currentMatching(Stmt.Match stmt, Object[] proposers, Object[] receivers) {
+        Token name = ((Expr.Variable) stmt.current).name;
+        Object function = evaluate(stmt.current);
+        if (!(function instanceof TenetCallable) || ((TenetCallable) function).arity() != 1) {
+            throw new RuntimeError(name, "Current matching '" + name.lexeme + "' must be a function of a proposer.");
+        }
+        Map<Object, Integer> index = new HashMap<>();
+        for (int j = 0; j < receivers.length; j++) {
+            index.put(receivers[j], j);
+        }
+        int[] partner = new int[proposers.length];
+        boolean[] taken = new boolean[receivers.length];
+        for (int i = 0; i < proposers.length; i++) {
+            Object receiver = ((TenetCallable) function).call(this, Arrays.asList(proposers[i]));
+            if (receiver == null) {
+                partner[i] = StableMatching.NONE;
+                continue;
+            }
+            Integer j = index.get(receiver);
+            if (j == null) {
+                throw new RuntimeError(name, "Current matching '" + name.lexeme + "' pairs " +
+                        stringify(proposers[i]) + " with " + stringify(receiver) + ", which is not a receiver.");
+            }
+            if (taken[j]) {
+                throw new RuntimeError(name, "Current matching '" + name.lexeme + "' gives receiver " +
+                        stringify(receiver) + " more than one partner.");
+            }
+            taken[j] = true;
+            partner[i] = j;
+        }
+        return partner;
+    }
+
+    private void printMatching(String title, StableMatching market, int[] partner, Object[] proposers,
+            Object[] receivers) {
+        int pairs = 0;
+        long proposerRanks = 0;
+        long receiverRanks = 0;
+        boolean[] matched = new boolean[receivers.length];
+        for (int i = 0; i < partner.length; i++) {
+            if (partner[i] == StableMatching.NONE)
+                continue;
+            pairs++;
+            matched[partner[i]] = true;
+            proposerRanks += market.proposerRank(i, partner[i]) + 1;
+            receiverRanks += market.receiverRank(partner[i], i) + 1;
+        }
+        System.out.println(title + " matching (" + pairs + " pair" + (pairs == 1 ? "" : "s") + ", " +
+                market.proposals + " proposal" + (market.proposals == 1 ? "" : "s") + "):");
+        // Pairs are listed for small markets only
+        if (proposers.length <= 20 && receivers.length <= 20) {
+            for (int i = 0; i < partner.length; i++) {
+                System.out.println("  " + stringify(proposers[i]) + " - " +
+                        (partner[i] == StableMatching.NONE ? "unmatched" : stringify(receivers[partner[i]])));
+            }
+            List<String> single = new ArrayList<>();
+            for (int j = 0; j < receivers.length; j++) {
+                if (!matched[j])
+                    single.add(stringify(receivers[j]));
+            }
+            if (!single.isEmpty())
+                System.out.println("  Unmatched receivers: " + String.join(", ", single));
+        }
+        if (pairs > 0) {
+            System.out.println("  Average rank of partner (1 = first choice): proposers " +
+                    formatNumber((double) proposerRanks / pairs) + ", receivers " +
+                    formatNumber((double) receiverRanks / pairs));
+        }
+    }
+
+    @Override
+    public Void visitCoalitionGameStmt(Stmt.CoalitionGame stmt) {
+        TenetCallable function = null;
+        if (stmt.worth != null) {
+            Object worth = evaluate(stmt.worth);
+            if (!(worth instanceof TenetCallable) || ((TenetCallable) worth).arity() != 1) {
+                throw new RuntimeError(((Expr.Variable) stmt.worth).name,
+                        "The value of a coalition game must be a function of one coalition.");
+            }
+            function = (TenetCallable) worth;
+        }
+        environment.define(stmt.name.lexeme, new CoalitionGameValue(stmt, function));
+        return null;
+    }
+
+    private Void solveCoalitionGame(CoalitionGameValue game, Stmt.Solve stmt) {
+        String algorithm = stmt.algorithm == null ? "shapley" : stmt.algorithm.lexeme;
+        switch (algorithm) {
+            case "shapley":
+                return solveShapley(game, stmt);
+            case "core":
+            case "nucleolus":
+                return solveCore(game, stmt, algorithm);
+            default:
+                throw new RuntimeError(stmt.algorithm, "Unknown algorithm '" + algorithm +
+                        "' for coalition games. Expected: shapley, core, nucleolus.");
+        }
+    }
+
+    private void printCoalitionHeader(CoalitionGameValue game) {
+        System.out.println("-------------------------------------------");
+        System.out.println("Coalition Game: " + game.name);
+        System.out.println("Players: " + String.join(", ",
+                game.players.stream().map(t -> t.lexeme).toArray(String[]::new)));
+        System.out.println("-------------------------------------------");
+    }
+
+    private Void solveShapley(CoalitionGameValue game, Stmt.Solve stmt) {
+        int n = game.players.size();
+        SolverOptions options = new SolverOptions("shapley", stmt.options, "method", "samples", "threads", "seed");
+        String method = options.word("method", n <= ShapleySolver.EXACT_LIMIT ? "exact" : "sampled",
+                "exact", "sampled");
+        if (method.equals("exact") && n > ShapleySolver.EXACT_LIMIT) {
+            throw new RuntimeError(options.token("method"), "Exact Shapley values are limited to " +
+                    ShapleySolver.EXACT_LIMIT + " players; '" + game.name + "' has " + n + ".");
+        }
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+
+        printCoalitionHeader(game);
+        if (method.equals("exact")) {
+            double[] worth = game.allCoalitions(this, stmt.gameName, threads);
+            double[] value = ShapleySolver.exact(worth, n, threads);
+            System.out.println("Grand coalition: " + formatNumber(worth[worth.length - 1]));
+            System.out.println("Shapley values (exact, " + worth.length + " coalitions):");
+            for (int p = 0; p < n; p++) {
+                System.out.println("  " + game.players.get(p).lexeme + ": " + formatNumber(value[p]));
+            }
+        } else {
+            int samples = options.count("samples", 10000);
+            long seed = (long) options.number("seed", 42);
+            ShapleySolver.Estimate estimate = ShapleySolver.sample(n, game.workers(this, stmt.gameName),
+                    samples, seed, threads);
+            long grand = (1L << n) - 1;
+            System.out.println("Grand coalition: " + formatNumber(game.worth(this, stmt.gameName).of(grand)));
+            System.out.println("Shapley values (sampled, " + samples + " orderings, 95% confidence):");
+            for (int p = 0; p < n; p++) {
+                // Four places, so narrow intervals still show
+                System.out.println("  " + game.players.get(p).lexeme + ": " +
+                        String.format("%.4f +/- %.4f", estimate.mean[p], estimate.halfWidth[p]));
+            }
+        }
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    /**
+     * Least core (with core emptiness and, given an allocation function, a
+     * core membership test) or nucleolus, by constraint generation.
+     */
+    private Void solveCore(CoalitionGameValue game, Stmt.Solve stmt, String algorithm) {
+        int n = game.players.size();
+        SolverOptions options = algorithm.equals("core")
+                ? new SolverOptions("core", stmt.options, "allocation", "threads")
+                : new SolverOptions("nucleolus", stmt.options, "threads");
+        if (n > CoreSolver.PLAYER_LIMIT) {
+            throw new RuntimeError(stmt.algorithm, "The " + algorithm + " is limited to " +
+                    CoreSolver.PLAYER_LIMIT + " players; '" + game.name + "' has " + n + ".");
+        }
+        int threads = options.count("threads", Runtime.getRuntime().availableProcessors());
+        double[] proposal = null;
+        if (options.has("allocation"))
+            proposal = allocation(game, options.token("allocation"));
+
+        double[] worth = game.allCoalitions(this, stmt.gameName, threads);
+        CoreSolver solver = new CoreSolver(worth, n, threads);
+        printCoalitionHeader(game);
+        System.out.println("Grand coalition: " + formatNumber(worth[worth.length - 1]));
+        double[] x;
+        if (algorithm.equals("core")) {
+            x = solver.leastCore();
+            boolean empty = solver.excess < -1e-9;
+            System.out.println("Core: " + (empty ? "empty" : "non-empty"));
+            System.out.println("Least-core excess: " + formatNumber(Math.rint(solver.excess * 1e9) / 1e9));
+            System.out.println((empty ? "Least-core" : "Core") + " allocation:");
+        } else {
+            x = solver.nucleolus();
+            System.out.println("Nucleolus:");
+        }
+        for (int p = 0; p < n; p++) {
+            System.out.println("  " + game.players.get(p).lexeme + ": " + formatNumber(x[p]));
+        }
+        String stages = algorithm.equals("nucleolus")
+                ? " in " + solver.stages + " stage" + (solver.stages == 1 ? "" : "s")
+                : "";
+        System.out.println("Constraint generation: " + solver.programs + " linear program" +
+                (solver.programs == 1 ? "" : "s") + stages + ", " + solver.generated + " of " +
+                (worth.length - 2) + " coalition constraints");
+
+        if (proposal != null) {
+            String name = options.token("allocation").lexeme;
+            double total = 0;
+            for (double share : proposal) {
+                total += share;
+            }
+            long blocking = solver.blocking(proposal);
+            if (Math.abs(total - worth[worth.length - 1]) > 1e-9) {
+                System.out.println("Allocation '" + name + "' is not in the core: it splits " +
+                        formatNumber(total) + ", not the grand coalition's worth.");
+            } else if (blocking >= 0) {
+                double gets = 0;
+                for (int p = 0; p < n; p++) {
+                    if ((blocking & (1L << p)) != 0)
+                        gets += proposal[p];
+                }
+                System.out.println("Allocation '" + name + "' is not in the core: " + game.describe(blocking) +
+                        " is worth " + formatNumber(worth[(int) blocking]) + " but gets " + formatNumber(gets) + ".");
+            } else {
+                System.out.println("Allocation '" + name + "' is in the core.");
+            }
+        }
+        System.out.println("-------------------------------------------");
+        return null;
+    }
+
+    // Calls an allocation function with each player's name
+    private double[] allocation(CoalitionGameValue game, Token name) {
+        Object function = lookUpStrategy(name);
+        if (!(function instanceof TenetCallable) || ((TenetCallable) function).arity() != 1) {
+            throw new RuntimeError(name, "Allocation '" + name.lexeme + "' must be a function of one player name.");
+        }
+        double[] shares = new double[game.players.size()];
+        for (int p = 0; p < shares.length; p++) {
+            Object share = ((TenetCallable) function).call(this,
+                    Arrays.asList((Object) game.players.get(p).lexeme));
+            if (!(share instanceof Double)) {
+                throw new RuntimeError(name, "Allocation '" + name.lexeme + "' gave " +
+                        game.players.get(p).lexeme + " a share that is not a number.");
+            }
+            shares[p] = (Double) share;
+        }
+        return shares;
+    }
+
     // Sequential games: create game value and define in environment
     @Override
     public Void visitSequentialGameStmt(Stmt.SequentialGame stmt) {
-        SequentialGameValue game = new SequentialGameValue(stmt);
+        SequentialGameValue game = stmt.rules != null
+                ? new SequentialGameValue(stmt, new LazyGameTree(this, stmt))
+                : new SequentialGameValue(stmt);
         environment.define(stmt.name.lexeme, game);
         return null;
     }
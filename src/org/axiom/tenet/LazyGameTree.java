@@ -0,0 +1,369 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Sequential game generated by Tenet functions instead of a node list.
+ * A node is created the first time a solver asks for it. States that compare
+ * equal (same numbers and strings, or instances of one class with equal
+ * fields) share a node id, so transpositions turn the tree into a DAG and
+ * memory grows with the number of distinct states, not the number of paths.
+ *
+ * The rule functions run on the declaring interpreter, which is not thread
+ * safe, so every method that may call them is synchronized. Solvers that
+ * search on several threads give each its own copy (forThread), with the
+ * rules on an isolated interpreter, rather than queue on one lock. The rules and
+ * start state are fixed when the game is declared, but the rules may read
+ * globals: the value of each one read is kept, and once any has changed the
+ * generated states are stale and are dropped before the next solve.
+ */
+class LazyGameTree implements GameTree {
+    static final int MAX_STATES = 5_000_000;
+
+    private static class State {
+        final Object value;
+        int owner = TERMINAL;
+        String[] actions = new String[0];
+        Object[] arguments = new Object[0]; // passed to next(): action number or name
+        int[] children = new int[0]; // -1 until that move is first taken
+        double[] probabilities; // chance states only
+        double[] payoffs; // terminal states only
+
+        State(Object value) {
+            this.value = value;
+        }
+    }
+
+    private final Interpreter interpreter;
+    private final Token where;
+    private final String gameName;
+    private final List<Token> players;
+    private final Object start;
+    private final TenetCallable actions;
+    private final TenetCallable next;
+    private final TenetCallable player;
+    private final TenetCallable payoff;
+    private final TenetCallable info;
+    private final TenetCallable odds;
+
+    private final Map<Object, Integer> ids = new HashMap<>();
+    private final List<State> states = new ArrayList<>();
+    private final Set<String> names = new HashSet<>(); // globals the rules have read
+    private final Map<String, Object> reads = new HashMap<>(); // and the value each had
+
+    LazyGameTree(Interpreter interpreter, Stmt.SequentialGame stmt) {
+        Stmt.GameRules rules = stmt.rules;
+        this.interpreter = interpreter;
+        this.where = stmt.name;
+        this.gameName = stmt.name.lexeme;
+        this.players = stmt.players;
+        this.start = interpreter.evaluate(rules.start);
+        this.actions = rule(interpreter, rules.actions, "actions", 1);
+        this.next = rule(interpreter, rules.next, "next", 2);
+        this.player = rule(interpreter, rules.player, "player", 1);
+        this.payoff = rule(interpreter, rules.payoff, "payoff", 2);
+        this.info = rules.info == null ? null : rule(interpreter, rules.info, "info", 1);
+        this.odds = rules.odds == null ? null : rule(interpreter, rules.odds, "odds", 2);
+    }
+
+    private LazyGameTree(LazyGameTree source, Snapshot.Isolated<Object> copy) {
+        this.interpreter = copy.interpreter;
+        this.where = source.where;
+        this.gameName = source.gameName;
+        this.players = source.players;
+        this.start = copy.value;
+        this.actions = copy.counterpart(source.actions);
+        this.next = copy.counterpart(source.next);
+        this.player = copy.counterpart(source.player);
+        this.payoff = copy.counterpart(source.payoff);
+        this.info = copy.counterpart(source.info);
+        this.odds = copy.counterpart(source.odds);
+    }
+
+    /**
+     * The same rules and start state on an isolated copy of the interpreter,
+     * with no states generated yet. Its states get ids of their own, but
+     * the same moves in the same order.
+     */
+    @Override
+    public synchronized GameTree forThread() {
+        return new LazyGameTree(this, Snapshot.isolate(interpreter, start));
+    }
+
+    private TenetCallable rule(Interpreter interpreter, Expr expr, String name, int arity) {
+        Object value = interpreter.evaluate(expr);
+        if (!(value instanceof TenetCallable) || ((TenetCallable) value).arity() != arity) {
+            throw new RuntimeError(where, "Rule '" + name + "' of game '" + gameName +
+                    "' must be a function of " + arity + (arity == 1 ? " argument." : " arguments."));
+        }
+        return (TenetCallable) value;
+    }
+
+    boolean hasInformationSets() {
+        return info != null;
+    }
+
+    /** True if a global the rules have read holds something else now. */
+    synchronized boolean stale() {
+        for (Map.Entry<String, Object> read : reads.entrySet()) {
+            Object now = canonical(interpreter.globals.values().get(read.getKey()));
+            if (now == null ? read.getValue() != null : !now.equals(read.getValue()))
+                return true;
+        }
+        return false;
+    }
+
+    /** Forgets every generated state, so the rules run again from the start. */
+    synchronized void reset() {
+        ids.clear();
+        states.clear();
+        names.clear();
+        reads.clear();
+    }
+
+    /** Number of distinct states generated so far; ids run from 0 to size() - 1. */
+    synchronized int size() {
+        return states.size();
+    }
+
+    @Override
+    public int numPlayers() {
+        return players.size();
+    }
+
+    @Override
+    public String playerName(int player) {
+        return players.get(player).lexeme;
+    }
+
+    @Override
+    public synchronized int root() {
+        return states.isEmpty() ? intern(start) : 0;
+    }
+
+    @Override
+    public synchronized int owner(int node) {
+        return states.get(node).owner;
+    }
+
+    @Override
+    public synchronized int actionCount(int node) {
+        return states.get(node).actions.length;
+    }
+
+    @Override
+    public synchronized String action(int node, int action) {
+        return states.get(node).actions[action];
+    }
+
+    @Override
+    public synchronized int child(int node, int action) {
+        State state = states.get(node);
+        if (state.children[action] < 0) {
+            Object reached = call(next, state.value, state.arguments[action]);
+            state.children[action] = intern(reached);
+        }
+        return state.children[action];
+    }
+
+    @Override
+    public synchronized double probability(int node, int action) {
+        return states.get(node).probabilities[action];
+    }
+
+    @Override
+    public synchronized double payoff(int node, int player) {
+        return states.get(node).payoffs[player];
+    }
+
+    /** The info rule's label for a decision state, or null without one. */
+    synchronized String infoLabel(int node) {
+        if (info == null)
+            return null;
+        Object label = call(info, states.get(node).value);
+        return label instanceof String ? (String) label : format(label);
+    }
+
+    synchronized String describe(int node) {
+        return format(states.get(node).value);
+    }
+
+    // Runs a rule, keeping the value of each global it reads for the first time
+    private Object call(TenetCallable rule, Object... arguments) {
+        Set<String> outer = interpreter.globalReads;
+        interpreter.globalReads = names;
+        try {
+            return rule.call(interpreter, Arrays.asList(arguments));
+        } finally {
+            interpreter.globalReads = outer;
+            if (names.size() > reads.size()) {
+                for (String name : names) {
+                    if (!reads.containsKey(name))
+                        reads.put(name, canonical(interpreter.globals.values().get(name)));
+                }
+            }
+        }
+    }
+
+    private int intern(Object value) {
+        Object key = canonical(value);
+        Integer id = ids.get(key);
+        if (id != null)
+            return id;
+        if (states.size() >= MAX_STATES) {
+            throw new RuntimeError(where, "Game '" + gameName + "' generated more than " + MAX_STATES +
+                    " distinct states; use 'solve " + gameName + " using mcts' to search it instead.");
+        }
+        State state = expand(value);
+        ids.put(key, states.size());
+        states.add(state);
+        return states.size() - 1;
+    }
+
+    /**
+     * Asks the rules for everything about a new state except its children.
+     */
+    private State expand(Object value) {
+        State state = new State(value);
+        Object moves = call(actions, value);
+        if (moves instanceof Double && (Double) moves > 0) {
+            double count = (Double) moves;
+            if (count != Math.floor(count)) {
+                throw new RuntimeError(where, "Rule 'actions' returned " + format(moves) +
+                        " for state " + format(value) + "; expected a whole number of moves.");
+            }
+            state.actions = new String[(int) count];
+            state.arguments = new Object[(int) count];
+            for (int a = 0; a < count; a++) {
+                state.actions[a] = String.valueOf(a);
+                state.arguments[a] = (double) a;
+            }
+        } else if (moves instanceof String && !((String) moves).trim().isEmpty()) {
+            String[] names = ((String) moves).split(",");
+            for (int a = 0; a < names.length; a++) {
+                names[a] = names[a].trim();
+            }
+            state.actions = names;
+            state.arguments = names;
+        } else if (moves != null && !(moves instanceof Double && (Double) moves == 0)
+                && !(moves instanceof String)) {
+            throw new RuntimeError(where, "Rule 'actions' returned " + format(moves) + " for state " +
+                    format(value) + "; expected a move count or a comma-separated list of moves.");
+        }
+
+        if (state.actions.length == 0) {
+            // No moves: a terminal state
+            state.payoffs = new double[players.size()];
+            for (int p = 0; p < players.size(); p++) {
+                Object amount = call(payoff, value, players.get(p).lexeme);
+                if (!(amount instanceof Double)) {
+                    throw new RuntimeError(where, "Rule 'payoff' returned " + format(amount) + " for " +
+                            players.get(p).lexeme + " at state " + format(value) + "; expected a number.");
+                }
+                state.payoffs[p] = (Double) amount;
+            }
+            return state;
+        }
+
+        state.children = new int[state.actions.length];
+        Arrays.fill(state.children, -1);
+        state.owner = ownerOf(value);
+        if (state.owner == CHANCE) {
+            state.probabilities = chanceProbabilities(value, state);
+        }
+        return state;
+    }
+
+    private int ownerOf(Object value) {
+        Object who = call(player, value);
+        if (Stmt.GameNode.CHANCE.equals(who))
+            return CHANCE;
+        for (int p = 0; p < players.size(); p++) {
+            if (players.get(p).lexeme.equals(who))
+                return p;
+        }
+        if (who instanceof Double) {
+            double index = (Double) who;
+            if (index == Math.floor(index) && index >= 0 && index < players.size())
+                return (int) index;
+        }
+        throw new RuntimeError(where, "Rule 'player' returned " + format(who) + " for state " + format(value) +
+                "; expected a player of game '" + gameName + "', a player index, or \"chance\".");
+    }
+
+    private double[] chanceProbabilities(Object value, State state) {
+        int count = state.actions.length;
+        double[] probabilities = new double[count];
+        if (odds == null) {
+            Arrays.fill(probabilities, 1.0 / count);
+            return probabilities;
+        }
+        double total = 0;
+        for (int a = 0; a < count; a++) {
+            Object p = call(odds, value, state.arguments[a]);
+            if (!(p instanceof Double) || (Double) p < 0) {
+                throw new RuntimeError(where, "Rule 'odds' returned " + format(p) + " for move " +
+                        state.actions[a] + " at state " + format(value) + "; expected a probability.");
+            }
+            probabilities[a] = (Double) p;
+            total += probabilities[a];
+        }
+        if (Math.abs(total - 1.0) > 1e-9) {
+            throw new RuntimeError(where, "Probabilities at chance state " + format(value) + " sum to " +
+                    total + ", not 1.");
+        }
+        return probabilities;
+    }
+
+    /**
+     * Map key under which equal states coincide. Instances compare by class
+     * and fields, so next() should return a new instance rather than mutate.
+     */
+    private static Object canonical(Object value) {
+        if (value instanceof TenetInstance) {
+            TenetInstance instance = (TenetInstance) value;
+            List<Object> key = new ArrayList<>();
+            key.add(instance.className());
+            for (Map.Entry<String, Object> field : new TreeMap<>(instance.fields()).entrySet()) {
+                key.add(field.getKey());
+                key.add(canonical(field.getValue()));
+            }
+            return key;
+        }
+        if (value instanceof Double) {
+            return (Double) value + 0.0; // -0 and 0 are the same state
+        }
+        return value;
+    }
+
+    private static String format(Object value) {
+        if (value == null)
+            return "nil";
+        if (value instanceof Double) {
+            String text = value.toString();
+            return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+        }
+        if (value instanceof String)
+            return "\"" + value + "\"";
+        if (value instanceof TenetInstance) {
+            TenetInstance instance = (TenetInstance) value;
+            StringBuilder sb = new StringBuilder(instance.className()).append("(");
+            boolean first = true;
+            for (Map.Entry<String, Object> field : new TreeMap<>(instance.fields()).entrySet()) {
+                if (!first)
+                    sb.append(", ");
+                first = false;
+                sb.append(field.getKey()).append("=").append(format(field.getValue()));
+            }
+            return sb.append(")").toString();
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,262 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Small dense linear program: maximize c.x subject to linear constraints and
+ * x >= 0, solved with the two-phase simplex method on a full tableau. Meant
+ * for the many small programs game solvers build (one per matrix game, one
+ * per coalition structure), not for large sparse models.
+ *
+ * Pivots use Dantzig's rule and fall back to Bland's rule after a run of
+ * degenerate pivots, so the method cannot cycle.
+ */
+class LinearProgram {
+    private static final double EPSILON = 1e-9;
+    private static final int DEGENERATE_RUN = 50;
+
+    enum Status {
+        OPTIMAL, INFEASIBLE, UNBOUNDED
+    }
+
+    private static final int AT_MOST = 0;
+    private static final int AT_LEAST = 1;
+    private static final int EQUAL = 2;
+
+    private final int variables;
+    private double[] objective;
+    private boolean minimizing; // objective holds the negated costs
+    private final List<double[]> rows = new ArrayList<>();
+    private final List<Double> bounds = new ArrayList<>();
+    private final List<Integer> kinds = new ArrayList<>();
+
+    Status status;
+    double value;
+    double[] solution;
+    double[] duals; // per constraint, in the order added: d(value) / d(right-hand side)
+
+    LinearProgram(int variables) {
+        this.variables = variables;
+        this.objective = new double[variables];
+    }
+
+    void maximize(double[] c) {
+        objective = c.clone();
+        minimizing = false;
+    }
+
+    void minimize(double[] c) {
+        objective = new double[variables];
+        for (int j = 0; j < variables; j++) {
+            objective[j] = -c[j];
+        }
+        minimizing = true;
+    }
+
+    void atMost(double[] a, double b) {
+        add(a, b, AT_MOST);
+    }
+
+    void atLeast(double[] a, double b) {
+        add(a, b, AT_LEAST);
+    }
+
+    void equal(double[] a, double b) {
+        add(a, b, EQUAL);
+    }
+
+    private void add(double[] a, double b, int kind) {
+        rows.add(a.clone());
+        bounds.add(b);
+        kinds.add(kind);
+    }
+
+    /**
+     * Solves the program, setting status and, when optimal, the solution and
+     * its value (of the original objective, also for minimize()).
+     */
+    Status solve() {
+        int m = rows.size();
+
+        // Flip rows so every right-hand side is non-negative
+        int slacks = 0;
+        int artificials = 0;
+        int[] kind = new int[m];
+        boolean[] flipped = new boolean[m];
+        double[][] a = new double[m][];
+        double[] b = new double[m];
+        for (int i = 0; i < m; i++) {
+            a[i] = rows.get(i);
+            b[i] = bounds.get(i);
+            kind[i] = kinds.get(i);
+            if (b[i] < 0) {
+                flipped[i] = true;
+                a[i] = a[i].clone();
+                for (int j = 0; j < variables; j++) {
+                    a[i][j] = -a[i][j];
+                }
+                b[i] = -b[i];
+                if (kind[i] != EQUAL)
+                    kind[i] = kind[i] == AT_MOST ? AT_LEAST : AT_MOST;
+            }
+            if (kind[i] != EQUAL)
+                slacks++;
+            if (kind[i] != AT_MOST)
+                artificials++;
+        }
+
+        // Columns: variables, slacks, artificials, right-hand side
+        int firstArtificial = variables + slacks;
+        int columns = firstArtificial + artificials;
+        double[][] tableau = new double[m + 1][columns + 1];
+        int[] basis = new int[m];
+        int[] unit = new int[m]; // the column that starts as row i of the identity
+        int slack = variables;
+        int artificial = firstArtificial;
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(a[i], 0, tableau[i], 0, variables);
+            tableau[i][columns] = b[i];
+            if (kind[i] == AT_MOST) {
+                tableau[i][slack] = 1;
+                basis[i] = slack++;
+            } else {
+                if (kind[i] == AT_LEAST)
+                    tableau[i][slack++] = -1;
+                tableau[i][artificial] = 1;
+                basis[i] = artificial++;
+            }
+            unit[i] = basis[i];
+        }
+
+        // Phase 1: drive the artificials to zero by maximizing their negated sum
+        double[] cost = tableau[m];
+        if (artificials > 0) {
+            for (int i = 0; i < m; i++) {
+                if (basis[i] >= firstArtificial) {
+                    for (int j = 0; j <= columns; j++) {
+                        if (j < firstArtificial || j == columns)
+                            cost[j] += tableau[i][j];
+                    }
+                }
+            }
+            if (!optimize(tableau, basis, columns, columns))
+                throw new IllegalStateException("Phase one of the simplex method cannot be unbounded.");
+            if (cost[columns] > EPSILON) {
+                status = Status.INFEASIBLE;
+                return status;
+            }
+            // Pivot artificials that are still basic (at zero) out of the basis
+            for (int i = 0; i < m; i++) {
+                if (basis[i] < firstArtificial)
+                    continue;
+                for (int j = 0; j < firstArtificial; j++) {
+                    if (Math.abs(tableau[i][j]) > EPSILON) {
+                        pivot(tableau, basis, i, j);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Phase 2: the real objective, with artificial columns barred
+        Arrays.fill(cost, 0);
+        for (int j = 0; j < variables; j++) {
+            cost[j] = objective[j];
+        }
+        for (int i = 0; i < m; i++) {
+            double weight = basis[i] < variables ? objective[basis[i]] : 0;
+            if (weight != 0) {
+                for (int j = 0; j <= columns; j++) {
+                    cost[j] -= weight * tableau[i][j];
+                }
+            }
+        }
+        if (!optimize(tableau, basis, firstArtificial, columns)) {
+            status = Status.UNBOUNDED;
+            return status;
+        }
+
+        solution = new double[variables];
+        for (int i = 0; i < m; i++) {
+            if (basis[i] < variables)
+                solution[basis[i]] = tableau[i][columns];
+        }
+        value = 0;
+        for (int j = 0; j < variables; j++) {
+            value += objective[j] * solution[j];
+        }
+        if (minimizing)
+            value = -value;
+
+        // The cost row holds c - yA, so a unit column's entry is -y_i
+        duals = new double[m];
+        for (int i = 0; i < m; i++) {
+            double dual = -cost[unit[i]];
+            if (flipped[i])
+                dual = -dual;
+            duals[i] = minimizing ? -dual : dual;
+        }
+        status = Status.OPTIMAL;
+        return status;
+    }
+
+    /**
+     * Pivots until no allowed column (index below 'allowed') improves the
+     * cost row. Returns false if the objective is unbounded.
+     */
+    private boolean optimize(double[][] tableau, int[] basis, int allowed, int columns) {
+        int m = basis.length;
+        double[] cost = tableau[m];
+        int degenerate = 0;
+        while (true) {
+            boolean bland = degenerate >= DEGENERATE_RUN;
+            int entering = -1;
+            for (int j = 0; j < allowed; j++) {
+                if (cost[j] > EPSILON && (entering < 0 || (!bland && cost[j] > cost[entering]))) {
+                    entering = j;
+                    if (bland)
+                        break;
+                }
+            }
+            if (entering < 0)
+                return true;
+
+            int leaving = -1;
+            double best = 0;
+            for (int i = 0; i < m; i++) {
+                if (tableau[i][entering] > EPSILON) {
+                    double ratio = tableau[i][columns] / tableau[i][entering];
+                    if (leaving < 0 || ratio < best - EPSILON ||
+                            (ratio < best + EPSILON && basis[i] < basis[leaving])) {
+                        leaving = i;
+                        best = ratio;
+                    }
+                }
+            }
+            if (leaving < 0)
+                return false;
+            degenerate = best < EPSILON ? degenerate + 1 : 0;
+            pivot(tableau, basis, leaving, entering);
+        }
+    }
+
+    private static void pivot(double[][] tableau, int[] basis, int row, int column) {
+        double[] pivotRow = tableau[row];
+        double scale = pivotRow[column];
+        for (int j = 0; j < pivotRow.length; j++) {
+            pivotRow[j] /= scale;
+        }
+        for (int i = 0; i < tableau.length; i++) {
+            double factor = tableau[i][column];
+            if (i == row || factor == 0)
+                continue;
+            double[] target = tableau[i];
+            for (int j = 0; j < target.length; j++) {
+                target[j] -= factor * pivotRow[j];
+            }
+        }
+        basis[row] = column;
+    }
+}
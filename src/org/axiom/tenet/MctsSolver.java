@@ -0,0 +1,277 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Anytime Monte Carlo tree search (UCT) for sequential games too large to
+ * traverse. Works through the GameTree interface and only asks for the nodes
+ * it selects or plays out, so lazily expanded games are never materialized.
+ *
+ * Every player maximizes their own payoff (max^n UCT); chance nodes are
+ * sampled by their probabilities. Root parallelism: each thread grows a
+ * private search tree with its own random stream, and the root statistics
+ * are summed at the end. Each thread also searches its own view of the game
+ * (GameTree.forThread), so procedural games expand in parallel too.
+ */
+class MctsSolver {
+
+    static class MoveStats {
+        final String action;
+        final long visits;
+        final double[] meanPayoffs;
+
+        MoveStats(String action, long visits, double[] meanPayoffs) {
+            this.action = action;
+            this.visits = visits;
+            this.meanPayoffs = meanPayoffs;
+        }
+    }
+
+    static class Result {
+        final List<MoveStats> rootMoves; // root actions in declaration order
+        final int recommended; // index into rootMoves, -1 if the root is terminal
+        final long iterations;
+        final long searchNodes;
+
+        Result(List<MoveStats> rootMoves, int recommended, long iterations, long searchNodes) {
+            this.rootMoves = rootMoves;
+            this.recommended = recommended;
+            this.iterations = iterations;
+            this.searchNodes = searchNodes;
+        }
+    }
+
+    private final GameTree game;
+    private final double exploration;
+
+    MctsSolver(GameTree game, double exploration) {
+        this.game = game;
+        this.exploration = exploration;
+    }
+
+    /**
+     * Runs until the iteration budget is spent or, if seconds > 0, until the
+     * time budget runs out, whichever comes first.
+     */
+    Result search(long iterations, double seconds, int threads, long seed) {
+        long deadline = seconds > 0 ? System.nanoTime() + (long) (seconds * 1e9) : Long.MAX_VALUE;
+        SplittableRandom root = new SplittableRandom(seed);
+        List<Searcher> searchers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long share = iterations / threads + (i < iterations % threads ? 1 : 0);
+            searchers.add(new Searcher(i == 0 ? game : game.forThread(), root.split(), share, deadline));
+        }
+
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            if (pool == null) {
+                searchers.get(0).call();
+            } else {
+                for (Future<Void> future : pool.invokeAll(searchers)) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeError)
+                throw (RuntimeError) e.getCause();
+            throw new IllegalStateException("MCTS worker failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("MCTS interrupted", e);
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        return merge(searchers);
+    }
+
+    private Result merge(List<Searcher> searchers) {
+        int rootNode = game.root();
+        int players = game.numPlayers();
+        long done = 0;
+        long nodes = 0;
+        for (Searcher searcher : searchers) {
+            done += searcher.done;
+            nodes += searcher.created;
+        }
+        List<MoveStats> moves = new ArrayList<>();
+        if (game.owner(rootNode) == GameTree.TERMINAL) {
+            return new Result(moves, -1, done, nodes);
+        }
+
+        int recommended = 0;
+        for (int a = 0; a < game.actionCount(rootNode); a++) {
+            long visits = 0;
+            double[] sums = new double[players];
+            for (Searcher searcher : searchers) {
+                Node child = searcher.root.children == null ? null : searcher.root.children[a];
+                if (child == null)
+                    continue;
+                visits += child.visits;
+                for (int p = 0; p < players; p++) {
+                    sums[p] += child.payoffSums[p];
+                }
+            }
+            for (int p = 0; p < players; p++) {
+                sums[p] = visits > 0 ? sums[p] / visits : Double.NaN;
+            }
+            moves.add(new MoveStats(game.action(rootNode, a), visits, sums));
+            // The most visited move is the robust recommendation
+            if (visits > moves.get(recommended).visits)
+                recommended = a;
+        }
+        return new Result(moves, recommended, done, nodes);
+    }
+
+    /**
+     * Search-tree node: statistics for one game node reached along one path.
+     */
+    private static class Node {
+        final int gameNode;
+        Node[] children; // created on first expansion
+        int expanded; // decision children created so far, in action order
+        long visits;
+        final double[] payoffSums;
+
+        Node(int gameNode, int players) {
+            this.gameNode = gameNode;
+            this.payoffSums = new double[players];
+        }
+    }
+
+    private class Searcher implements Callable<Void> {
+        private final GameTree game; // this thread's view; shadows the solver's
+        private final SplittableRandom random;
+        private final long budget;
+        private final long deadline;
+        private final Node root;
+        private final int players;
+        private final double[] reward;
+
+        // Observed payoff range, used to put UCT values on a [0, 1] scale
+        private double lowest = Double.POSITIVE_INFINITY;
+        private double highest = Double.NEGATIVE_INFINITY;
+
+        long done;
+        long created = 1;
+
+        Searcher(GameTree game, SplittableRandom random, long budget, long deadline) {
+            this.game = game;
+            this.players = game.numPlayers();
+            this.reward = new double[players];
+            this.random = random;
+            this.budget = budget;
+            this.deadline = deadline;
+            this.root = new Node(game.root(), game.numPlayers());
+        }
+
+        @Override
+        public Void call() {
+            while (done < budget) {
+                if ((done & 63) == 0 && System.nanoTime() >= deadline)
+                    break;
+                iterate();
+                done++;
+            }
+            return null;
+        }
+
+        private void iterate() {
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            path.add(node);
+
+            // Selection and expansion: descend until a new node is added
+            while (game.owner(node.gameNode) != GameTree.TERMINAL) {
+                int owner = game.owner(node.gameNode);
+                int count = game.actionCount(node.gameNode);
+                if (node.children == null)
+                    node.children = new Node[count];
+
+                int action;
+                if (owner == GameTree.CHANCE) {
+                    action = sampleChance(node.gameNode, count);
+                } else if (node.expanded < count) {
+                    action = node.expanded++;
+                } else {
+                    action = select(node, owner);
+                }
+
+                Node child = node.children[action];
+                boolean isNew = child == null;
+                if (isNew) {
+                    child = new Node(game.child(node.gameNode, action), players);
+                    node.children[action] = child;
+                    created++;
+                }
+                path.add(child);
+                node = child;
+                if (isNew)
+                    break;
+            }
+
+            rollout(node.gameNode);
+            for (int p = 0; p < players; p++) {
+                lowest = Math.min(lowest, reward[p]);
+                highest = Math.max(highest, reward[p]);
+            }
+            for (Node visited : path) {
+                visited.visits++;
+                for (int p = 0; p < players; p++) {
+                    visited.payoffSums[p] += reward[p];
+                }
+            }
+        }
+
+        private int select(Node node, int owner) {
+            double range = highest > lowest ? highest - lowest : 1;
+            double logVisits = Math.log(node.visits);
+            int best = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int a = 0; a < node.children.length; a++) {
+                Node child = node.children[a];
+                double mean = (child.payoffSums[owner] / child.visits - lowest) / range;
+                double score = mean + exploration * Math.sqrt(logVisits / child.visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = a;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays uniformly random moves (and chance by its odds) to a terminal.
+         */
+        private void rollout(int gameNode) {
+            while (game.owner(gameNode) != GameTree.TERMINAL) {
+                int count = game.actionCount(gameNode);
+                int action = game.owner(gameNode) == GameTree.CHANCE
+                        ? sampleChance(gameNode, count)
+                        : random.nextInt(count);
+                gameNode = game.child(gameNode, action);
+            }
+            for (int p = 0; p < players; p++) {
+                reward[p] = game.payoff(gameNode, p);
+            }
+        }
+
+        private int sampleChance(int gameNode, int count) {
+            double r = random.nextDouble();
+            for (int a = 0; a < count - 1; a++) {
+                r -= game.probability(gameNode, a);
+                if (r < 0)
+                    return a;
+            }
+            return count - 1;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Derivative-free search of a box for the largest value of an objective
+ * that may jump, or be undefined (negative infinity), in places, as one read
+ * off the equilibria of a game is.
+ *
+ * A Latin hypercube of samples covers the box first: each variable's range
+ * is cut into as many strata as there are samples, and each stratum is
+ * sampled once. The best samples then start Nelder-Mead runs, whose points
+ * are clamped to the box. Samples are evaluated in fixed blocks and each run
+ * is sequential, so for a given seed the result does not depend on the
+ * thread count.
+ */
+class MechanismOptimizer {
+    private static final int BLOCK = 16; // samples per worker task
+    private static final double INITIAL_STEP = 0.1; // of each range, for the first simplex
+    private static final double CONVERGED = 1e-9; // simplex size, relative to each range
+
+    /** Objective at a point; not thread-safe. */
+    interface Objective {
+        double at(double[] x);
+    }
+
+    static class Result {
+        final double[] best; // null when no point had a finite value
+        final double value;
+        final int samples;
+        final int runs;
+        final long evaluations;
+
+        Result(double[] best, double value, int samples, int runs, long evaluations) {
+            this.best = best;
+            this.value = value;
+            this.samples = samples;
+            this.runs = runs;
+            this.evaluations = evaluations;
+        }
+    }
+
+    // Best point and value of one Nelder-Mead run
+    private static class Run {
+        double[] best;
+        double value;
+        long evaluations;
+    }
+
+    static Result maximize(double[] lower, double[] upper, Supplier<Objective> workers, int samples, int starts,
+            int iterations, long seed, int threads) {
+        int n = lower.length;
+        double[][] point = latinHypercube(lower, upper, samples, new SplittableRandom(seed));
+        double[] value = new double[samples];
+        ThreadLocal<Objective> local = ThreadLocal.withInitial(workers);
+        List<Runnable> blocks = new ArrayList<>();
+        for (int start = 0; start < samples; start += BLOCK) {
+            int from = start;
+            int to = Math.min(samples, start + BLOCK);
+            blocks.add(() -> {
+                Objective objective = local.get();
+                for (int k = from; k < to; k++) {
+                    value[k] = objective.at(point[k]);
+                }
+            });
+        }
+        ParallelBlocks.run(blocks, threads);
+
+        // Starts are the best finite samples, ties to the earlier one
+        Integer[] order = new Integer[samples];
+        for (int k = 0; k < samples; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> value[a] != value[b] ? Double.compare(value[b], value[a]) : a - b);
+        List<Integer> chosen = new ArrayList<>();
+        for (int k = 0; k < samples && chosen.size() < starts; k++) {
+            if (value[order[k]] > Double.NEGATIVE_INFINITY)
+                chosen.add(order[k]);
+        }
+
+        Run[] runs = new Run[chosen.size()];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int r = 0; r < runs.length; r++) {
+            int run = r;
+            int sample = chosen.get(r);
+            tasks.add(() -> runs[run] = nelderMead(local.get(), point[sample], value[sample], lower, upper,
+                    iterations));
+        }
+        ParallelBlocks.run(tasks, threads);
+
+        double[] best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        long evaluations = samples;
+        if (!chosen.isEmpty()) {
+            best = point[chosen.get(0)];
+            bestValue = value[chosen.get(0)];
+        }
+        for (Run run : runs) {
+            evaluations += run.evaluations;
+            if (run.value > bestValue) {
+                best = run.best;
+                bestValue = run.value;
+            }
+        }
+        return new Result(best == null ? null : Arrays.copyOf(best, n), bestValue, samples, runs.length,
+                evaluations);
+    }
+
+    private static double[][] latinHypercube(double[] lower, double[] upper, int samples, SplittableRandom random) {
+        double[][] point = new double[samples][lower.length];
+        int[] stratum = new int[samples];
+        for (int d = 0; d < lower.length; d++) {
+            for (int k = 0; k < samples; k++) {
+                stratum[k] = k;
+            }
+            for (int k = samples - 1; k > 0; k--) {
+                int j = random.nextInt(k + 1);
+                int swap = stratum[k];
+                stratum[k] = stratum[j];
+                stratum[j] = swap;
+            }
+            for (int k = 0; k < samples; k++) {
+                point[k][d] = lower[d] + (upper[d] - lower[d]) * (stratum[k] + random.nextDouble()) / samples;
+            }
+        }
+        return point;
+    }
+
+    /**
+     * Nelder-Mead with the usual coefficients (reflect 1, expand 2, contract
+     * and shrink 1/2), maximizing. Stops after the given iterations or once
+     * every vertex is within CONVERGED of the best, relative to the ranges.
+     */
+    private static Run nelderMead(Objective objective, double[] start, double startValue, double[] lower,
+            double[] upper, int iterations) {
+        int n = start.length;
+        Run run = new Run();
+        double[][] simplex = new double[n + 1][];
+        double[] value = new double[n + 1];
+        simplex[0] = start.clone();
+        value[0] = startValue;
+        for (int i = 0; i < n; i++) {
+            double[] vertex = start.clone();
+            double step = INITIAL_STEP * (upper[i] - lower[i]);
+            vertex[i] = vertex[i] + step <= upper[i] ? vertex[i] + step : vertex[i] - step;
+            simplex[i + 1] = clamp(vertex, lower, upper);
+            value[i + 1] = objective.at(simplex[i + 1]);
+            run.evaluations++;
+        }
+
+        Integer[] order = new Integer[n + 1];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            // Best first; ties keep the older vertex ahead
+            for (int i = 0; i <= n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> value[a] != value[b] ? Double.compare(value[b], value[a]) : a - b);
+            double[][] sorted = new double[n + 1][];
+            double[] sortedValue = new double[n + 1];
+            for (int i = 0; i <= n; i++) {
+                sorted[i] = simplex[order[i]];
+                sortedValue[i] = value[order[i]];
+            }
+            System.arraycopy(sorted, 0, simplex, 0, n + 1);
+            System.arraycopy(sortedValue, 0, value, 0, n + 1);
+            if (converged(simplex, lower, upper))
+                break;
+
+            double[] centroid = new double[n];
+            for (int i = 0; i < n; i++) {
+                for (int d = 0; d < n; d++) {
+                    centroid[d] += simplex[i][d] / n;
+                }
+            }
+            double[] worst = simplex[n];
+            double[] reflected = clamp(along(centroid, worst, -1), lower, upper);
+            double reflectedValue = objective.at(reflected);
+            run.evaluations++;
+            if (reflectedValue > value[0]) {
+                double[] expanded = clamp(along(centroid, worst, -2), lower, upper);
+                double expandedValue = objective.at(expanded);
+                run.evaluations++;
+                boolean expand = expandedValue > reflectedValue;
+                simplex[n] = expand ? expanded : reflected;
+                value[n] = expand ? expandedValue : reflectedValue;
+            } else if (reflectedValue > value[n - 1]) {
+                simplex[n] = reflected;
+                value[n] = reflectedValue;
+            } else {
+                boolean outside = reflectedValue > value[n];
+                double[] contracted = clamp(along(centroid, outside ? reflected : worst, 0.5), lower, upper);
+                double contractedValue = objective.at(contracted);
+                run.evaluations++;
+                if (outside ? contractedValue >= reflectedValue : contractedValue > value[n]) {
+                    simplex[n] = contracted;
+                    value[n] = contractedValue;
+                } else {
+                    for (int i = 1; i <= n; i++) {
+                        simplex[i] = along(simplex[0], simplex[i], 0.5);
+                        value[i] = objective.at(simplex[i]);
+                        run.evaluations++;
+                    }
+                }
+            }
+        }
+
+        int best = 0;
+        for (int i = 1; i <= n; i++) {
+            if (value[i] > value[best])
+                best = i;
+        }
+        run.best = simplex[best];
+        run.value = value[best];
+        return run;
+    }
+
+    // from + t * (to - from)
+    private static double[] along(double[] from, double[] to, double t) {
+        double[] x = new double[from.length];
+        for (int d = 0; d < x.length; d++) {
+            x[d] = from[d] + t * (to[d] - from[d]);
+        }
+        return x;
+    }
+
+    private static double[] clamp(double[] x, double[] lower, double[] upper) {
+        for (int d = 0; d < x.length; d++) {
+            x[d] = Math.max(lower[d], Math.min(upper[d], x[d]));
+        }
+        return x;
+    }
+
+    private static boolean converged(double[][] simplex, double[] lower, double[] upper) {
+        for (int i = 1; i < simplex.length; i++) {
+            for (int d = 0; d < lower.length; d++) {
+                double width = upper[d] - lower[d];
+                if (Math.abs(simplex[i][d] - simplex[0][d]) > CONVERGED * width)
+                    return false;
+            }
+        }
+        return true;
+    }
+}
@@ -17,12 +17,17 @@ class NashSolver {
     }
 
     /**
-     * Finds all pure strategy Nash Equilibria for a given game.
+     * Finds all pure strategy Nash Equilibria for a given game, from the
+     * interpreter's cache when it has solved the game with the same
+     * parameters before.
      */
     List<StrategyProfile> findPureEquilibria(GameValue game) {
+        return interpreter.equilibriumCache.lookup(game, interpreter, () -> solvePure(game));
+    }
+
+    private List<StrategyProfile> solvePure(GameValue game) {
         List<StrategyProfile> equilibria = new ArrayList<>();
         List<Token> players = game.players;
-        List<Token> strategies = game.strategies;
 
         if (players.size() != 2) {
             // TODO: Support N-player games
@@ -30,8 +35,8 @@ class NashSolver {
         }
 
         // Iterate through every possible strategy profile (s1, s2)
-        for (Token s1 : strategies) {
-            for (Token s2 : strategies) {
+        for (Token s1 : game.strategiesFor(0)) {
+            for (Token s2 : game.strategiesFor(1)) {
                 // Construct current profile
                 List<Token> currentStratList = new ArrayList<>();
                 currentStratList.add(s1);
@@ -69,7 +74,7 @@ class NashSolver {
             return false; // Error evaluating
 
         // Try all other strategies for this player
-        for (Token otherStrat : game.strategies) {
+        for (Token otherStrat : game.strategiesFor(playerIndex)) {
             if (otherStrat.lexeme.equals(currentStrategy.lexeme))
                 continue;
 
@@ -0,0 +1,86 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Fixed blocks of work spread over a fork-join pool of the given size. The
+ * blocks are the same whatever the thread count, so callers that give each
+ * block its own generator or results, and combine them in block order, get
+ * the same answer on any number of threads.
+ */
+class ParallelBlocks {
+    /** The work of one range of indices, from..to-1. */
+    interface Range {
+        void run(int from, int to);
+    }
+
+    /** Runs the blocks in order on this thread, or on a pool when there are several threads and blocks. */
+    static void run(List<Runnable> blocks, int threads) {
+        if (threads <= 1 || blocks.size() <= 1) {
+            run(null, blocks);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            run(pool, blocks);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the blocks on a pool the caller keeps across many calls, such as
+     * one per solver iteration, or in order on this thread when it is null.
+     */
+    static void run(ForkJoinPool pool, List<Runnable> blocks) {
+        if (pool == null || blocks.size() <= 1) {
+            for (Runnable block : blocks) {
+                block.run();
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> running = new ArrayList<>();
+        for (Runnable block : blocks) {
+            running.add(pool.submit(block));
+        }
+        for (ForkJoinTask<?> block : running) {
+            block.join();
+        }
+    }
+
+    /**
+     * Runs indices 0..count-1 in ranges of 'size', spread over a pool as
+     * above. On one thread the whole range is a single call, so the body must
+     * not depend on where the ranges split.
+     */
+    static void forRanges(int count, int size, int threads, Range body) {
+        if (threads <= 1 || count <= size) {
+            body.run(0, count);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            forRanges(pool, count, size, body);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** As above, on a pool the caller keeps, or on this thread when it is null. */
+    static void forRanges(ForkJoinPool pool, int count, int size, Range body) {
+        if (pool == null || count <= size) {
+            body.run(0, count);
+            return;
+        }
+        List<Runnable> blocks = new ArrayList<>();
+        for (int start = 0; start < count; start += size) {
+            int from = start;
+            int to = Math.min(count, start + size);
+            blocks.add(() -> body.run(from, to));
+        }
+        run(pool, blocks);
+    }
+}
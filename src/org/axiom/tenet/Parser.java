@@ -2,8 +2,11 @@ package org.axiom.tenet;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Arrays;
 
 import static org.axiom.tenet.TokenType.*;
@@ -103,6 +106,26 @@ class Parser {
                 return tweakStatement();
             if (match(SEQUENTIAL))
                 return sequentialGameDeclaration();
+            if (match(AUTOMATON))
+                return automatonDeclaration();
+            if (match(REPEATED))
+                return repeatedStatement();
+            if (match(TOURNAMENT))
+                return tournamentStatement();
+            if (match(STOCHASTIC))
+                return stochasticGameDeclaration();
+            if (match(BAYESIAN))
+                return bayesianGameDeclaration();
+            if (match(COALITION))
+                return coalitionGameDeclaration();
+            if (match(MATCH))
+                return matchStatement();
+            if (match(OPTIMIZE))
+                return optimizeStatement();
+            if (match(SENSITIVITY))
+                return sensitivityStatement();
+            if (match(AUCTION))
+                return auctionStatement();
             if (match(GAME))
                 return gameDeclaration();
             if (match(SOLVE))
@@ -124,30 +147,187 @@ class Parser {
     }
 
     /**
-     * Parses: tweak GAME_NAME { VARIABLE from NUMBER to NUMBER step NUMBER }
+     * Parses: tweak GAME_NAME { VARIABLE from NUMBER to NUMBER step NUMBER [OPTIONS] }
+     * Several variables, separated by commas, sweep a grid of every combination.
+     * 'adaptive TOLERANCE' in place of the step finds where the equilibria change.
+     * The options (threads, export) follow the ranges as in an option block.
      * Example: tweak PD { reward from 1 to 10 step 1 }
+     * Example: tweak PD { reward from 1 to 10 adaptive 0.001 }
+     * Example: tweak Market { tax from 0 to 1 step 0.1, subsidy from 0 to 2 step 0.5 }
+     * Example: tweak Market { tax from 0 to 1 step 0.001 export "tax.tnsw" }
      */
     private Stmt tweakStatement() {
         Token keyword = previous();
         Token gameName = consume(IDENTIFIER, "Expect game name after 'tweak'.");
         consume(LEFT_BRACE, "Expect '{' after game name.");
 
-        Token variable = consume(IDENTIFIER, "Expect variable name to tweak.");
-        consume(FROM, "Expect 'from' after variable name.");
-        Token fromToken = consume(NUMBER, "Expect number after 'from'.");
-        double fromValue = (double) fromToken.literal;
+        List<Stmt.TweakRange> ranges = new ArrayList<>();
+        do {
+            Token variable = consume(IDENTIFIER, "Expect variable name to tweak.");
+            for (Stmt.TweakRange range : ranges) {
+                if (range.variable.lexeme.equals(variable.lexeme))
+                    error(variable, "Variable '" + variable.lexeme + "' is tweaked twice.");
+            }
+            consume(FROM, "Expect 'from' after variable name.");
+            Token fromToken = consume(NUMBER, "Expect number after 'from'.");
+            double fromValue = (double) fromToken.literal;
+
+            consume(TO, "Expect 'to' after from value.");
+            Token toToken = consume(NUMBER, "Expect number after 'to'.");
+            double toValue = (double) toToken.literal;
+
+            double stepValue = 0;
+            Token tolerance = null;
+            if (matchWord("adaptive")) {
+                tolerance = consume(NUMBER, "Expect tolerance after 'adaptive'.");
+                if ((double) tolerance.literal <= 0)
+                    error(tolerance, "Tolerance must be positive.");
+                if (!ranges.isEmpty())
+                    error(variable, "Adaptive sweeps take a single variable.");
+            } else {
+                consume(STEP, "Expect 'step' or 'adaptive' after to value.");
+                Token stepToken = consume(NUMBER, "Expect number after 'step'.");
+                stepValue = (double) stepToken.literal;
+                if (stepValue <= 0)
+                    error(stepToken, "Step must be positive.");
+                if (!ranges.isEmpty() && ranges.get(0).tolerance != null)
+                    error(variable, "Adaptive sweeps take a single variable.");
+            }
 
-        consume(TO, "Expect 'to' after from value.");
-        Token toToken = consume(NUMBER, "Expect number after 'to'.");
-        double toValue = (double) toToken.literal;
+            ranges.add(new Stmt.TweakRange(variable, fromValue, toValue, stepValue, tolerance));
+        } while (match(COMMA) || (check(IDENTIFIER) && checkNext(FROM)));
 
-        consume(STEP, "Expect 'step' after to value.");
-        Token stepToken = consume(NUMBER, "Expect number after 'step'.");
-        double stepValue = (double) stepToken.literal;
+        Map<Token, Token> options = optionBlock();
+        return new Stmt.Tweak(keyword, gameName, ranges, options);
+    }
 
-        consume(RIGHT_BRACE, "Expect '}' after tweak body.");
+    /**
+     * Parses: optimize GAME_NAME { maximize EXPR over VARIABLE in [NUMBER, NUMBER], ...
+     * subject to equilibrium [OPTIONS] }
+     * 'minimize' may replace 'maximize'. The objective may name the players,
+     * which stand for their payoffs at the equilibrium.
+     * Example: optimize Market { maximize tax * Firm over tax in [0, 1] subject to equilibrium }
+     */
+    private Stmt optimizeStatement() {
+        Token keyword = previous();
+        Token gameName = consume(IDENTIFIER, "Expect game name after 'optimize'.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        boolean maximize = matchWord("maximize");
+        if (!maximize && !matchWord("minimize")) {
+            throw error(peek(), "Expect 'maximize' or 'minimize'.");
+        }
+        Expr objective = expression();
+
+        if (!matchWord("over")) {
+            throw error(peek(), "Expect 'over' after the objective.");
+        }
+        List<Stmt.TweakRange> ranges = new ArrayList<>();
+        do {
+            Token variable = consume(IDENTIFIER, "Expect variable name to optimize over.");
+            for (Stmt.TweakRange range : ranges) {
+                if (range.variable.lexeme.equals(variable.lexeme))
+                    error(variable, "Variable '" + variable.lexeme + "' is listed twice.");
+            }
+            if (!matchWord("in")) {
+                throw error(peek(), "Expect 'in' after variable name.");
+            }
+            consume(LEFT_BRACKET, "Expect '[' before the bounds.");
+            double lower = signedNumber("Expect lower bound.");
+            consume(COMMA, "Expect ',' between the bounds.");
+            Token upperToken = peek();
+            double upper = signedNumber("Expect upper bound.");
+            consume(RIGHT_BRACKET, "Expect ']' after the bounds.");
+            if (upper < lower)
+                error(upperToken, "Upper bound is below the lower bound.");
+            ranges.add(new Stmt.TweakRange(variable, lower, upper, 0, null));
+        } while (match(COMMA));
 
-        return new Stmt.Tweak(keyword, gameName, variable, fromValue, toValue, stepValue);
+        if (!matchWord("subject") || !match(TO) || !matchWord("equilibrium")) {
+            throw error(peek(), "Expect 'subject to equilibrium' after the ranges.");
+        }
+        Map<Token, Token> options = optionBlock();
+        return new Stmt.Optimize(keyword, gameName, maximize, objective, ranges, options);
+    }
+
+    /**
+     * Parses: sensitivity GAME_NAME { VARIABLE ~ uniform(LOW, HIGH), VARIABLE ~ normal(MEAN, SD) ...
+     * [; OPTIONS] }
+     * Example: sensitivity Market { tax ~ uniform(0, 1), demand ~ normal(10, 2); samples 10000 }
+     */
+    private Stmt sensitivityStatement() {
+        Token keyword = previous();
+        Token gameName = consume(IDENTIFIER, "Expect game name after 'sensitivity'.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        List<Stmt.Draw> draws = new ArrayList<>();
+        do {
+            Token variable = consume(IDENTIFIER, "Expect variable name.");
+            for (Stmt.Draw draw : draws) {
+                if (draw.variable.lexeme.equals(variable.lexeme))
+                    error(variable, "Variable '" + variable.lexeme + "' is drawn twice.");
+            }
+            draws.add(draw(variable));
+        } while (match(COMMA) || (check(IDENTIFIER) && checkNext(TILDE)));
+
+        match(SEMICOLON); // Separates the options, when there are any
+        Map<Token, Token> options = optionBlock();
+        return new Stmt.Sensitivity(keyword, gameName, draws, options);
+    }
+
+    // Parses the rest of: VARIABLE ~ uniform(LOW, HIGH) or VARIABLE ~ normal(MEAN, SD)
+    private Stmt.Draw draw(Token variable) {
+        consume(TILDE, "Expect '~' after '" + variable.lexeme + "'.");
+        Token distribution = consume(IDENTIFIER, "Expect distribution after '~'.");
+        consume(LEFT_PAREN, "Expect '(' after distribution.");
+        double first = signedNumber("Expect distribution argument.");
+        consume(COMMA, "Expect ',' between distribution arguments.");
+        Token secondToken = peek();
+        double second = signedNumber("Expect distribution argument.");
+        consume(RIGHT_PAREN, "Expect ')' after distribution arguments.");
+        if (distribution.lexeme.equals("uniform")) {
+            if (second < first)
+                error(secondToken, "Upper end of a uniform distribution is below its lower end.");
+        } else if (distribution.lexeme.equals("normal")) {
+            if (second <= 0)
+                error(secondToken, "Standard deviation must be positive.");
+        } else {
+            error(distribution, "Unknown distribution '" + distribution.lexeme + "'. Use uniform or normal.");
+        }
+        return new Stmt.Draw(variable, distribution, new double[] { first, second });
+    }
+
+    /**
+     * Parses: auction FORMAT { values ~ uniform(LOW, HIGH); OPTIONS }
+     * FORMAT is first_price, second_price or all_pay. Options: bidders, runs,
+     * bid (a function from value to bid; equilibrium bids if absent), seed, threads.
+     * Example: auction first_price { values ~ uniform(0, 1); bidders 1000 runs 10000 }
+     */
+    private Stmt auctionStatement() {
+        Token keyword = previous();
+        Token format = consume(IDENTIFIER, "Expect auction format after 'auction'.");
+        if (!AuctionSimulator.FORMATS.contains(format.lexeme)) {
+            error(format, "Unknown auction format '" + format.lexeme +
+                    "'. Use first_price, second_price or all_pay.");
+        }
+        consume(LEFT_BRACE, "Expect '{' after auction format.");
+        Token values = peek();
+        if (!matchWord("values")) {
+            throw error(values, "Expect 'values ~ uniform(LOW, HIGH)'.");
+        }
+        Stmt.Draw draw = draw(values);
+        if (!draw.distribution.lexeme.equals("uniform")) {
+            error(draw.distribution, "Auction values must be uniform; equilibrium bids are known in closed form.");
+        } else if (draw.arguments[0] < 0 || draw.arguments[1] <= draw.arguments[0]) {
+            error(values, "Auction values need 0 <= LOW < HIGH.");
+        }
+        match(SEMICOLON); // Separates the options, when there are any
+        Map<Token, Token> options = optionBlock();
+        return new Stmt.Auction(keyword, format, draw, options);
+    }
+
+    private double signedNumber(String message) {
+        boolean negative = match(MINUS);
+        double value = (double) consume(NUMBER, message).literal;
+        return negative ? -value : value;
     }
 
     /**
@@ -189,49 +369,103 @@ class Parser {
             players.add(consume(IDENTIFIER, "Expect player name."));
         } while (match(COMMA));
 
-        // Parse nodes
+        // Parse nodes, or the rules that generate them
         List<Stmt.GameNode> nodes = new ArrayList<>();
-        while (match(NODE)) {
-            nodes.add(parseGameNode());
+        Stmt.GameRules rules = null;
+        if (check(NODE) || check(RIGHT_BRACE)) {
+            while (match(NODE)) {
+                nodes.add(parseGameNode());
+            }
+        } else {
+            rules = parseGameRules();
         }
 
         consume(RIGHT_BRACE, "Expect '}' after sequential game body.");
 
-        return new Stmt.SequentialGame(name, players, nodes);
+        // Resolve node names to ids and check the tree shape now, not per solve
+        GameIndex index = rules == null ? GameIndex.build(players, nodes, this::error) : null;
+
+        return new Stmt.SequentialGame(name, players, nodes, rules, index);
+    }
+
+    /**
+     * Procedural game rules, expanded lazily by the solvers:
+     * start S actions F next F player F payoff F [info F] [odds F]
+     */
+    private Stmt.GameRules parseGameRules() {
+        Map<String, Expr> rules = new HashMap<>();
+        List<String> known = Arrays.asList("start", "actions", "next", "player", "payoff", "info", "odds");
+        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            Token word = advance();
+            String rule = word.type == PLAYERS ? "player" : word.type == PAYOFF ? "payoff" : word.lexeme;
+            if (!known.contains(rule)) {
+                throw error(word, "Expect a game rule: " + String.join(", ", known) + ".");
+            }
+            if (rules.containsKey(rule)) {
+                throw error(word, "Rule '" + rule + "' is given twice.");
+            }
+            rules.put(rule, expression());
+            match(SEMICOLON);
+        }
+        for (String required : known.subList(0, 5)) {
+            if (!rules.containsKey(required)) {
+                throw error(peek(), "Procedural game needs a '" + required + "' rule.");
+            }
+        }
+        return new Stmt.GameRules(rules.get("start"), rules.get("actions"), rules.get("next"),
+                rules.get("player"), rules.get("payoff"), rules.get("info"), rules.get("odds"));
     }
 
     private Stmt.GameNode parseGameNode() {
         Token nodeName = consume(IDENTIFIER, "Expect node name.");
         consume(LEFT_BRACE, "Expect '{' after node name.");
 
-        // Parse player for this node
+        // Parse player for this node ('chance' marks a move by nature)
         consume(PLAYERS, "Expect 'player' declaration in node.");
         Token player = consume(IDENTIFIER, "Expect player name.");
+        boolean isChance = player.lexeme.equals(Stmt.GameNode.CHANCE);
+
+        // Optional information set: nodes sharing a label are indistinguishable
+        Token infoSet = null;
+        if (matchWord("info")) {
+            if (isChance) {
+                throw error(previous(), "Chance nodes cannot belong to an information set.");
+            }
+            infoSet = consume(IDENTIFIER, "Expect information set name after 'info'.");
+        }
 
         // Parse moves
         List<Stmt.GameMove> moves = new ArrayList<>();
         while (match(MOVE)) {
             Token action = consume(IDENTIFIER, "Expect action name.");
+
+            // Chance moves may carry a probability: move Heads 0.5 -> ...
+            double probability = Double.NaN;
+            if (match(NUMBER)) {
+                if (!isChance) {
+                    throw error(previous(), "Only chance nodes can assign move probabilities.");
+                }
+                probability = (double) previous().literal;
+            }
             consume(ARROW, "Expect '->' after action.");
 
             if (match(LEFT_PAREN)) {
-                // Terminal payoffs: (num, num, ...)
-                List<Double> payoffs = new ArrayList<>();
+                // Terminal payoffs: (expr, expr, ...), evaluated when the game is solved
+                List<Expr> payoffs = new ArrayList<>();
                 do {
-                    Token numToken = consume(NUMBER, "Expect payoff number.");
-                    payoffs.add((Double) numToken.literal);
+                    payoffs.add(expression());
                 } while (match(COMMA));
                 consume(RIGHT_PAREN, "Expect ')' after payoffs.");
-                moves.add(new Stmt.GameMove(action, payoffs));
+                moves.add(new Stmt.GameMove(action, payoffs, probability));
             } else {
                 // Target node
                 Token targetNode = consume(IDENTIFIER, "Expect target node name.");
-                moves.add(new Stmt.GameMove(action, targetNode));
+                moves.add(new Stmt.GameMove(action, targetNode, probability));
             }
         }
 
         consume(RIGHT_BRACE, "Expect '}' after node body.");
-        return new Stmt.GameNode(nodeName, player, moves);
+        return new Stmt.GameNode(nodeName, player, infoSet, moves);
     }
 
     private Stmt classDeclaration() {
@@ -501,6 +735,18 @@ class Parser {
         throw error(peek(), "Expect expression.");
     }
 
+    /**
+     * Matches a contextual keyword: an identifier that only has special meaning
+     * inside a particular construct, so it stays usable as a variable name.
+     */
+    private boolean matchWord(String word) {
+        if (check(IDENTIFIER) && peek().lexeme.equals(word)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
@@ -524,6 +770,12 @@ class Parser {
 
     }
 
+    private boolean checkNext(TokenType type) {
+        if (isAtEnd() || tokens.get(current + 1).type == TokenType.EOF)
+            return false;
+        return tokens.get(current + 1).type == type;
+    }
+
     private Token advance() {
         if (!isAtEnd())
             current++;
@@ -587,7 +839,7 @@ class Parser {
         List<Token> strategies = parseIdentifierList();
 
         // Parse payoff sections
-        Map<Token, Map<StrategyProfile, Expr>> payoffs = new HashMap<>();
+        Map<Token, Map<StrategyProfile, Expr>> payoffs = new LinkedHashMap<>(); // declaration order, for the checks below
         while (match(PAYOFF)) {
             Token playerName = consume(IDENTIFIER, "Expect player name after 'payoff'.");
             consume(LEFT_BRACE, "Expect '{' before payoff rules.");
@@ -765,15 +1017,607 @@ class Parser {
 
     /**
      * Parses: solve GAME_NAME;
+     * solve GAME_NAME using ALGORITHM;
+     * solve GAME_NAME using ALGORITHM { iterations 10000 threads 4 }
      */
     private Stmt solveStatement() {
         Token gameName = consume(IDENTIFIER, "Expect game name after 'solve'.");
         Token algorithm = null;
+        Map<Token, Token> options = new LinkedHashMap<>();
         if (match(USING)) {
             algorithm = consume(IDENTIFIER, "Expect algorithm name after 'using'.");
+            if (match(LEFT_BRACE)) {
+                options = optionBlock();
+                match(SEMICOLON); // Optional after an option block, like tweak
+                return new Stmt.Solve(gameName, algorithm, options);
+            }
         }
         consume(SEMICOLON, "Expect ';' after solve statement.");
-        return new Stmt.Solve(gameName, algorithm);
+        return new Stmt.Solve(gameName, algorithm, options);
+    }
+
+    /**
+     * Parses the body of an option block: { name value, name value ... }
+     * Values are numbers or identifiers; commas between options are optional.
+     * The opening '{' has already been consumed.
+     */
+    private Map<Token, Token> optionBlock() {
+        Map<Token, Token> options = new LinkedHashMap<>();
+        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            option(options);
+        }
+        consume(RIGHT_BRACE, "Expect '}' after options.");
+        return options;
+    }
+
+    // One 'name value' pair of an option block, and an optional comma
+    private void option(Map<Token, Token> options) {
+        Token name = consume(IDENTIFIER, "Expect option name.");
+        Token value;
+        if (match(NUMBER, IDENTIFIER, STRING)) {
+            value = previous();
+        } else {
+            throw error(peek(), "Expect value for option '" + name.lexeme + "'.");
+        }
+        options.put(name, value);
+        match(COMMA);
+    }
+
+    /**
+     * Parses: automaton NAME { state S plays ACTION { ACTION -> S ... } ... }
+     * The first state is the start; the transition block may be omitted.
+     */
+    private Stmt automatonDeclaration() {
+        Token name = consume(IDENTIFIER, "Expect automaton name.");
+        consume(LEFT_BRACE, "Expect '{' after automaton name.");
+        List<Stmt.AutomatonState> states = new ArrayList<>();
+        while (matchWord("state")) {
+            Token stateName = consume(IDENTIFIER, "Expect state name.");
+            if (!matchWord("plays")) {
+                throw error(peek(), "Expect 'plays' after state name.");
+            }
+            Token action = consume(IDENTIFIER, "Expect the action this state plays.");
+            List<Token> on = new ArrayList<>();
+            List<Token> targets = new ArrayList<>();
+            if (match(LEFT_BRACE)) {
+                while (!check(RIGHT_BRACE) && !isAtEnd()) {
+                    on.add(consume(IDENTIFIER, "Expect opponent action."));
+                    consume(ARROW, "Expect '->' after opponent action.");
+                    targets.add(consume(IDENTIFIER, "Expect next state."));
+                    match(COMMA);
+                }
+                consume(RIGHT_BRACE, "Expect '}' after transitions.");
+            }
+            states.add(new Stmt.AutomatonState(stateName, action, on, targets));
+        }
+        if (states.isEmpty()) {
+            throw error(peek(), "Expect at least one 'state' in automaton.");
+        }
+        consume(RIGHT_BRACE, "Expect '}' after automaton body.");
+        return new Stmt.Automaton(name, states);
+    }
+
+    /**
+     * Parses: repeated GAME_NAME { rounds N discount D strategies A, B, ... }
+     * Without 'rounds' the game repeats forever.
+     */
+    private Stmt repeatedStatement() {
+        Token keyword = previous();
+        Token gameName = consume(IDENTIFIER, "Expect game name after 'repeated'.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        Token rounds = null;
+        Token discount = null;
+        List<Token> strategies = null;
+        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            if (matchWord("rounds")) {
+                rounds = consume(NUMBER, "Expect number of rounds.");
+            } else if (matchWord("discount")) {
+                discount = consume(NUMBER, "Expect discount factor.");
+            } else if (match(STRATEGIES)) {
+                strategies = parseIdentifierList();
+            } else {
+                throw error(peek(), "Expect 'rounds', 'discount' or 'strategies'.");
+            }
+            match(COMMA);
+        }
+        consume(RIGHT_BRACE, "Expect '}' after repeated game body.");
+        if (strategies == null) {
+            throw error(previous(), "Repeated game needs a 'strategies' list.");
+        }
+        return new Stmt.Repeated(keyword, gameName, rounds, discount, strategies);
+    }
+
+    /**
+     * Parses: tournament GAME_NAME { rounds N threads T strategies A, B, ... }
+     * Options other than the strategies list are read as in an option block.
+     */
+    private Stmt tournamentStatement() {
+        Token keyword = previous();
+        Token gameName = consume(IDENTIFIER, "Expect game name after 'tournament'.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        Map<Token, Token> options = new LinkedHashMap<>();
+        List<Token> strategies = null;
+        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            if (match(STRATEGIES)) {
+                strategies = parseIdentifierList();
+                match(COMMA);
+            } else {
+                option(options);
+            }
+        }
+        consume(RIGHT_BRACE, "Expect '}' after tournament body.");
+        if (strategies == null) {
+            throw error(previous(), "Tournament needs a 'strategies' list.");
+        }
+        return new Stmt.Tournament(keyword, gameName, options, strategies);
+    }
+
+    /**
+     * Parses a stochastic game:
+     * stochastic NAME {
+     *     players A, B
+     *     discount 0.9
+     *     state S {
+     *         game STAGE
+     *         (X, Y) -> T 0.5, U 0.25
+     *     }
+     * }
+     * A target without a probability gets all of it. Probability a profile
+     * leaves unassigned keeps play in the same state, as do unlisted profiles.
+     */
+    private Stmt stochasticGameDeclaration() {
+        Token name = consume(IDENTIFIER, "Expect stochastic game name.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        consume(PLAYERS, "Expect 'players' declaration.");
+        List<Token> players = parseIdentifierList();
+        if (players.size() != 2) {
+            error(players.get(0), "Stochastic games must have exactly two players.");
+        }
+        if (!matchWord("discount")) {
+            throw error(peek(), "Expect 'discount' after players.");
+        }
+        Token discount = consume(NUMBER, "Expect discount factor.");
+        double delta = (double) discount.literal;
+        if (delta <= 0 || delta >= 1) {
+            error(discount, "Discount must be between 0 and 1 (exclusive).");
+        }
+
+        List<Stmt.StochasticState> states = new ArrayList<>();
+        while (matchWord("state")) {
+            Token stateName = consume(IDENTIFIER, "Expect state name.");
+            consume(LEFT_BRACE, "Expect '{' after state name.");
+            consume(GAME, "Expect 'game' naming the stage game of state '" + stateName.lexeme + "'.");
+            Token game = consume(IDENTIFIER, "Expect stage game name.");
+            List<List<Token>> profiles = new ArrayList<>();
+            List<List<Token>> targets = new ArrayList<>();
+            List<List<Double>> probabilities = new ArrayList<>();
+            while (match(LEFT_PAREN)) {
+                profiles.add(parseIdentifierList());
+                consume(RIGHT_PAREN, "Expect ')' after action profile.");
+                consume(ARROW, "Expect '->' after action profile.");
+                List<Token> to = new ArrayList<>();
+                List<Double> odds = new ArrayList<>();
+                double total = 0;
+                do {
+                    to.add(consume(IDENTIFIER, "Expect target state."));
+                    double p = match(NUMBER) ? (double) previous().literal : 1;
+                    if (p < 0 || p > 1) {
+                        error(previous(), "Transition probabilities must be between 0 and 1.");
+                    }
+                    odds.add(p);
+                    total += p;
+                } while (match(COMMA));
+                if (total > 1 + 1e-9) {
+                    error(previous(), "Transition probabilities of one profile add up to more than 1.");
+                }
+                targets.add(to);
+                probabilities.add(odds);
+            }
+            consume(RIGHT_BRACE, "Expect '}' after state body.");
+            states.add(new Stmt.StochasticState(stateName, game, profiles, targets, probabilities));
+        }
+        consume(RIGHT_BRACE, "Expect '}' after stochastic game body.");
+        if (states.isEmpty()) {
+            error(name, "Stochastic game '" + name.lexeme + "' has no states.");
+        }
+
+        // Every state is declared once and every target is declared
+        Set<String> names = new HashSet<>();
+        for (Stmt.StochasticState state : states) {
+            if (!names.add(state.name.lexeme)) {
+                error(state.name, "State '" + state.name.lexeme + "' is declared twice.");
+            }
+        }
+        for (Stmt.StochasticState state : states) {
+            for (List<Token> to : state.targets) {
+                for (Token target : to) {
+                    if (!names.contains(target.lexeme)) {
+                        error(target, "Undefined state '" + target.lexeme + "'.");
+                    }
+                }
+            }
+        }
+        return new Stmt.Stochastic(name, players, discount, states);
+    }
+
+    /**
+     * Parses a Bayesian game:
+     * bayesian game NAME {
+     *     players A, B
+     *     strategies A: X, Y          (or one shared list: strategies X, Y)
+     *     strategies B: Z, W
+     *     types B: Weak 0.6, Tough 0.4
+     *     payoff A {
+     *         (X, Z): 1               applies to every type profile...
+     *         (X, Z | Tough): -1      ...not given its own entry
+     *     }
+     * }
+     * Types after '|' name one type for each player with types, in player
+     * order. Players without a 'types' line have no private information.
+     */
+    private Stmt bayesianGameDeclaration() {
+        consume(GAME, "Expect 'game' after 'bayesian'.");
+        Token name = consume(IDENTIFIER, "Expect game name.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        consume(PLAYERS, "Expect 'players' declaration.");
+        List<Token> players = parseIdentifierList();
+
+        List<List<Token>> strategies = new ArrayList<>();
+        List<List<Token>> types = new ArrayList<>();
+        List<List<Double>> priors = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            strategies.add(null);
+            types.add(new ArrayList<>());
+            priors.add(new ArrayList<>());
+        }
+        while (check(STRATEGIES) || (check(IDENTIFIER) && peek().lexeme.equals("types"))) {
+            if (match(STRATEGIES)) {
+                if (check(IDENTIFIER) && checkNext(COLON)) {
+                    int p = playerIndex(players, advance());
+                    consume(COLON, "Expect ':' after player name.");
+                    List<Token> list = parseIdentifierList();
+                    if (p >= 0)
+                        strategies.set(p, list);
+                } else {
+                    List<Token> shared = parseIdentifierList();
+                    for (int p = 0; p < players.size(); p++) {
+                        strategies.set(p, shared);
+                    }
+                }
+                continue;
+            }
+            advance(); // 'types'
+            int p = playerIndex(players, consume(IDENTIFIER, "Expect player name after 'types'."));
+            consume(COLON, "Expect ':' after player name.");
+            List<Token> typeNames = new ArrayList<>();
+            List<Double> odds = new ArrayList<>();
+            double total = 0;
+            do {
+                typeNames.add(consume(IDENTIFIER, "Expect type name."));
+                Token prior = consume(NUMBER, "Expect prior probability after type '" + previous().lexeme + "'.");
+                double value = (double) prior.literal;
+                if (value <= 0 || value > 1) {
+                    error(prior, "Prior probabilities must be greater than 0 and at most 1.");
+                }
+                odds.add(value);
+                total += value;
+            } while (match(COMMA));
+            if (Math.abs(total - 1) > 1e-9) {
+                error(previous(), "Prior probabilities of a player's types must add up to 1.");
+            }
+            if (p >= 0) {
+                types.set(p, typeNames);
+                priors.set(p, odds);
+            }
+        }
+        for (int p = 0; p < players.size(); p++) {
+            if (strategies.get(p) == null) {
+                throw error(players.get(p), "Player '" + players.get(p).lexeme + "' has no strategies.");
+            }
+        }
+
+        List<Stmt.BayesianPayoff> payoffs = new ArrayList<>();
+        while (match(PAYOFF)) {
+            Token player = consume(IDENTIFIER, "Expect player name after 'payoff'.");
+            playerIndex(players, player);
+            consume(LEFT_BRACE, "Expect '{' before payoff rules.");
+            while (!check(RIGHT_BRACE) && !isAtEnd()) {
+                consume(LEFT_PAREN, "Expect '(' before action profile.");
+                List<Token> actions = parseIdentifierList();
+                List<Token> typeProfile = null;
+                if (match(PIPE)) {
+                    typeProfile = parseIdentifierList();
+                }
+                consume(RIGHT_PAREN, "Expect ')' after profile.");
+                consume(COLON, "Expect ':' after profile.");
+                payoffs.add(new Stmt.BayesianPayoff(player, actions, typeProfile, payoffValue()));
+            }
+            consume(RIGHT_BRACE, "Expect '}' after payoff rules.");
+        }
+        consume(RIGHT_BRACE, "Expect '}' after game body.");
+
+        Stmt.BayesianGame game = new Stmt.BayesianGame(name, players, strategies, types, priors, payoffs);
+        validateBayesianGame(game);
+        return game;
+    }
+
+    // Reports an undeclared player and returns -1 for it
+    private int playerIndex(List<Token> players, Token player) {
+        for (int p = 0; p < players.size(); p++) {
+            if (players.get(p).lexeme.equals(player.lexeme))
+                return p;
+        }
+        error(player, "Player '" + player.lexeme + "' is not declared. Declared players: " +
+                formatPlayerList(players));
+        return -1;
+    }
+
+    /**
+     * Checks every payoff entry against the declared actions and types, and
+     * that each player has a payoff for every action profile and type
+     * profile, either from a specific entry or from a general one.
+     */
+    private void validateBayesianGame(Stmt.BayesianGame game) {
+        List<Integer> typed = new ArrayList<>();
+        for (int p = 0; p < game.players.size(); p++) {
+            if (!game.types.get(p).isEmpty())
+                typed.add(p);
+        }
+        Map<String, Set<String>> general = new HashMap<>();
+        Map<String, Set<String>> specific = new HashMap<>();
+        for (Stmt.BayesianPayoff entry : game.payoffs) {
+            if (entry.actions.size() != game.players.size()) {
+                error(entry.actions.get(0), "Expect one action per player in the profile.");
+                continue;
+            }
+            boolean valid = true;
+            for (int p = 0; p < game.players.size(); p++) {
+                valid &= declared(entry.actions.get(p), game.strategies.get(p),
+                        "an action of " + game.players.get(p).lexeme);
+            }
+            if (entry.types != null) {
+                if (entry.types.size() != typed.size()) {
+                    error(entry.types.isEmpty() ? previous() : entry.types.get(0),
+                            "Expect one type for each player with types (" + typed.size() + ").");
+                    continue;
+                }
+                for (int i = 0; i < typed.size(); i++) {
+                    valid &= declared(entry.types.get(i), game.types.get(typed.get(i)),
+                            "a type of " + game.players.get(typed.get(i)).lexeme);
+                }
+            }
+            if (!valid)
+                continue;
+            String key = entry.player.lexeme + " " + lexemes(entry.actions);
+            if (entry.types == null) {
+                general.computeIfAbsent(entry.player.lexeme, k -> new HashSet<>()).add(key);
+            } else {
+                specific.computeIfAbsent(key, k -> new HashSet<>()).add(lexemes(entry.types));
+            }
+        }
+
+        int typeProfiles = 1;
+        for (int p : typed) {
+            typeProfiles *= game.types.get(p).size();
+        }
+        for (Token player : game.players) {
+            Set<String> covered = general.getOrDefault(player.lexeme, new HashSet<>());
+            int[] action = new int[game.players.size()];
+            do {
+                List<Token> profile = new ArrayList<>();
+                for (int p = 0; p < action.length; p++) {
+                    profile.add(game.strategies.get(p).get(action[p]));
+                }
+                String key = player.lexeme + " " + lexemes(profile);
+                if (!covered.contains(key) && specific.getOrDefault(key, new HashSet<>()).size() < typeProfiles) {
+                    error(player, "Payoff of '" + player.lexeme + "' in game '" + game.name.lexeme +
+                            "' is missing for (" + lexemes(profile) + ") under some types.");
+                    return;
+                }
+            } while (nextProfile(action, game.strategies));
+        }
+    }
+
+    private boolean declared(Token name, List<Token> allowed, String what) {
+        for (Token token : allowed) {
+            if (token.lexeme.equals(name.lexeme))
+                return true;
+        }
+        error(name, "'" + name.lexeme + "' is not " + what + ".");
+        return false;
+    }
+
+    private static String lexemes(List<Token> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (Token token : tokens) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(token.lexeme);
+        }
+        return sb.toString();
+    }
+
+    // Mixed-radix increment; false after the last profile
+    private static boolean nextProfile(int[] digits, List<List<Token>> radix) {
+        for (int i = digits.length - 1; i >= 0; i--) {
+            if (++digits[i] < radix.get(i).size())
+                return true;
+            digits[i] = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Parses a cooperative game, with the worth of a coalition given by a
+     * function or a table:
+     * coalition game NAME { players A, B, C  value worth }
+     * coalition game NAME { players A, B, C  value { (A, B): 3 (A, B, C): 4 } }
+     * The function gets a coalition with a true or false field per player and
+     * its 'size'. Coalitions missing from a table are worth 0.
+     */
+    private Stmt coalitionGameDeclaration() {
+        consume(GAME, "Expect 'game' after 'coalition'.");
+        Token name = consume(IDENTIFIER, "Expect game name.");
+        consume(LEFT_BRACE, "Expect '{' after game name.");
+        consume(PLAYERS, "Expect 'players' declaration.");
+        List<Token> players = parseIdentifierList();
+        Set<String> names = new HashSet<>();
+        for (Token player : players) {
+            if (!names.add(player.lexeme)) {
+                error(player, "Player '" + player.lexeme + "' is declared twice.");
+            }
+            if (player.lexeme.equals("size")) {
+                error(player, "'size' is reserved for the coalition size; rename this player.");
+            }
+        }
+        if (players.size() > 63) {
+            error(players.get(63), "Coalition games support at most 63 players.");
+        }
+
+        if (!matchWord("value")) {
+            throw error(peek(), "Expect 'value' with a function or table of coalition values.");
+        }
+        Expr worth = null;
+        List<List<Token>> coalitions = new ArrayList<>();
+        List<Expr> values = new ArrayList<>();
+        if (match(LEFT_BRACE)) {
+            Set<Set<String>> seen = new HashSet<>();
+            while (!check(RIGHT_BRACE) && !isAtEnd()) {
+                consume(LEFT_PAREN, "Expect '(' before coalition.");
+                List<Token> members = parseIdentifierList();
+                consume(RIGHT_PAREN, "Expect ')' after coalition.");
+                consume(COLON, "Expect ':' after coalition.");
+                Set<String> set = new HashSet<>();
+                for (Token member : members) {
+                    if (!names.contains(member.lexeme)) {
+                        error(member, "'" + member.lexeme + "' is not a player of this game.");
+                    } else if (!set.add(member.lexeme)) {
+                        error(member, "'" + member.lexeme + "' appears twice in the coalition.");
+                    }
+                }
+                if (!seen.add(set)) {
+                    error(members.get(0), "Coalition (" + lexemes(members) + ") is listed twice.");
+                }
+                coalitions.add(members);
+                values.add(payoffValue());
+            }
+            consume(RIGHT_BRACE, "Expect '}' after coalition values.");
+        } else {
+            worth = new Expr.Variable(consume(IDENTIFIER, "Expect function name or '{' after 'value'."));
+        }
+        consume(RIGHT_BRACE, "Expect '}' after game body.");
+        return new Stmt.CoalitionGame(name, players, worth, coalitions, values);
+    }
+
+    /**
+     * Parses a matching market:
+     * match NAME {
+     *     proposers A, B, C          (or a number of agents: proposers 5000)
+     *     receivers X, Y, Z
+     *     prefer { A: Y, X  X: B, A, C ... }
+     *     proposer score f           (f(self, other) or f(other); higher is better)
+     *     receiver score g
+     *     noise 0.5 seed 7 threads 4
+     *     current f
+     * }
+     * Lists are best first; agents left off a list are unacceptable. Each side
+     * takes its preferences from lists or from a score, not both.
+     */
+    private Stmt matchStatement() {
+        Token keyword = previous();
+        Token name = consume(IDENTIFIER, "Expect market name after 'match'.");
+        consume(LEFT_BRACE, "Expect '{' after market name.");
+        Token[] sideKeyword = new Token[2];
+        Token[] count = new Token[2];
+        List<List<Token>> agents = new ArrayList<>();
+        Map<String, Integer> sideOf = new HashMap<>();
+        String[] sides = { "proposers", "receivers" };
+        for (int side = 0; side < 2; side++) {
+            if (!matchWord(sides[side])) {
+                throw error(peek(), "Expect '" + sides[side] + "' declaration.");
+            }
+            sideKeyword[side] = previous();
+            count[side] = match(NUMBER) ? previous() : null;
+            agents.add(count[side] == null ? parseIdentifierList() : new ArrayList<>());
+            for (Token agent : agents.get(side)) {
+                if (sideOf.put(agent.lexeme, side) != null) {
+                    error(agent, "Agent '" + agent.lexeme + "' is declared twice.");
+                }
+            }
+        }
+
+        Map<String, List<Token>> lists = new HashMap<>();
+        Expr[] score = new Expr[2];
+        Token[] listed = new Token[2]; // first list given for each side
+        Expr current = null;
+        Map<Token, Token> options = new LinkedHashMap<>();
+        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            if (matchWord("prefer")) {
+                consume(LEFT_BRACE, "Expect '{' after 'prefer'.");
+                while (!check(RIGHT_BRACE) && !isAtEnd()) {
+                    Token owner = consume(IDENTIFIER, "Expect agent name.");
+                    consume(COLON, "Expect ':' after agent name.");
+                    List<Token> list = parseIdentifierList();
+                    Integer side = sideOf.get(owner.lexeme);
+                    if (side == null) {
+                        error(owner, "'" + owner.lexeme + "' is not an agent of this market.");
+                        continue;
+                    }
+                    if (lists.put(owner.lexeme, list) != null) {
+                        error(owner, "Preferences of '" + owner.lexeme + "' are listed twice.");
+                    }
+                    if (listed[side] == null)
+                        listed[side] = owner;
+                    Set<String> seen = new HashSet<>();
+                    for (Token other : list) {
+                        if (!Integer.valueOf(1 - side).equals(sideOf.get(other.lexeme))) {
+                            error(other, "'" + other.lexeme + "' is not one of the " + sides[1 - side] + ".");
+                        } else if (!seen.add(other.lexeme)) {
+                            error(other, "'" + other.lexeme + "' appears twice in the list of '" +
+                                    owner.lexeme + "'.");
+                        }
+                    }
+                }
+                consume(RIGHT_BRACE, "Expect '}' after preference lists.");
+            } else if (matchWord("proposer") || matchWord("receiver")) {
+                Token sideWord = previous();
+                if (!matchWord("score")) {
+                    throw error(peek(), "Expect 'score' after '" + sideWord.lexeme + "'.");
+                }
+                int side = sideWord.lexeme.equals("proposer") ? 0 : 1;
+                if (score[side] != null) {
+                    error(sideWord, "The " + sideWord.lexeme + " score is given twice.");
+                }
+                score[side] = new Expr.Variable(consume(IDENTIFIER, "Expect score function name."));
+            } else if (matchWord("current")) {
+                current = new Expr.Variable(consume(IDENTIFIER, "Expect function name after 'current'."));
+            } else if (matchWord("noise") || matchWord("seed") || matchWord("threads")) {
+                Token option = previous();
+                options.put(option, consume(NUMBER, "Expect number after '" + option.lexeme + "'."));
+            } else {
+                throw error(peek(), "Expect 'prefer', 'proposer score', 'receiver score', 'current', " +
+                        "'noise', 'seed' or 'threads'.");
+            }
+        }
+        consume(RIGHT_BRACE, "Expect '}' after match body.");
+
+        Stmt.MatchSide[] result = new Stmt.MatchSide[2];
+        for (int side = 0; side < 2; side++) {
+            String word = side == 0 ? "proposer" : "receiver";
+            if (score[side] != null && listed[side] != null) {
+                error(listed[side], "The " + sides[side] + " have a score; drop their preference lists.");
+            } else if (score[side] == null && listed[side] == null) {
+                error(sideKeyword[side], "The " + sides[side] + " need preference lists or a '" + word +
+                        " score' function.");
+            }
+            List<List<Token>> sideLists = new ArrayList<>();
+            for (Token agent : agents.get(side)) {
+                sideLists.add(lists.getOrDefault(agent.lexeme, new ArrayList<>()));
+            }
+            result[side] = new Stmt.MatchSide(sideKeyword[side], count[side], agents.get(side), sideLists,
+                    score[side]);
+        }
+        return new Stmt.Match(keyword, name, result[0], result[1], current, options);
     }
 
     /**
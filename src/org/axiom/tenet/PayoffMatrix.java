@@ -0,0 +1,197 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Payoffs of a two-player normal-form game evaluated into an array, kept
+ * with each player's best payoff against every strategy of the other. A
+ * profile is a pure equilibrium when both players' payoffs match those
+ * bests, as in NashSolver: payoffs that are not numbers never prompt or
+ * tempt a deviation.
+ *
+ * Meant for sweeps. After one full evaluation, re-evaluating a few cells
+ * updates only the bests they feed: a row player's cell changes the best in
+ * its column, a column player's cell the best in its row, and only profiles
+ * in those columns and rows are re-checked.
+ */
+class PayoffMatrix {
+    private final Interpreter interpreter;
+    private final GameValue game;
+    private final int rows; // row player's strategies
+    private final int columns;
+    private final Expr[] cell; // cell[(p * rows + a) * columns + b], null for an undeclared payoff
+    private final double[] payoff; // NaN where a payoff is not a number
+    private final double[] columnBest; // row player's best payoff in each column
+    private final double[] rowBest; // column player's best payoff in each row
+    private final boolean[] equilibrium; // per profile a * columns + b
+    private boolean evaluated;
+    private List<StrategyProfile> found; // null once a profile's status changes
+
+    private Map<String, int[]> cellsByVariable;
+    private int[] opaqueCells;
+
+    PayoffMatrix(GameValue game, Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.game = game;
+        this.rows = game.strategiesFor(0).size();
+        this.columns = game.strategiesFor(1).size();
+        this.cell = new Expr[2 * rows * columns];
+        for (int a = 0; a < rows; a++) {
+            for (int b = 0; b < columns; b++) {
+                StrategyProfile profile = new StrategyProfile(
+                        Arrays.asList(game.strategiesFor(0).get(a), game.strategiesFor(1).get(b)));
+                for (int p = 0; p < 2; p++) {
+                    cell[(p * rows + a) * columns + b] = game.payoffExpr(game.players.get(p), profile);
+                }
+            }
+        }
+        this.payoff = new double[cell.length];
+        this.columnBest = new double[columns];
+        this.rowBest = new double[rows];
+        this.equilibrium = new boolean[rows * columns];
+    }
+
+    /** Only declared two-player games; subclasses compute payoffs another way. */
+    static boolean supports(GameValue game) {
+        return game.getClass() == GameValue.class && game.players.size() == 2;
+    }
+
+    /**
+     * Cells whose payoffs may change with a variable: those that name it,
+     * plus any that call functions or read fields, which could read anything.
+     */
+    int[] cellsReading(String variable) {
+        if (cellsByVariable == null) {
+            Map<String, List<Integer>> byVariable = new HashMap<>();
+            List<Integer> opaque = new ArrayList<>();
+            for (int c = 0; c < cell.length; c++) {
+                if (cell[c] == null)
+                    continue;
+                PayoffReads reads = new PayoffReads();
+                cell[c].accept(reads);
+                for (String name : reads.names) {
+                    byVariable.computeIfAbsent(name, k -> new ArrayList<>()).add(c);
+                }
+                if (reads.opaque)
+                    opaque.add(c);
+            }
+            cellsByVariable = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : byVariable.entrySet()) {
+                cellsByVariable.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+            opaqueCells = opaque.stream().mapToInt(Integer::intValue).toArray();
+        }
+        int[] direct = cellsByVariable.getOrDefault(variable, new int[0]);
+        return IntStream.concat(Arrays.stream(direct), Arrays.stream(opaqueCells))
+                .sorted().distinct().toArray();
+    }
+
+    /**
+     * Pure equilibria after re-evaluating the given cells, in NashSolver's
+     * order. The first call evaluates every cell. While no profile gains or
+     * loses equilibrium status the same list is returned, so callers can
+     * tell an unchanged set by identity.
+     */
+    List<StrategyProfile> resolve(int[] changed) {
+        if (!evaluated) {
+            for (int c = 0; c < cell.length; c++) {
+                evaluate(c);
+            }
+            for (int b = 0; b < columns; b++) {
+                updateColumn(b);
+            }
+            for (int a = 0; a < rows; a++) {
+                updateRow(a);
+            }
+            evaluated = true;
+            return equilibria();
+        }
+        boolean[] dirtyColumn = new boolean[columns];
+        boolean[] dirtyRow = new boolean[rows];
+        for (int c : changed) {
+            evaluate(c);
+            if (c < rows * columns)
+                dirtyColumn[c % columns] = true;
+            else
+                dirtyRow[(c - rows * columns) / columns] = true;
+        }
+        for (int b = 0; b < columns; b++) {
+            if (dirtyColumn[b])
+                updateColumn(b);
+        }
+        for (int a = 0; a < rows; a++) {
+            if (dirtyRow[a])
+                updateRow(a);
+        }
+        return equilibria();
+    }
+
+    private void evaluate(int c) {
+        if (cell[c] == null) {
+            payoff[c] = 0.0; // as GameValue.getPayoff
+            return;
+        }
+        Object value = interpreter.evaluate(cell[c]);
+        payoff[c] = value instanceof Double ? (Double) value : Double.NaN;
+    }
+
+    // Row player's best in column b, then the profiles of that column
+    private void updateColumn(int b) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < rows; a++) {
+            double value = payoff[a * columns + b];
+            if (value > best)
+                best = value;
+        }
+        columnBest[b] = best;
+        for (int a = 0; a < rows; a++) {
+            check(a, b);
+        }
+    }
+
+    // Column player's best in row a, then the profiles of that row
+    private void updateRow(int a) {
+        int offset = rows * columns + a * columns;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int b = 0; b < columns; b++) {
+            double value = payoff[offset + b];
+            if (value > best)
+                best = value;
+        }
+        rowBest[a] = best;
+        for (int b = 0; b < columns; b++) {
+            check(a, b);
+        }
+    }
+
+    private void check(int a, int b) {
+        double row = payoff[a * columns + b];
+        double column = payoff[rows * columns + a * columns + b];
+        // NaN fails every comparison, so a best never comes from it
+        boolean stable = !(row < columnBest[b]) && !(column < rowBest[a]);
+        if (equilibrium[a * columns + b] != stable) {
+            equilibrium[a * columns + b] = stable;
+            found = null;
+        }
+    }
+
+    private List<StrategyProfile> equilibria() {
+        if (found != null)
+            return found;
+        found = new ArrayList<>();
+        for (int a = 0; a < rows; a++) {
+            for (int b = 0; b < columns; b++) {
+                if (equilibrium[a * columns + b]) {
+                    found.add(new StrategyProfile(
+                            Arrays.asList(game.strategiesFor(0).get(a), game.strategiesFor(1).get(b))));
+                }
+            }
+        }
+        return found;
+    }
+}
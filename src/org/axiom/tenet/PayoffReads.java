@@ -0,0 +1,111 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Variable names a payoff expression reads; calls, fields and assignments
+ * make it opaque. Also writes the expression's shape, a canonical text that
+ * two expressions share only if they compute the same thing from the same
+ * variables.
+ */
+class PayoffReads implements Expr.Visitor<Void> {
+    final Set<String> names = new HashSet<>();
+    final List<Expr.Variable> variables = new ArrayList<>(); // the first read of each name
+    final StringBuilder shape = new StringBuilder();
+    boolean opaque;
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        opaque = true;
+        shape.append('?');
+        return expr.value.accept(this);
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        shape.append('(');
+        expr.left.accept(this);
+        shape.append(' ').append(expr.operator.lexeme).append(' ');
+        expr.right.accept(this);
+        shape.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        opaque = true;
+        shape.append('?');
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression.accept(this); // Binary expressions are bracketed already
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof String) {
+            String text = (String) expr.value;
+            shape.append('"').append(text.length()).append(':').append(text);
+        } else {
+            shape.append(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        opaque = true;
+        shape.append('?');
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        shape.append('(');
+        expr.left.accept(this);
+        shape.append(' ').append(expr.operator.lexeme).append(' ');
+        expr.right.accept(this);
+        shape.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        opaque = true;
+        shape.append('?');
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        opaque = true;
+        shape.append('?');
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        opaque = true;
+        shape.append('?');
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        shape.append(expr.operator.lexeme);
+        return expr.right.accept(this);
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (names.add(expr.name.lexeme))
+            variables.add(expr);
+        shape.append('$').append(expr.name.lexeme);
+        return null;
+    }
+}
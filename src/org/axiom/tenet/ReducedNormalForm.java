@@ -0,0 +1,290 @@
+package org.axiom.tenet;
+
+import java.util.*;
+
+/**
+ * Reduced normal form of a sequential game, usable wherever a GameValue is.
+ * A reduced strategy picks a move only at the information sets its own
+ * earlier moves leave reachable, so the strategy count follows the shape of
+ * each player's decisions rather than multiplying over every set.
+ *
+ * Nothing is tabulated: strategies are decoded from their index on demand,
+ * and a payoff is computed by playing the profile through the compiled tree.
+ * Recently used profiles are cached, so memory stays bounded however many
+ * profiles a solver visits. Needs perfect recall.
+ */
+class ReducedNormalForm extends GameValue {
+    private static final int CACHE_SIZE = 4096;
+    private static final int UNSET = -2;
+
+    private final CompiledGameTree tree;
+    private final List<List<Token>> playerStrategies;
+
+    // Sets of a player first reached with no earlier own move, and the sets
+    // first reached right after each slot (set and action) of that player
+    private final List<List<Integer>> rootSets;
+    private final List<List<Integer>> followingSets;
+    private final long[] setCount; // reduced strategies of the subtree below each set
+
+    private final Map<List<Integer>, double[]> cache =
+            new LinkedHashMap<List<Integer>, double[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Integer>, double[]> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private ReducedNormalForm(String name, List<Token> players, CompiledGameTree tree,
+            List<List<Integer>> rootSets, List<List<Integer>> followingSets, long[] setCount, long[] totals) {
+        super(name, players, new ArrayList<>(), new HashMap<>());
+        this.tree = tree;
+        this.rootSets = rootSets;
+        this.followingSets = followingSets;
+        this.setCount = setCount;
+        this.playerStrategies = new ArrayList<>();
+        for (int p = 0; p < players.size(); p++) {
+            playerStrategies.add(new StrategyList(p, (int) totals[p]));
+        }
+    }
+
+    /**
+     * Builds the strategy structure: one pass over the tree to link each
+     * information set to the move of its owner that leads to it.
+     */
+    static ReducedNormalForm of(SequentialGameValue game, CompiledGameTree tree, Token where) {
+        List<List<Integer>> rootSets = new ArrayList<>();
+        for (int p = 0; p < tree.numPlayers; p++) {
+            rootSets.add(new ArrayList<>());
+        }
+        List<List<Integer>> followingSets = new ArrayList<>();
+        for (int slot = 0; slot < tree.slotCount(); slot++) {
+            followingSets.add(new ArrayList<>());
+        }
+        int[] parentSlot = new int[tree.infoSetCount];
+        Arrays.fill(parentSlot, UNSET);
+        int[] lastOwn = new int[tree.numPlayers];
+        Arrays.fill(lastOwn, -1);
+        link(tree, 0, lastOwn, parentSlot, rootSets, followingSets, new HashSet<>(), where);
+
+        long[] setCount = new long[tree.infoSetCount];
+        Arrays.fill(setCount, -1);
+        long[] totals = new long[tree.numPlayers];
+        for (int p = 0; p < tree.numPlayers; p++) {
+            totals[p] = count(tree, rootSets.get(p), followingSets, setCount, where);
+        }
+        return new ReducedNormalForm(game.name, game.players, tree, rootSets, followingSets, setCount, totals);
+    }
+
+    private static void link(CompiledGameTree tree, int node, int[] lastOwn, int[] parentSlot,
+            List<List<Integer>> rootSets, List<List<Integer>> followingSets, Set<List<Integer>> seen, Token where) {
+        // A node is revisited only if some player's history differs (DAGs)
+        List<Integer> key = new ArrayList<>();
+        key.add(node);
+        for (int slot : lastOwn) {
+            key.add(slot);
+        }
+        if (!seen.add(key))
+            return;
+
+        int who = tree.owner[node];
+        int from = tree.firstEdge[node];
+        if (who < 0) {
+            for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                link(tree, tree.edgeTarget[e], lastOwn, parentSlot, rootSets, followingSets, seen, where);
+            }
+            return;
+        }
+
+        int set = tree.infoSet[node];
+        if (parentSlot[set] == UNSET) {
+            parentSlot[set] = lastOwn[who];
+            (lastOwn[who] < 0 ? rootSets.get(who) : followingSets.get(lastOwn[who])).add(set);
+        } else if (parentSlot[set] != lastOwn[who]) {
+            throw new RuntimeError(where, "The normal form needs perfect recall, but " + tree.playerNames[who] +
+                    " can reach '" + tree.infoSetName[set] + "' after different earlier moves of their own.");
+        }
+        for (int a = 0; a < tree.actionCount(node); a++) {
+            int[] next = lastOwn.clone();
+            next[who] = tree.infoSetFirstSlot[set] + a;
+            link(tree, tree.edgeTarget[from + a], next, parentSlot, rootSets, followingSets, seen, where);
+        }
+    }
+
+    private static long count(CompiledGameTree tree, List<Integer> sets, List<List<Integer>> followingSets,
+            long[] setCount, Token where) {
+        long product = 1;
+        for (int set : sets) {
+            if (setCount[set] < 0) {
+                long sum = 0;
+                int node = tree.infoSetNodes[set][0];
+                for (int a = 0; a < tree.actionCount(node); a++) {
+                    sum += count(tree, followingSets.get(tree.infoSetFirstSlot[set] + a), followingSets, setCount,
+                            where);
+                }
+                setCount[set] = sum;
+            }
+            product *= setCount[set];
+            if (product > Integer.MAX_VALUE) {
+                throw new RuntimeError(where, "The normal form has more than " + Integer.MAX_VALUE +
+                        " strategies for one player; use a sequential solver instead.");
+            }
+        }
+        return product;
+    }
+
+    @Override
+    List<Token> strategiesFor(int player) {
+        return playerStrategies.get(player);
+    }
+
+    @Override
+    String getStrategiesString() {
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p < players.size(); p++) {
+            if (p > 0)
+                sb.append("; ");
+            List<Token> strategies = strategiesFor(p);
+            sb.append(players.get(p).lexeme).append(": ");
+            for (int i = 0; i < strategies.size() && i < 8; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(strategies.get(i).lexeme);
+            }
+            if (strategies.size() > 8)
+                sb.append(", ... (").append(strategies.size()).append(" in all)");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    Object getPayoff(Token player, StrategyProfile profile, Interpreter interpreter) {
+        List<Integer> key = new ArrayList<>();
+        for (int p = 0; p < profile.strategies.size(); p++) {
+            key.add(indexOf(p, profile.strategies.get(p)));
+        }
+        double[] payoffs = cache.get(key);
+        if (payoffs == null) {
+            payoffs = play(key);
+            cache.put(key, payoffs);
+        }
+        for (int p = 0; p < players.size(); p++) {
+            if (players.get(p).lexeme.equals(player.lexeme))
+                return payoffs[p];
+        }
+        return 0.0;
+    }
+
+    private int indexOf(int player, Token strategy) {
+        if (strategy.literal instanceof Integer)
+            return (Integer) strategy.literal;
+        List<Token> strategies = strategiesFor(player);
+        for (int i = 0; i < strategies.size(); i++) {
+            if (strategies.get(i).lexeme.equals(strategy.lexeme))
+                return i;
+        }
+        throw new RuntimeError(strategy, "'" + strategy.lexeme + "' is not a strategy of " +
+                players.get(player).lexeme + ".");
+    }
+
+    /**
+     * Expected payoffs of a profile: reach probabilities pushed down the tree
+     * in topological order, following each player's chosen moves.
+     */
+    private double[] play(List<Integer> profile) {
+        int[] choice = new int[tree.infoSetCount];
+        Arrays.fill(choice, -1);
+        for (int p = 0; p < profile.size(); p++) {
+            decode(rootSets.get(p), profile.get(p), choice);
+        }
+
+        double[] reach = new double[tree.nodeCount];
+        double[] payoffs = new double[tree.numPlayers];
+        reach[0] = 1;
+        for (int node : tree.topologicalOrder) {
+            if (reach[node] == 0)
+                continue;
+            int from = tree.firstEdge[node];
+            int who = tree.owner[node];
+            if (who == GameTree.TERMINAL) {
+                for (int p = 0; p < tree.numPlayers; p++) {
+                    payoffs[p] += reach[node] * tree.payoff[node * tree.numPlayers + p];
+                }
+            } else if (who == GameTree.CHANCE) {
+                for (int e = from; e < tree.firstEdge[node + 1]; e++) {
+                    reach[tree.edgeTarget[e]] += reach[node] * tree.edgeProbability[e];
+                }
+            } else {
+                reach[tree.edgeTarget[from + choice[tree.infoSet[node]]]] += reach[node];
+            }
+        }
+        return payoffs;
+    }
+
+    // Mixed radix over the sets of a list, the first set most significant
+    private void decode(List<Integer> sets, long index, int[] choice) {
+        for (int i = sets.size() - 1; i >= 0; i--) {
+            int set = sets.get(i);
+            decodeSet(set, index % setCount[set], choice);
+            index /= setCount[set];
+        }
+    }
+
+    private void decodeSet(int set, long index, int[] choice) {
+        int node = tree.infoSetNodes[set][0];
+        for (int a = 0; a < tree.actionCount(node); a++) {
+            List<Integer> following = followingSets.get(tree.infoSetFirstSlot[set] + a);
+            long below = 1;
+            for (int next : following) {
+                below *= setCount[next];
+            }
+            if (index < below) {
+                choice[set] = a;
+                decode(following, index, choice);
+                return;
+            }
+            index -= below;
+        }
+    }
+
+    /**
+     * Strategy tokens built on request. The index travels in the token's
+     * literal so payoff lookups never search by name.
+     */
+    private class StrategyList extends AbstractList<Token> {
+        private final int player;
+        private final int size;
+
+        StrategyList(int player, int size) {
+            this.player = player;
+            this.size = size;
+        }
+
+        @Override
+        public Token get(int index) {
+            int[] choice = new int[tree.infoSetCount];
+            Arrays.fill(choice, -1);
+            List<Integer> sets = rootSets.get(player);
+            decode(sets, index, choice);
+            StringBuilder name = new StringBuilder();
+            appendMoves(sets, choice, name);
+            if (name.length() == 0)
+                name.append("-"); // a player who never moves
+            return new Token(TokenType.IDENTIFIER, name.toString(), index, 0);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private void appendMoves(List<Integer> sets, int[] choice, StringBuilder name) {
+            for (int set : sets) {
+                int node = tree.infoSetNodes[set][0];
+                if (name.length() > 0)
+                    name.append("/");
+                name.append(tree.action(node, choice[set]));
+                appendMoves(followingSets.get(tree.infoSetFirstSlot[set] + choice[set]), choice, name);
+            }
+        }
+    }
+}
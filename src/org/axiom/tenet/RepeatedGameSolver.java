@@ -0,0 +1,186 @@
+package org.axiom.tenet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Repeated play of a two-player stage game between finite-automaton
+ * strategies. Two deterministic automata playing each other must revisit a
+ * pair of states within (states of one) x (states of the other) rounds, after
+ * which play cycles forever. Each pairing is therefore evaluated from one
+ * prefix and one cycle in closed form, for any horizon, instead of round by
+ * round.
+ */
+class RepeatedGameSolver {
+
+    /**
+     * Automaton compiled against a game's actions: state s plays play[s] and
+     * moves to next[s][b] when the opponent played action b. State 0 starts.
+     */
+    static class Automaton {
+        final String name;
+        final int[] play;
+        final int[][] next;
+
+        Automaton(String name, int[] play, int[][] next) {
+            this.name = name;
+            this.play = play;
+            this.next = next;
+        }
+    }
+
+    private final double[][][] stage; // stage[a][b][player]
+    private final double rounds; // POSITIVE_INFINITY for no last round
+    private final double discount;
+
+    RepeatedGameSolver(double[][][] stage, double rounds, double discount) {
+        this.stage = stage;
+        this.rounds = rounds;
+        this.discount = discount;
+    }
+
+    /**
+     * Average discounted payoff per round of both players, so results are on
+     * the same scale as the stage game.
+     */
+    double[] evaluate(Automaton row, Automaton column) {
+        int columnStates = column.play.length;
+        int[] seenAt = new int[row.play.length * columnStates];
+        Arrays.fill(seenAt, -1);
+        double[][] payoffs = new double[2][seenAt.length];
+
+        // Play until a pair of states repeats
+        int r = 0;
+        int c = 0;
+        int t = 0;
+        while (seenAt[r * columnStates + c] < 0) {
+            seenAt[r * columnStates + c] = t;
+            int a = row.play[r];
+            int b = column.play[c];
+            payoffs[0][t] = stage[a][b][0];
+            payoffs[1][t] = stage[a][b][1];
+            r = row.next[r][b];
+            c = column.next[c][a];
+            t++;
+        }
+        int prefix = seenAt[r * columnStates + c];
+        int cycle = t - prefix;
+
+        return new double[] { average(payoffs[0], prefix, cycle), average(payoffs[1], prefix, cycle) };
+    }
+
+    private double average(double[] u, int prefix, int cycle) {
+        double delta = discount;
+        double cycleValue = discounted(u, prefix, prefix + cycle);
+        if (rounds == Double.POSITIVE_INFINITY) {
+            if (delta == 1) {
+                // Limit of the means: only the cycle matters
+                return cycleValue / cycle;
+            }
+            double total = discounted(u, 0, prefix) + Math.pow(delta, prefix) * cycleValue / (1 - Math.pow(delta, cycle));
+            return (1 - delta) * total;
+        }
+
+        long horizon = (long) rounds;
+        double total;
+        if (horizon <= prefix) {
+            total = discounted(u, 0, (int) horizon);
+        } else {
+            long fullCycles = (horizon - prefix) / cycle;
+            int remainder = (int) ((horizon - prefix) % cycle);
+            total = discounted(u, 0, prefix)
+                    + Math.pow(delta, prefix) * cycleValue * geometric(Math.pow(delta, cycle), fullCycles)
+                    + Math.pow(delta, prefix + (double) fullCycles * cycle) * discounted(u, prefix, prefix + remainder);
+        }
+        return total / geometric(delta, horizon);
+    }
+
+    // Sum of u[from .. to - 1] discounted back to round 'from'
+    private double discounted(double[] u, int from, int to) {
+        double sum = 0;
+        double weight = 1;
+        for (int t = from; t < to; t++) {
+            sum += weight * u[t];
+            weight *= discount;
+        }
+        return sum;
+    }
+
+    // 1 + x + ... + x^(n - 1)
+    private static double geometric(double x, long n) {
+        return x == 1 ? n : (1 - Math.pow(x, n)) / (1 - x);
+    }
+
+    /**
+     * Built-in strategies, or null if the name is not one. The first action
+     * of the game counts as cooperating and the last as punishing.
+     */
+    static Automaton builtIn(String name, List<Token> actions) {
+        int n = actions.size();
+        switch (name) {
+            case "TitForTat": {
+                // One state per action: copy whatever the opponent did last
+                int[] play = new int[n];
+                int[][] next = new int[n][n];
+                for (int s = 0; s < n; s++) {
+                    play[s] = s;
+                    for (int b = 0; b < n; b++) {
+                        next[s][b] = b;
+                    }
+                }
+                return new Automaton(name, play, next);
+            }
+            case "GrimTrigger": {
+                // Cooperate until the opponent does anything else, then punish forever
+                int[][] next = new int[2][n];
+                Arrays.fill(next[0], 1);
+                next[0][0] = 0;
+                Arrays.fill(next[1], 1);
+                return new Automaton(name, new int[] { 0, n - 1 }, next);
+            }
+            default:
+                if (name.startsWith("Always")) {
+                    for (int a = 0; a < n; a++) {
+                        if (name.equals("Always" + actions.get(a).lexeme)) {
+                            return new Automaton(name, new int[] { a }, new int[1][n]);
+                        }
+                    }
+                }
+                return null;
+        }
+    }
+
+    /**
+     * Compiles a declared automaton, checking its actions and state names.
+     */
+    static Automaton compile(AutomatonValue value, List<Token> actions) {
+        List<Stmt.AutomatonState> states = value.declaration.states;
+        int[] play = new int[states.size()];
+        int[][] next = new int[states.size()][actions.size()];
+        for (int s = 0; s < states.size(); s++) {
+            Stmt.AutomatonState state = states.get(s);
+            play[s] = actionIndex(state.action, actions);
+            Arrays.fill(next[s], s);
+            for (int i = 0; i < state.on.size(); i++) {
+                next[s][actionIndex(state.on.get(i), actions)] = stateIndex(state.targets.get(i), states, value);
+            }
+        }
+        return new Automaton(value.name, play, next);
+    }
+
+    private static int actionIndex(Token action, List<Token> actions) {
+        for (int a = 0; a < actions.size(); a++) {
+            if (actions.get(a).lexeme.equals(action.lexeme))
+                return a;
+        }
+        throw new RuntimeError(action, "'" + action.lexeme + "' is not a strategy of this game.");
+    }
+
+    private static int stateIndex(Token target, List<Stmt.AutomatonState> states, AutomatonValue value) {
+        for (int s = 0; s < states.size(); s++) {
+            if (states.get(s).name.lexeme.equals(target.lexeme))
+                return s;
+        }
+        throw new RuntimeError(target, "Automaton '" + value.name + "' has no state '" + target.lexeme + "'.");
+    }
+}
@@ -1,5 +1,6 @@
 package org.axiom.tenet;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -334,8 +335,103 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     // Sequential games: resolve sequential game statement
     @Override
     public Void visitSequentialGameStmt(Stmt.SequentialGame stmt) {
-        // Sequential games are resolved at runtime
-        // Nothing to resolve statically
+        // Node names are resolved at runtime; payoffs and rules are expressions
+        for (Stmt.GameNode node : stmt.nodes) {
+            for (Stmt.GameMove move : node.moves) {
+                if (move.isTerminal()) {
+                    for (Expr payoff : move.payoffs) {
+                        resolve(payoff);
+                    }
+                }
+            }
+        }
+        if (stmt.rules != null) {
+            Stmt.GameRules rules = stmt.rules;
+            for (Expr rule : Arrays.asList(rules.start, rules.actions, rules.next, rules.player,
+                    rules.payoff, rules.info, rules.odds)) {
+                if (rule != null)
+                    resolve(rule);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAutomatonStmt(Stmt.Automaton stmt) {
+        declare(stmt.name);
+        define(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitRepeatedStmt(Stmt.Repeated stmt) {
+        // Game and strategies are looked up at runtime
+        return null;
+    }
+
+    @Override
+    public Void visitTournamentStmt(Stmt.Tournament stmt) {
+        // Game and strategies are looked up at runtime
+        return null;
+    }
+
+    @Override
+    public Void visitStochasticStmt(Stmt.Stochastic stmt) {
+        // Stage games are looked up at runtime
+        declare(stmt.name);
+        define(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBayesianGameStmt(Stmt.BayesianGame stmt) {
+        declare(stmt.name);
+        define(stmt.name);
+        for (Stmt.BayesianPayoff payoff : stmt.payoffs) {
+            resolve(payoff.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCoalitionGameStmt(Stmt.CoalitionGame stmt) {
+        declare(stmt.name);
+        define(stmt.name);
+        if (stmt.worth != null)
+            resolve(stmt.worth);
+        for (Expr value : stmt.values) {
+            resolve(value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitMatchStmt(Stmt.Match stmt) {
+        for (Stmt.MatchSide side : new Stmt.MatchSide[] { stmt.proposers, stmt.receivers }) {
+            if (side.score != null)
+                resolve(side.score);
+        }
+        if (stmt.current != null)
+            resolve(stmt.current);
+        return null;
+    }
+
+    // The objective is not resolved: it runs on isolated copies of the
+    // globals, where the parameters and the players' payoffs are defined
+    @Override
+    public Void visitOptimizeStmt(Stmt.Optimize stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitSensitivityStmt(Stmt.Sensitivity stmt) {
+        // Nothing to resolve - game name is looked up at runtime
+        return null;
+    }
+
+    @Override
+    public Void visitAuctionStmt(Stmt.Auction stmt) {
+        // Nothing to resolve - the bid function is looked up at runtime
         return null;
     }
 
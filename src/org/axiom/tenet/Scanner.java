@@ -50,6 +50,32 @@ class Scanner {
         keywords.put("sequential", SEQUENTIAL);
         keywords.put("node", NODE);
         keywords.put("move", MOVE);
+
+        // Repeated game keywords
+        keywords.put("repeated", REPEATED);
+        keywords.put("automaton", AUTOMATON);
+        keywords.put("tournament", TOURNAMENT);
+
+        // Stochastic game keywords
+        keywords.put("stochastic", STOCHASTIC);
+
+        // Bayesian game keywords
+        keywords.put("bayesian", BAYESIAN);
+
+        // Cooperative game keywords
+        keywords.put("coalition", COALITION);
+
+        // Matching market keywords
+        keywords.put("match", MATCH);
+
+        // Mechanism optimizer keywords
+        keywords.put("optimize", OPTIMIZE);
+
+        // Sensitivity analysis keywords
+        keywords.put("sensitivity", SENSITIVITY);
+
+        // Auction simulation keywords
+        keywords.put("auction", AUCTION);
     }
 
     private final String source;
@@ -87,6 +113,12 @@ class Scanner {
             case '}':
                 addToken(RIGHT_BRACE);
                 break;
+            case '[':
+                addToken(LEFT_BRACKET);
+                break;
+            case ']':
+                addToken(RIGHT_BRACKET);
+                break;
             case ',':
                 addToken(COMMA);
                 break;
@@ -113,6 +145,12 @@ class Scanner {
             case ':':
                 addToken(COLON);
                 break;
+            case '|':
+                addToken(PIPE);
+                break;
+            case '~':
+                addToken(TILDE);
+                break;
 
             case '!':
                 addToken(match('=') ? BANG_EQUAL : BANG);
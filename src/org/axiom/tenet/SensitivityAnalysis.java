@@ -0,0 +1,168 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Equilibria of a game whose parameters are random, and how much of their
+ * variation each parameter explains.
+ *
+ * Sampling follows Saltelli: two independent sample matrices A and B, and
+ * for each parameter i a matrix A_B(i), which is A with column i taken from
+ * B, so N base samples take N(d + 2) solves. Each outcome (a profile being an
+ * equilibrium, or there being none) is a 0/1 output, whose first-order index
+ * is estimated as in Saltelli (2010) and total index as in Jansen (1999).
+ *
+ * Base samples are drawn and solved in fixed blocks, each from its own
+ * generator split off the seed in block order, so results do not depend on
+ * the thread count.
+ */
+class SensitivityAnalysis {
+    private static final int BLOCK = 64; // base samples per worker task
+    static final double Z95 = 1.959963984540054;
+
+    /** Equilibria at a point; not thread-safe. */
+    interface Model {
+        List<StrategyProfile> at(double[] x);
+    }
+
+    static class Result {
+        final List<StrategyProfile> outcomes; // profiles that are ever equilibria; null for none at all
+        final long[] count; // samples of A and B where each outcome occurs
+        final long draws; // samples of A and B
+        final double[][] firstOrder; // [outcome][parameter], NaN when the outcome never varies
+        final double[][] total;
+        final long solves;
+
+        Result(List<StrategyProfile> outcomes, long[] count, long draws, double[][] firstOrder, double[][] total,
+                long solves) {
+            this.outcomes = outcomes;
+            this.count = count;
+            this.draws = draws;
+            this.firstOrder = firstOrder;
+            this.total = total;
+            this.solves = solves;
+        }
+
+        /** Wilson score interval for how often an outcome occurs, at 95%. */
+        double[] interval(int outcome) {
+            double n = draws;
+            double p = count[outcome] / n;
+            double centre = (p + Z95 * Z95 / (2 * n)) / (1 + Z95 * Z95 / n);
+            double half = Z95 / (1 + Z95 * Z95 / n) * Math.sqrt(p * (1 - p) / n + Z95 * Z95 / (4 * n * n));
+            return new double[] { Math.max(0, centre - half), Math.min(1, centre + half) };
+        }
+    }
+
+    static Result analyze(List<Stmt.Draw> draws, Supplier<Model> workers, int samples, long seed, int threads) {
+        int d = draws.size();
+        int stride = d + 2; // A, then each A_B(i), then B
+        if ((long) samples * stride > TweakGrid.POINT_LIMIT) {
+            throw new RuntimeError(draws.get(0).variable,
+                    "A sensitivity analysis can solve at most " + TweakGrid.POINT_LIMIT + " points.");
+        }
+        int[] setId = new int[samples * stride];
+        List<TweakGrid.Sets> chunks = new ArrayList<>();
+        List<Runnable> blocks = new ArrayList<>();
+        SplittableRandom root = new SplittableRandom(seed);
+        ThreadLocal<Model> local = ThreadLocal.withInitial(workers);
+        for (int start = 0; start < samples; start += BLOCK) {
+            int from = start;
+            int to = Math.min(samples, start + BLOCK);
+            SplittableRandom random = root.split();
+            TweakGrid.Sets sets = new TweakGrid.Sets();
+            chunks.add(sets);
+            blocks.add(() -> {
+                Model model = local.get();
+                double[] a = new double[d];
+                double[] b = new double[d];
+                for (int k = from; k < to; k++) {
+                    draw(draws, random, a);
+                    draw(draws, random, b);
+                    setId[k * stride] = sets.intern(model.at(a));
+                    for (int i = 0; i < d; i++) {
+                        double[] x = a.clone();
+                        x[i] = b[i];
+                        setId[k * stride + 1 + i] = sets.intern(model.at(x));
+                    }
+                    setId[k * stride + d + 1] = sets.intern(model.at(b));
+                }
+            });
+        }
+        ParallelBlocks.run(blocks, threads);
+
+        // Block tables into one, in block order
+        TweakGrid.Sets sets = new TweakGrid.Sets();
+        for (int c = 0; c < chunks.size(); c++) {
+            sets.merge(setId, c * BLOCK * stride, Math.min(samples, (c + 1) * BLOCK) * stride, chunks.get(c));
+        }
+
+        // Outcomes in order of first appearance, with "no equilibrium" last
+        List<StrategyProfile> outcomes = new ArrayList<>();
+        Map<String, Integer> outcomeIds = new HashMap<>();
+        boolean none = false;
+        for (List<StrategyProfile> set : sets.list) {
+            none |= set.isEmpty();
+            for (StrategyProfile profile : set) {
+                outcomeIds.computeIfAbsent(TweakGrid.Sets.key(List.of(profile)), k -> {
+                    outcomes.add(profile);
+                    return outcomes.size() - 1;
+                });
+            }
+        }
+        if (none)
+            outcomes.add(null);
+        boolean[][] occurs = new boolean[sets.list.size()][outcomes.size()];
+        for (int id = 0; id < occurs.length; id++) {
+            List<StrategyProfile> set = sets.list.get(id);
+            if (set.isEmpty())
+                occurs[id][outcomes.size() - 1] = true;
+            for (StrategyProfile profile : set) {
+                occurs[id][outcomeIds.get(TweakGrid.Sets.key(List.of(profile)))] = true;
+            }
+        }
+
+        long[] count = new long[outcomes.size()];
+        double[][] firstOrder = new double[outcomes.size()][d];
+        double[][] total = new double[outcomes.size()][d];
+        for (int o = 0; o < outcomes.size(); o++) {
+            double[] first = new double[d];
+            double[] spread = new double[d];
+            for (int k = 0; k < samples; k++) {
+                int fa = occurs[setId[k * stride]][o] ? 1 : 0;
+                int fb = occurs[setId[k * stride + d + 1]][o] ? 1 : 0;
+                count[o] += fa + fb;
+                for (int i = 0; i < d; i++) {
+                    int fab = occurs[setId[k * stride + 1 + i]][o] ? 1 : 0;
+                    first[i] += fb * (fab - fa);
+                    spread[i] += (fa - fab) * (fa - fab);
+                }
+            }
+            double p = count[o] / (2.0 * samples);
+            double variance = p * (1 - p);
+            for (int i = 0; i < d; i++) {
+                firstOrder[o][i] = variance > 0 ? first[i] / samples / variance : Double.NaN;
+                total[o][i] = variance > 0 ? spread[i] / (2.0 * samples) / variance : Double.NaN;
+            }
+        }
+        return new Result(outcomes, count, 2L * samples, firstOrder, total, (long) samples * stride);
+    }
+
+    // One value of each parameter, in order
+    private static void draw(List<Stmt.Draw> draws, SplittableRandom random, double[] x) {
+        for (int i = 0; i < x.length; i++) {
+            Stmt.Draw draw = draws.get(i);
+            double first = draw.arguments[0];
+            double second = draw.arguments[1];
+            if (draw.distribution.lexeme.equals("normal")) {
+                x[i] = first + second * Gaussian.next(random);
+            } else {
+                x[i] = first + (second - first) * random.nextDouble();
+            }
+        }
+    }
+}
@@ -11,8 +11,14 @@ class SequentialGameValue {
     final List<Token> players;
     final Map<String, Stmt.GameNode> nodes; // name -> node
     final String rootNodeName; // First node is the root
+    final LazyGameTree rules; // null unless the game is generated by rules
+    final GameIndex index; // null for procedural games
 
     SequentialGameValue(Stmt.SequentialGame stmt) {
+        this(stmt, null);
+    }
+
+    SequentialGameValue(Stmt.SequentialGame stmt, LazyGameTree rules) {
         this.name = stmt.name.lexeme;
         this.players = stmt.players;
         this.nodes = new LinkedHashMap<>();
@@ -24,6 +30,61 @@ class SequentialGameValue {
 
         // First node is the root
         this.rootNodeName = stmt.nodes.isEmpty() ? null : stmt.nodes.get(0).name.lexeme;
+        this.rules = rules;
+        this.index = stmt.index;
+    }
+
+    boolean isProcedural() {
+        return rules != null;
+    }
+
+    boolean hasInformationSets() {
+        if (rules != null)
+            return rules.hasInformationSets();
+        for (Stmt.GameNode node : nodes.values()) {
+            if (node.infoSet != null)
+                return true;
+        }
+        return false;
+    }
+
+    private CompiledGameTree compiled;
+
+    /**
+     * Array form of the tree, compiled on first use and then reused by every
+     * solver run on this game. Procedural games are fully expanded first,
+     * and generated again once a global their rules read has changed.
+     * Payoff expressions are re-evaluated on every call, since the variables
+     * they read may have changed since the last solve.
+     */
+    CompiledGameTree compile(Interpreter interpreter, Token where) {
+        refresh();
+        if (compiled == null) {
+            compiled = rules != null
+                    ? CompiledGameTree.compile(rules, players, where)
+                    : CompiledGameTree.compile(this, where);
+        }
+        compiled.evaluatePayoffs(interpreter);
+        return compiled;
+    }
+
+    /**
+     * Node-by-node view for solvers that only visit part of the tree.
+     * Procedural games stay lazy: only visited states are generated.
+     */
+    GameTree tree(Interpreter interpreter, Token where) {
+        if (rules == null)
+            return compile(interpreter, where);
+        refresh();
+        return rules;
+    }
+
+    // Drops generated states the rules would no longer produce
+    private void refresh() {
+        if (rules != null && rules.stale()) {
+            rules.reset();
+            compiled = null;
+        }
     }
 
     @Override
@@ -0,0 +1,153 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Shapley values of a cooperative game.
+ *
+ * Up to EXACT_LIMIT players the values are exact: the worth of all 2^n
+ * coalitions is tabulated in an array indexed by bitmask, and each player's
+ * value is the weighted sum of their marginal contributions over the
+ * coalitions without them. Coalitions are split into fixed blocks, so the
+ * sum comes out the same on any number of threads.
+ *
+ * Beyond that, values are estimated from random orderings of the players:
+ * a player's marginal contribution to those before them in a uniformly
+ * random order has the Shapley value as its mean. Orderings are drawn in a
+ * fixed number of independently seeded batches spread over the threads, and
+ * each estimate comes with a 95% confidence interval.
+ */
+class ShapleySolver {
+    static final int EXACT_LIMIT = 25;
+    private static final int BLOCK = 1 << 14; // coalitions per exact block
+    private static final int BATCHES = 64;
+
+    static class Estimate {
+        final double[] mean;
+        final double[] halfWidth; // of the 95% confidence interval
+        final long samples;
+
+        Estimate(double[] mean, double[] halfWidth, long samples) {
+            this.mean = mean;
+            this.halfWidth = halfWidth;
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * Exact values from the worth of every coalition, worth[mask].
+     */
+    static double[] exact(double[] worth, int n, int threads) {
+        // weight[s] = s! (n - s - 1)! / n!, the chance that exactly a given
+        // s-player coalition precedes a player (the grand coalition has none)
+        double[] weight = new double[n + 1];
+        weight[0] = 1.0 / n;
+        for (int s = 0; s + 1 < n; s++) {
+            weight[s + 1] = weight[s] * (s + 1) / (n - s - 1);
+        }
+        // Each block sums into its own array; the blocks are added in order
+        double[][] partial = new double[(worth.length + BLOCK - 1) / BLOCK][n];
+        List<Runnable> blocks = new ArrayList<>();
+        for (int b = 0; b < partial.length; b++) {
+            double[] value = partial[b];
+            int from = b * BLOCK;
+            int to = Math.min(worth.length, from + BLOCK);
+            blocks.add(() -> {
+                for (int coalition = from; coalition < to; coalition++) {
+                    double w = weight[Integer.bitCount(coalition)];
+                    for (int p = 0; p < n; p++) {
+                        int bit = 1 << p;
+                        if ((coalition & bit) == 0)
+                            value[p] += w * (worth[coalition | bit] - worth[coalition]);
+                    }
+                }
+            });
+        }
+        ParallelBlocks.run(blocks, threads);
+        double[] value = new double[n];
+        for (double[] block : partial) {
+            for (int p = 0; p < n; p++) {
+                value[p] += block[p];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Estimates from the given number of random orderings. Each worker gets
+     * its own Worth from the supplier; the result depends only on the seed.
+     */
+    static Estimate sample(int n, Supplier<CoalitionGameValue.Worth> workers, long samples, long seed,
+            int threads) {
+        ThreadLocal<CoalitionGameValue.Worth> worth = ThreadLocal.withInitial(workers);
+        long[] count = new long[BATCHES];
+        double[][] mean = new double[BATCHES][];
+        double[][] squares = new double[BATCHES][]; // sum of squared deviations
+        Runnable[] batches = new Runnable[BATCHES];
+        for (int b = 0; b < BATCHES; b++) {
+            int batch = b;
+            count[b] = samples / BATCHES + (b < samples % BATCHES ? 1 : 0);
+            batches[b] = () -> {
+                CoalitionGameValue.Worth of = worth.get();
+                Random random = new Random(seed * 1_000_003L + batch);
+                double[] m = new double[n];
+                double[] s = new double[n];
+                int[] order = new int[n];
+                for (int i = 0; i < n; i++) {
+                    order[i] = i;
+                }
+                double empty = of.of(0);
+                for (long k = 1; k <= count[batch]; k++) {
+                    for (int i = n - 1; i > 0; i--) {
+                        int j = random.nextInt(i + 1);
+                        int swap = order[i];
+                        order[i] = order[j];
+                        order[j] = swap;
+                    }
+                    long coalition = 0;
+                    double before = empty;
+                    for (int i = 0; i < n; i++) {
+                        int p = order[i];
+                        coalition |= 1L << p;
+                        double after = of.of(coalition);
+                        double marginal = after - before;
+                        before = after;
+                        // Welford's running mean and squared deviations
+                        double delta = marginal - m[p];
+                        m[p] += delta / k;
+                        s[p] += delta * (marginal - m[p]);
+                    }
+                }
+                mean[batch] = m;
+                squares[batch] = s;
+            };
+        }
+
+        ParallelBlocks.run(Arrays.asList(batches), threads);
+
+        // Merge batches in order (Chan et al.'s pairwise update)
+        double[] totalMean = new double[n];
+        double[] totalSquares = new double[n];
+        double total = 0;
+        for (int b = 0; b < BATCHES; b++) {
+            double size = count[b];
+            if (size == 0)
+                continue;
+            for (int p = 0; p < n; p++) {
+                double delta = mean[b][p] - totalMean[p];
+                totalMean[p] += delta * size / (total + size);
+                totalSquares[p] += squares[b][p] + delta * delta * total * size / (total + size);
+            }
+            total += size;
+        }
+        double[] halfWidth = new double[n];
+        for (int p = 0; p < n; p++) {
+            halfWidth[p] = total > 1 ? 1.96 * Math.sqrt(totalSquares[p] / (total - 1) / total) : Double.NaN;
+        }
+        return new Estimate(totalMean, halfWidth, samples);
+    }
+}
@@ -0,0 +1,130 @@
+package org.axiom.tenet;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Deep copy of an interpreter's global state, so a copy can run on another
+ * thread without seeing or disturbing the original. Scopes, functions,
+ * classes and instances are copied once each, keeping sharing and cycles
+ * intact; numbers, strings, natives and declared games are immutable and
+ * shared.
+ */
+class Snapshot {
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+
+    /**
+     * Copies the globals of the source into a fresh interpreter, along with
+     * its resolved variable depths.
+     */
+    static Interpreter isolate(Interpreter source) {
+        return isolate(source, null).interpreter;
+    }
+
+    /** A value of the source carried into an isolated copy, with the copy to use it on. */
+    static class Isolated<T> {
+        final Interpreter interpreter;
+        final T value;
+        private final Snapshot snapshot;
+
+        private Isolated(Interpreter interpreter, T value, Snapshot snapshot) {
+            this.interpreter = interpreter;
+            this.value = value;
+            this.snapshot = snapshot;
+        }
+
+        /** The counterpart of another value of the source, sharing what the first one shares. */
+        @SuppressWarnings("unchecked")
+        <U> U counterpart(U other) {
+            return (U) snapshot.copy(other);
+        }
+    }
+
+    /**
+     * Isolates the source as above, along with the counterpart of one of its
+     * values, such as a function to run on the copy.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Isolated<T> isolate(Interpreter source, T value) {
+        Interpreter copy = new Interpreter();
+        copy.copyLocals(source);
+        Snapshot snapshot = restore(source, copy);
+        return new Isolated<>(copy, (T) snapshot.copy(value), snapshot);
+    }
+
+    /**
+     * Resets the globals of an isolated copy to those of the source, undoing
+     * whatever the copy has run since. The returned snapshot maps any other
+     * value of the source to its counterpart in the copy.
+     */
+    static Snapshot restore(Interpreter source, Interpreter copy) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.copies.put(source.globals, copy.globals);
+        for (Map.Entry<String, Object> entry : source.globals.values().entrySet()) {
+            copy.globals.define(entry.getKey(), snapshot.copy(entry.getValue()));
+        }
+        return snapshot;
+    }
+
+    // Counterpart of a source value; copied on first request
+    Object copy(Object value) {
+        if (value instanceof Environment)
+            return copyEnvironment((Environment) value);
+        if (value instanceof TenetFunction) {
+            TenetFunction function = (TenetFunction) value;
+            Object done = copies.get(function);
+            if (done == null) {
+                done = function.withClosure(copyEnvironment(function.closure()));
+                copies.put(function, done);
+            }
+            return done;
+        }
+        if (value instanceof TenetClass)
+            return copyClass((TenetClass) value);
+        if (value instanceof TenetInstance)
+            return copyInstance((TenetInstance) value);
+        return value;
+    }
+
+    private Environment copyEnvironment(Environment environment) {
+        if (environment == null)
+            return null;
+        Environment done = (Environment) copies.get(environment);
+        if (done != null)
+            return done;
+        done = new Environment(copyEnvironment(environment.enclosing));
+        copies.put(environment, done);
+        for (Map.Entry<String, Object> entry : environment.values().entrySet()) {
+            done.define(entry.getKey(), copy(entry.getValue()));
+        }
+        return done;
+    }
+
+    private TenetClass copyClass(TenetClass klass) {
+        if (klass == null)
+            return null;
+        TenetClass done = (TenetClass) copies.get(klass);
+        if (done != null)
+            return done;
+        Map<String, TenetFunction> methods = new HashMap<>();
+        done = new TenetClass(klass.name, copyClass(klass.superclass), methods);
+        copies.put(klass, done);
+        for (Map.Entry<String, TenetFunction> entry : klass.methods().entrySet()) {
+            methods.put(entry.getKey(), (TenetFunction) copy(entry.getValue()));
+        }
+        return done;
+    }
+
+    private TenetInstance copyInstance(TenetInstance instance) {
+        TenetInstance done = (TenetInstance) copies.get(instance);
+        if (done != null)
+            return done;
+        done = new TenetInstance(copyClass(instance.klass()));
+        copies.put(instance, done);
+        for (Map.Entry<String, Object> field : instance.fields().entrySet()) {
+            done.set(field.getKey(), copy(field.getValue()));
+        }
+        return done;
+    }
+}
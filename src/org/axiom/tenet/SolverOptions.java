@@ -0,0 +1,91 @@
+package org.axiom.tenet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed access to the option block of a solver statement, e.g.
+ * solve Poker using cfr { iterations 10000 threads 4 }
+ * Unknown option names and malformed values are reported as runtime errors
+ * pointing at the offending token.
+ */
+class SolverOptions {
+    private final String owner;
+    private final Map<String, Token> names = new HashMap<>();
+    private final Map<String, Token> values = new HashMap<>();
+
+    SolverOptions(String owner, Map<Token, Token> options, String... known) {
+        this.owner = owner;
+        List<String> allowed = Arrays.asList(known);
+        for (Map.Entry<Token, Token> entry : options.entrySet()) {
+            Token name = entry.getKey();
+            if (!allowed.contains(name.lexeme)) {
+                throw new RuntimeError(name, "Unknown option '" + name.lexeme + "' for " + owner +
+                        ". Expected one of: " + String.join(", ", known) + ".");
+            }
+            names.put(name.lexeme, name);
+            values.put(name.lexeme, entry.getValue());
+        }
+    }
+
+    boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    double number(String name, double fallback) {
+        Token value = values.get(name);
+        if (value == null)
+            return fallback;
+        if (value.type != TokenType.NUMBER) {
+            throw new RuntimeError(value, "Option '" + name + "' for " + owner + " must be a number.");
+        }
+        return (double) value.literal;
+    }
+
+    /**
+     * Reads a whole number that must be at least 1 (iterations, threads, ...).
+     */
+    int count(String name, int fallback) {
+        double value = number(name, fallback);
+        if (value < 1 || value != Math.floor(value) || value > Integer.MAX_VALUE) {
+            throw new RuntimeError(values.get(name),
+                    "Option '" + name + "' for " + owner + " must be a positive whole number.");
+        }
+        return (int) value;
+    }
+
+    String word(String name, String fallback, String... allowed) {
+        Token value = values.get(name);
+        if (value == null)
+            return fallback;
+        String text = value.type == TokenType.STRING ? (String) value.literal : value.lexeme;
+        if (allowed.length > 0 && !Arrays.asList(allowed).contains(text)) {
+            throw new RuntimeError(value, "Option '" + name + "' for " + owner +
+                    " must be one of: " + String.join(", ", allowed) + ".");
+        }
+        return text;
+    }
+
+    /**
+     * Reads an option that must be a string literal, such as a file path.
+     */
+    String string(String name, String fallback) {
+        Token value = values.get(name);
+        if (value == null)
+            return fallback;
+        if (value.type != TokenType.STRING) {
+            throw new RuntimeError(value, "Option '" + name + "' for " + owner + " must be a string.");
+        }
+        return (String) value.literal;
+    }
+
+    /**
+     * Token to blame when an otherwise well-formed option is rejected.
+     */
+    Token token(String name) {
+        Token value = values.get(name);
+        return value != null ? value : names.get(name);
+    }
+}
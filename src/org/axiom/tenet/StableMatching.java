@@ -0,0 +1,288 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Deferred acceptance (Gale-Shapley) on a two-sided market.
+ *
+ * Preferences live in one int[][] per side, each row holding either the
+ * agent's list of acceptable partners, best first, or its rank of every
+ * partner (UNRANKED if unacceptable). Proposers walk their lists while
+ * receivers compare offers by rank, so a run is O(total list length). The
+ * receiver-optimal matching swaps the roles; complete rows convert between
+ * the two forms in place, so a market of n by m agents holds about 8nm
+ * bytes of preferences at any time.
+ */
+class StableMatching {
+    static final int NONE = -1;
+    private static final int UNRANKED = Integer.MAX_VALUE;
+    private static final int ROWS_PER_TASK = 64;
+
+    /** Scores of the other side's agents; higher is preferred. Not thread-safe. */
+    interface Scores {
+        double of(int self, int other);
+    }
+
+    final int proposers;
+    final int receivers;
+    private final int[][] proposer;
+    private final int[][] receiver;
+    private boolean proposerRanks; // rows hold ranks rather than lists
+    private boolean receiverRanks;
+    private final int threads;
+
+    long proposals; // offers made by the last run
+
+    StableMatching(int[][] proposerLists, int[][] receiverLists, int threads) {
+        this.proposers = proposerLists.length;
+        this.receivers = receiverLists.length;
+        this.proposer = proposerLists;
+        this.receiver = receiverLists;
+        this.threads = threads;
+    }
+
+    /** Partner of each proposer (or NONE) when proposers propose. */
+    int[] proposerOptimal() {
+        useLists(true);
+        useRanks(false);
+        return invert(defer(proposer, receiver, receivers), proposers);
+    }
+
+    /** Partner of each proposer (or NONE) when receivers propose. */
+    int[] receiverOptimal() {
+        useLists(false);
+        useRanks(true);
+        return defer(receiver, proposer, proposers);
+    }
+
+    /**
+     * Pairs who both prefer each other to their partners in the given
+     * matching (proposer to receiver), as {proposer, receiver}, in proposer
+     * order. Stops after 'limit' pairs; 'count' receives the full number.
+     */
+    List<int[]> blockingPairs(int[] partner, int limit, long[] count) {
+        useLists(true);
+        useRanks(false);
+        int[] receiverPartner = invert(partner, receivers);
+        List<int[]> pairs = new ArrayList<>();
+        count[0] = 0;
+        for (int i = 0; i < proposers; i++) {
+            for (int j : proposer[i]) {
+                if (j == partner[i])
+                    break;
+                int held = receiverPartner[j];
+                int rank = receiver[j][i];
+                if (rank != UNRANKED && (held == NONE || rank < receiver[j][held])) {
+                    if (pairs.size() < limit)
+                        pairs.add(new int[] { i, j });
+                    count[0]++;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /** Rank (0 = first choice) a proposer gives its partner, or -1 if unmatched. */
+    int proposerRank(int i, int j) {
+        return rank(proposer[i], proposerRanks, j);
+    }
+
+    int receiverRank(int j, int i) {
+        return rank(receiver[j], receiverRanks, i);
+    }
+
+    private static int rank(int[] row, boolean ranks, int other) {
+        if (other == NONE)
+            return -1;
+        if (ranks)
+            return row[other];
+        for (int k = 0; k < row.length; k++) {
+            if (row[k] == other)
+                return k;
+        }
+        return -1;
+    }
+
+    // Runs deferred acceptance; returns the partner of each responder
+    private int[] defer(int[][] lists, int[][] ranks, int responders) {
+        int n = lists.length;
+        int[] next = new int[n];
+        int[] holder = new int[responders];
+        Arrays.fill(holder, NONE);
+        proposals = 0;
+        for (int start = 0; start < n; start++) {
+            // A displaced agent proposes on at once; order does not change the outcome
+            int i = start;
+            while (i != NONE && next[i] < lists[i].length) {
+                int j = lists[i][next[i]++];
+                proposals++;
+                int rank = ranks[j][i];
+                if (rank == UNRANKED)
+                    continue;
+                int held = holder[j];
+                if (held == NONE) {
+                    holder[j] = i;
+                    i = NONE;
+                } else if (rank < ranks[j][held]) {
+                    holder[j] = i;
+                    i = held;
+                }
+            }
+        }
+        return holder;
+    }
+
+    // Maps a matching from one side's view to the other's
+    private static int[] invert(int[] partner, int others) {
+        int[] inverse = new int[others];
+        Arrays.fill(inverse, NONE);
+        for (int i = 0; i < partner.length; i++) {
+            if (partner[i] != NONE)
+                inverse[partner[i]] = i;
+        }
+        return inverse;
+    }
+
+    private void useLists(boolean proposerSide) {
+        if (proposerSide && proposerRanks) {
+            convert(proposer, receivers, false);
+            proposerRanks = false;
+        } else if (!proposerSide && receiverRanks) {
+            convert(receiver, proposers, false);
+            receiverRanks = false;
+        }
+    }
+
+    private void useRanks(boolean proposerSide) {
+        if (proposerSide && !proposerRanks) {
+            convert(proposer, receivers, true);
+            proposerRanks = true;
+        } else if (!proposerSide && !receiverRanks) {
+            convert(receiver, proposers, true);
+            receiverRanks = true;
+        }
+    }
+
+    // Turns every row into ranks or back into lists; complete rows are reused
+    private void convert(int[][] rows, int others, boolean toRanks) {
+        ParallelBlocks.forRanges(rows.length, ROWS_PER_TASK, threads, (from, to) -> {
+            int[] scratch = new int[others];
+            for (int r = from; r < to; r++) {
+                int[] row = rows[r];
+                if (toRanks) {
+                    int[] ranks = row.length == others ? row : new int[others];
+                    System.arraycopy(row, 0, scratch, 0, row.length);
+                    Arrays.fill(ranks, UNRANKED);
+                    for (int k = 0; k < row.length; k++) {
+                        ranks[scratch[k]] = k;
+                    }
+                    rows[r] = ranks;
+                } else {
+                    int listed = 0;
+                    for (int rank : row) {
+                        if (rank != UNRANKED)
+                            listed++;
+                    }
+                    System.arraycopy(row, 0, scratch, 0, others);
+                    int[] list = listed == others ? row : new int[listed];
+                    for (int other = 0; other < others; other++) {
+                        if (scratch[other] != UNRANKED)
+                            list[scratch[other]] = other;
+                    }
+                    rows[r] = list;
+                }
+            }
+        });
+    }
+
+    /**
+     * Complete preference lists from scores: each agent ranks all 'others'
+     * by score plus normal noise of the given standard deviation, ties going
+     * to the lower index. Each agent's noise comes from its own generator, seeded from
+     * the seed, the side and the agent, so lists do not depend on the thread
+     * count.
+     */
+    static int[][] listsFromScores(int agents, int others, Supplier<Scores> workers, double noise, long seed,
+            int side, int threads) {
+        int[][] lists = new int[agents][];
+        ThreadLocal<Scores> local = ThreadLocal.withInitial(workers);
+        ParallelBlocks.forRanges(agents, ROWS_PER_TASK, threads, (from, to) -> {
+            Scores scores = local.get();
+            long[] keys = new long[others];
+            long[] keyBuffer = new long[others];
+            int[] indexBuffer = new int[others];
+            double[] normal = new double[others];
+            for (int i = from; i < to; i++) {
+                if (noise > 0)
+                    Gaussian.fill(new SplittableRandom(mix(seed * 0x9E3779B97F4A7C15L + ((long) side << 32 | i))),
+                            normal);
+                for (int j = 0; j < others; j++) {
+                    double score = scores.of(i, j) + noise * normal[j];
+                    // Negated so an ascending sort puts the best first; + 0.0 folds -0.0 into 0.0
+                    long bits = Double.doubleToLongBits(-score + 0.0);
+                    keys[j] = bits ^ ((bits >> 63) | Long.MIN_VALUE); // unsigned order = numeric order
+                }
+                int[] list = new int[others];
+                for (int j = 0; j < others; j++) {
+                    list[j] = j;
+                }
+                radixSort(keys, list, keyBuffer, indexBuffer);
+                lists[i] = list;
+            }
+        });
+        return lists;
+    }
+
+    /**
+     * Stable LSD radix sort of index by unsigned key, 11 bits a pass; passes
+     * where every key has the same digit are skipped. Stability keeps ties in
+     * index order.
+     */
+    private static void radixSort(long[] key, int[] index, long[] keyBuffer, int[] indexBuffer) {
+        int n = key.length;
+        int[] count = new int[1 << 11];
+        long[] fromKey = key;
+        int[] fromIndex = index;
+        long[] toKey = keyBuffer;
+        int[] toIndex = indexBuffer;
+        for (int shift = 0; shift < 64; shift += 11) {
+            Arrays.fill(count, 0);
+            for (int k = 0; k < n; k++) {
+                count[(int) (fromKey[k] >>> shift) & 2047]++;
+            }
+            if (n == 0 || count[(int) (fromKey[0] >>> shift) & 2047] == n)
+                continue;
+            int sum = 0;
+            for (int d = 0; d < count.length; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (int k = 0; k < n; k++) {
+                int at = count[(int) (fromKey[k] >>> shift) & 2047]++;
+                toKey[at] = fromKey[k];
+                toIndex[at] = fromIndex[k];
+            }
+            long[] swapKey = fromKey;
+            fromKey = toKey;
+            toKey = swapKey;
+            int[] swapIndex = fromIndex;
+            fromIndex = toIndex;
+            toIndex = swapIndex;
+        }
+        if (fromIndex != index)
+            System.arraycopy(fromIndex, 0, index, 0, n);
+    }
+
+    // SplitMix64 finalizer, to spread related seeds apart
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -33,6 +33,26 @@ abstract class Stmt {
         R visitVisualizeStmt(Visualize stmt);
 
         R visitWhileStmt(While stmt);
+
+        R visitAutomatonStmt(Automaton stmt);
+
+        R visitRepeatedStmt(Repeated stmt);
+
+        R visitTournamentStmt(Tournament stmt);
+
+        R visitStochasticStmt(Stochastic stmt);
+
+        R visitBayesianGameStmt(BayesianGame stmt);
+
+        R visitCoalitionGameStmt(CoalitionGame stmt);
+
+        R visitMatchStmt(Match stmt);
+
+        R visitOptimizeStmt(Optimize stmt);
+
+        R visitSensitivityStmt(Sensitivity stmt);
+
+        R visitAuctionStmt(Auction stmt);
     }
 
     static class Block extends Stmt {
@@ -193,9 +213,10 @@ abstract class Stmt {
 
     // Game theory: Solve statement
     static class Solve extends Stmt {
-        Solve(Token gameName, Token algorithm) {
+        Solve(Token gameName, Token algorithm, java.util.Map<Token, Token> options) {
             this.gameName = gameName;
             this.algorithm = algorithm;
+            this.options = options;
         }
 
         @Override
@@ -205,6 +226,7 @@ abstract class Stmt {
 
         final Token gameName;
         final Token algorithm; // null means default (pure)
+        final java.util.Map<Token, Token> options; // option name -> value, may be empty
     }
 
     // Standard library: Import statement
@@ -225,14 +247,11 @@ abstract class Stmt {
 
     // Mechanism design: Tweak statement for parameter sweeping
     static class Tweak extends Stmt {
-        Tweak(Token keyword, Token gameName, Token variable,
-                double fromValue, double toValue, double stepValue) {
+        Tweak(Token keyword, Token gameName, List<TweakRange> ranges, java.util.Map<Token, Token> options) {
             this.keyword = keyword;
             this.gameName = gameName;
-            this.variable = variable;
-            this.fromValue = fromValue;
-            this.toValue = toValue;
-            this.stepValue = stepValue;
+            this.ranges = ranges;
+            this.options = options;
         }
 
         @Override
@@ -242,10 +261,25 @@ abstract class Stmt {
 
         final Token keyword;
         final Token gameName;
+        final List<TweakRange> ranges; // one per variable; several make a grid
+        final java.util.Map<Token, Token> options; // threads, export
+    }
+
+    // One swept variable of a tweak: in fixed steps, or adaptively to a tolerance
+    static class TweakRange {
+        TweakRange(Token variable, double fromValue, double toValue, double stepValue, Token tolerance) {
+            this.variable = variable;
+            this.fromValue = fromValue;
+            this.toValue = toValue;
+            this.stepValue = stepValue;
+            this.tolerance = tolerance;
+        }
+
         final Token variable;
         final double fromValue;
         final double toValue;
-        final double stepValue;
+        final double stepValue; // 0 when adaptive, or searched by optimize
+        final Token tolerance; // null for a fixed step
     }
 
     // Visualization: Generate DOT graph
@@ -264,12 +298,314 @@ abstract class Stmt {
         final Token gameName;
     }
 
+    // Finite-automaton strategy for repeated games
+    static class Automaton extends Stmt {
+        Automaton(Token name, List<AutomatonState> states) {
+            this.name = name;
+            this.states = states;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAutomatonStmt(this);
+        }
+
+        final Token name;
+        final List<AutomatonState> states; // the first state is the start
+    }
+
+    // One automaton state: the action it plays and where the opponent's
+    // action sends it (unlisted actions stay put)
+    static class AutomatonState {
+        AutomatonState(Token name, Token action, List<Token> on, List<Token> targets) {
+            this.name = name;
+            this.action = action;
+            this.on = on;
+            this.targets = targets;
+        }
+
+        final Token name;
+        final Token action;
+        final List<Token> on;
+        final List<Token> targets;
+    }
+
+    // Repeated play of a normal-form game between automaton strategies
+    static class Repeated extends Stmt {
+        Repeated(Token keyword, Token gameName, Token rounds, Token discount, List<Token> strategies) {
+            this.keyword = keyword;
+            this.gameName = gameName;
+            this.rounds = rounds;
+            this.discount = discount;
+            this.strategies = strategies;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitRepeatedStmt(this);
+        }
+
+        final Token keyword;
+        final Token gameName;
+        final Token rounds; // null for an infinite horizon
+        final Token discount; // null for no discounting
+        final List<Token> strategies;
+    }
+
+    // Round-robin of strategies over repeated play of a normal-form game
+    static class Tournament extends Stmt {
+        Tournament(Token keyword, Token gameName, java.util.Map<Token, Token> options, List<Token> strategies) {
+            this.keyword = keyword;
+            this.gameName = gameName;
+            this.options = options;
+            this.strategies = strategies;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitTournamentStmt(this);
+        }
+
+        final Token keyword;
+        final Token gameName;
+        final java.util.Map<Token, Token> options; // rounds (default 200), threads (default one per processor)
+        final List<Token> strategies;
+    }
+
+    // Stochastic game: a stage game per state and transitions between states
+    static class Stochastic extends Stmt {
+        Stochastic(Token name, List<Token> players, Token discount, List<StochasticState> states) {
+            this.name = name;
+            this.players = players;
+            this.discount = discount;
+            this.states = states;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitStochasticStmt(this);
+        }
+
+        final Token name;
+        final List<Token> players;
+        final Token discount;
+        final List<StochasticState> states; // the first state is the start
+    }
+
+    // One state: its stage game and, per action profile, where play moves
+    // next (probability left over stays in this state)
+    static class StochasticState {
+        StochasticState(Token name, Token game, List<List<Token>> profiles, List<List<Token>> targets,
+                List<List<Double>> probabilities) {
+            this.name = name;
+            this.game = game;
+            this.profiles = profiles;
+            this.targets = targets;
+            this.probabilities = probabilities;
+        }
+
+        final Token name;
+        final Token game;
+        final List<List<Token>> profiles;
+        final List<List<Token>> targets;
+        final List<List<Double>> probabilities;
+    }
+
+    // Bayesian game: players with private types drawn from independent priors
+    static class BayesianGame extends Stmt {
+        BayesianGame(Token name, List<Token> players, List<List<Token>> strategies, List<List<Token>> types,
+                List<List<Double>> priors, List<BayesianPayoff> payoffs) {
+            this.name = name;
+            this.players = players;
+            this.strategies = strategies;
+            this.types = types;
+            this.priors = priors;
+            this.payoffs = payoffs;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitBayesianGameStmt(this);
+        }
+
+        final Token name;
+        final List<Token> players;
+        final List<List<Token>> strategies; // per player
+        final List<List<Token>> types; // per player; empty for a player without private information
+        final List<List<Double>> priors; // per player, matching types
+        final List<BayesianPayoff> payoffs;
+    }
+
+    // (actions | types): value in a player's payoff block. Without types the
+    // entry applies to every type profile not given its own entry.
+    static class BayesianPayoff {
+        BayesianPayoff(Token player, List<Token> actions, List<Token> types, Expr value) {
+            this.player = player;
+            this.actions = actions;
+            this.types = types;
+            this.value = value;
+        }
+
+        final Token player;
+        final List<Token> actions;
+        final List<Token> types; // one per player with types, or null
+        final Expr value;
+    }
+
+    // Cooperative game: a worth for every coalition of players, given by a
+    // function of the coalition or by a table
+    static class CoalitionGame extends Stmt {
+        CoalitionGame(Token name, List<Token> players, Expr worth, List<List<Token>> coalitions,
+                List<Expr> values) {
+            this.name = name;
+            this.players = players;
+            this.worth = worth;
+            this.coalitions = coalitions;
+            this.values = values;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCoalitionGameStmt(this);
+        }
+
+        final Token name;
+        final List<Token> players;
+        final Expr worth; // function of a coalition, or null for a table
+        final List<List<Token>> coalitions; // table rows; unlisted coalitions are worth 0
+        final List<Expr> values;
+    }
+
+    // Two-sided matching market, matched by deferred acceptance
+    static class Match extends Stmt {
+        Match(Token keyword, Token name, MatchSide proposers, MatchSide receivers, Expr current,
+                java.util.Map<Token, Token> options) {
+            this.keyword = keyword;
+            this.name = name;
+            this.proposers = proposers;
+            this.receivers = receivers;
+            this.current = current;
+            this.options = options;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitMatchStmt(this);
+        }
+
+        final Token keyword;
+        final Token name;
+        final MatchSide proposers;
+        final MatchSide receivers;
+        final Expr current; // function from proposer to receiver, or null
+        final java.util.Map<Token, Token> options; // noise, seed, threads
+    }
+
+    // One side of a matching market: named agents with preference lists, or
+    // a number of agents; either way preferences may come from a score
+    static class MatchSide {
+        MatchSide(Token keyword, Token count, List<Token> agents, List<List<Token>> lists, Expr score) {
+            this.keyword = keyword;
+            this.count = count;
+            this.agents = agents;
+            this.lists = lists;
+            this.score = score;
+        }
+
+        final Token keyword;
+        final Token count; // null when the agents are named
+        final List<Token> agents; // empty when counted
+        final List<List<Token>> lists; // per named agent, best first; unused with a score
+        final Expr score; // function of (self, other) or (other), or null
+    }
+
+    // Mechanism design: search parameters for the best objective at equilibrium
+    static class Optimize extends Stmt {
+        Optimize(Token keyword, Token gameName, boolean maximize, Expr objective, List<TweakRange> ranges,
+                java.util.Map<Token, Token> options) {
+            this.keyword = keyword;
+            this.gameName = gameName;
+            this.maximize = maximize;
+            this.objective = objective;
+            this.ranges = ranges;
+            this.options = options;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitOptimizeStmt(this);
+        }
+
+        final Token keyword;
+        final Token gameName;
+        final boolean maximize; // else minimize
+        final Expr objective;
+        final List<TweakRange> ranges; // bounds from 'from' to 'to'; no step
+        final java.util.Map<Token, Token> options;
+    }
+
+    // Mechanism design: equilibria of a game under random parameters
+    static class Sensitivity extends Stmt {
+        Sensitivity(Token keyword, Token gameName, List<Draw> draws, java.util.Map<Token, Token> options) {
+            this.keyword = keyword;
+            this.gameName = gameName;
+            this.draws = draws;
+            this.options = options;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSensitivityStmt(this);
+        }
+
+        final Token keyword;
+        final Token gameName;
+        final List<Draw> draws;
+        final java.util.Map<Token, Token> options;
+    }
+
+    // One random parameter: VARIABLE ~ DISTRIBUTION(ARGUMENTS)
+    static class Draw {
+        Draw(Token variable, Token distribution, double[] arguments) {
+            this.variable = variable;
+            this.distribution = distribution;
+            this.arguments = arguments;
+        }
+
+        final Token variable;
+        final Token distribution; // uniform or normal
+        final double[] arguments; // (low, high) or (mean, standard deviation)
+    }
+
+    // Mechanism design: Monte Carlo runs of a sealed-bid auction
+    static class Auction extends Stmt {
+        Auction(Token keyword, Token format, Draw values, java.util.Map<Token, Token> options) {
+            this.keyword = keyword;
+            this.format = format;
+            this.values = values;
+            this.options = options;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAuctionStmt(this);
+        }
+
+        final Token keyword;
+        final Token format; // first_price, second_price or all_pay
+        final Draw values; // each bidder's private value
+        final java.util.Map<Token, Token> options;
+    }
+
     // Sequential games (extensive form)
     static class SequentialGame extends Stmt {
-        SequentialGame(Token name, List<Token> players, List<GameNode> nodes) {
+        SequentialGame(Token name, List<Token> players, List<GameNode> nodes, GameRules rules,
+                GameIndex index) {
             this.name = name;
             this.players = players;
             this.nodes = nodes;
+            this.rules = rules;
+            this.index = index;
         }
 
         @Override
@@ -280,40 +616,75 @@ abstract class Stmt {
         final Token name;
         final List<Token> players;
         final List<GameNode> nodes;
+        final GameRules rules; // null unless the tree is generated by rules
+        final GameIndex index; // node ids and order, checked at parse time; null for rules
+    }
+
+    // Rules of a procedurally generated game, each a value or function expression
+    static class GameRules {
+        GameRules(Expr start, Expr actions, Expr next, Expr player, Expr payoff, Expr info, Expr odds) {
+            this.start = start;
+            this.actions = actions;
+            this.next = next;
+            this.player = player;
+            this.payoff = payoff;
+            this.info = info;
+            this.odds = odds;
+        }
+
+        final Expr start; // initial state
+        final Expr actions; // fun(state) -> action count or "A,B,..."; none at terminal states
+        final Expr next; // fun(state, action) -> state
+        final Expr player; // fun(state) -> player name, index or "chance"
+        final Expr payoff; // fun(state, player) -> payoff at a terminal state
+        final Expr info; // optional fun(state) -> information set label
+        final Expr odds; // optional fun(state, action) -> chance probability
     }
 
     // Represents a decision node in the game tree
     static class GameNode {
-        GameNode(Token name, Token player, List<GameMove> moves) {
+        // Player name that marks a move by nature
+        static final String CHANCE = "chance";
+
+        GameNode(Token name, Token player, Token infoSet, List<GameMove> moves) {
             this.name = name;
             this.player = player;
+            this.infoSet = infoSet;
             this.moves = moves;
         }
 
         final Token name;
         final Token player;
+        final Token infoSet; // null if the node is its own information set
         final List<GameMove> moves;
+
+        boolean isChance() {
+            return player.lexeme.equals(CHANCE);
+        }
     }
 
     // Represents a move/edge in the game tree
     static class GameMove {
         // Move to another node
-        GameMove(Token action, Token targetNode) {
+        GameMove(Token action, Token targetNode, double probability) {
             this.action = action;
             this.targetNode = targetNode;
             this.payoffs = null;
+            this.probability = probability;
         }
 
         // Move to terminal payoffs
-        GameMove(Token action, List<Double> payoffs) {
+        GameMove(Token action, List<Expr> payoffs, double probability) {
             this.action = action;
             this.targetNode = null;
             this.payoffs = payoffs;
+            this.probability = probability;
         }
 
         final Token action;
         final Token targetNode; // null if terminal
-        final List<Double> payoffs; // null if not terminal
+        final List<Expr> payoffs; // null if not terminal
+        final double probability; // NaN unless given at a chance node
 
         boolean isTerminal() {
             return payoffs != null;
@@ -0,0 +1,439 @@
+package org.axiom.tenet;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+/**
+ * Solvers for two-player discounted stochastic games compiled to arrays.
+ *
+ * Zero-sum games are solved by Shapley's value iteration: each sweep replaces
+ * the value of every state by the minimax value of its stage game plus the
+ * discounted continuation, one small linear program per state. The sweep is
+ * a contraction, so it converges for any discount below 1.
+ *
+ * General-sum games are solved for a stationary Markov perfect equilibrium
+ * by policy iteration: evaluate the current strategies exactly with one
+ * linear system per player, then in each state keep the strategies if they
+ * are still an equilibrium of the stage game with continuation values, or
+ * move to one that is. This converges on most games of interest but is not
+ * guaranteed to, so the result says whether it did.
+ *
+ * The per-state work of each sweep is independent and is split across a
+ * fork/join pool.
+ */
+class StochasticGameSolver {
+    // States per parallel block; games no larger are solved on the calling thread
+    private static final int PARALLEL_GRAIN = 8;
+    private static final double EPSILON = 1e-9;
+
+    static class Result {
+        final double[][] value; // value[s][p]
+        final double[][][] strategy; // strategy[s][p][action]
+        final int iterations;
+        final boolean converged;
+        final double change; // largest value change in the last sweep
+
+        Result(double[][] value, double[][][] strategy, int iterations, boolean converged, double change) {
+            this.value = value;
+            this.strategy = strategy;
+            this.iterations = iterations;
+            this.converged = converged;
+            this.change = change;
+        }
+    }
+
+    final String[] stateNames;
+    final String[][][] actionNames; // actionNames[s][p][action]
+    private final int states;
+    private final int[] rows;
+    private final int[] columns;
+    private final double[][][] payoff; // payoff[s][p][a * columns[s] + b]
+    private final int[][][] next; // next[s][cell]: states play can move to
+    private final double[][][] chance; // chance[s][cell]: their probabilities
+    private final double discount;
+    private final Token where;
+
+    StochasticGameSolver(String[] stateNames, String[][][] actionNames, double[][][] payoff, int[][][] next,
+            double[][][] chance, double discount, Token where) {
+        this.stateNames = stateNames;
+        this.actionNames = actionNames;
+        this.states = stateNames.length;
+        this.rows = new int[states];
+        this.columns = new int[states];
+        for (int s = 0; s < states; s++) {
+            rows[s] = actionNames[s][0].length;
+            columns[s] = actionNames[s][1].length;
+        }
+        this.payoff = payoff;
+        this.next = next;
+        this.chance = chance;
+        this.discount = discount;
+        this.where = where;
+    }
+
+    boolean isZeroSum() {
+        for (int s = 0; s < states; s++) {
+            for (int cell = 0; cell < payoff[s][0].length; cell++) {
+                if (Math.abs(payoff[s][0][cell] + payoff[s][1][cell]) > EPSILON)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shapley value iteration until no state value moves by more than the
+     * tolerance. Values are those of the first player; the second gets their
+     * negation.
+     */
+    Result shapley(double tolerance, int maxIterations, int threads) {
+        double[] value = new double[states];
+        double[] updated = new double[states];
+        double[][] rowMix = new double[states][];
+        int iterations = 0;
+        double change = Double.POSITIVE_INFINITY;
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            while (iterations < maxIterations && change >= tolerance) {
+                double[] current = value;
+                forEachState(pool, s -> {
+                    double[] solution = solveMatrixGame(continuation(s, 0, current), rows[s], columns[s]);
+                    rowMix[s] = Arrays.copyOf(solution, rows[s]);
+                    updated[s] = solution[rows[s]];
+                });
+                change = 0;
+                for (int s = 0; s < states; s++) {
+                    change = Math.max(change, Math.abs(updated[s] - value[s]));
+                }
+                System.arraycopy(updated, 0, value, 0, states);
+                iterations++;
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        // The column player's strategy, from the same continuation values
+        double[][] values = new double[states][2];
+        double[][][] strategy = new double[states][2][];
+        for (int s = 0; s < states; s++) {
+            double[] q = continuation(s, 0, value);
+            double[] transposed = new double[q.length];
+            for (int a = 0; a < rows[s]; a++) {
+                for (int b = 0; b < columns[s]; b++) {
+                    transposed[b * rows[s] + a] = -q[a * columns[s] + b];
+                }
+            }
+            strategy[s][0] = rowMix[s];
+            strategy[s][1] = Arrays.copyOf(solveMatrixGame(transposed, columns[s], rows[s]), columns[s]);
+            values[s][0] = value[s];
+            values[s][1] = -value[s];
+        }
+        return new Result(values, strategy, iterations, change < tolerance, change);
+    }
+
+    /**
+     * Policy iteration for a stationary Markov perfect equilibrium, starting
+     * from an equilibrium of each stage game on its own.
+     */
+    Result markovPerfect(double tolerance, int maxIterations, int threads) {
+        double[][][] strategy = new double[states][][];
+        double[][] zero = new double[2][states];
+        for (int s = 0; s < states; s++) {
+            strategy[s] = equilibrium(s, continuation(s, 0, zero[0]), continuation(s, 1, zero[1]), tolerance);
+        }
+
+        double[][] value = evaluate(strategy);
+        int iterations = 0;
+        boolean converged = false;
+        double change = Double.POSITIVE_INFINITY;
+        boolean[] changed = new boolean[states];
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            while (iterations < maxIterations) {
+                double[][] current = value;
+                forEachState(pool, s -> {
+                    double[] q0 = continuation(s, 0, current[0]);
+                    double[] q1 = continuation(s, 1, current[1]);
+                    changed[s] = !isEquilibrium(s, strategy[s], q0, q1, tolerance);
+                    if (changed[s])
+                        strategy[s] = equilibrium(s, q0, q1, tolerance);
+                });
+                iterations++;
+                boolean any = false;
+                for (boolean c : changed) {
+                    any |= c;
+                }
+                double[][] updated = any ? evaluate(strategy) : value;
+                change = 0;
+                for (int p = 0; p < 2; p++) {
+                    for (int s = 0; s < states; s++) {
+                        change = Math.max(change, Math.abs(updated[p][s] - value[p][s]));
+                    }
+                }
+                value = updated;
+                if (!any) {
+                    converged = true;
+                    break;
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        double[][] values = new double[states][2];
+        for (int s = 0; s < states; s++) {
+            values[s][0] = value[0][s];
+            values[s][1] = value[1][s];
+        }
+        return new Result(values, strategy, iterations, converged, change);
+    }
+
+    private void forEachState(ForkJoinPool pool, IntConsumer work) {
+        ParallelBlocks.forRanges(pool, states, PARALLEL_GRAIN, (from, to) -> {
+            for (int s = from; s < to; s++) {
+                work.accept(s);
+            }
+        });
+    }
+
+    // Stage payoff of one player plus the discounted value of where play goes
+    private double[] continuation(int s, int player, double[] value) {
+        double[] q = payoff[s][player].clone();
+        for (int cell = 0; cell < q.length; cell++) {
+            double expected = 0;
+            for (int t = 0; t < next[s][cell].length; t++) {
+                expected += chance[s][cell][t] * value[next[s][cell][t]];
+            }
+            q[cell] += discount * expected;
+        }
+        return q;
+    }
+
+    /**
+     * Exact values of both players under stationary strategies: solves
+     * (I - discount P) v = r, where P and r are the transitions and stage
+     * payoffs the strategies induce. Returns value[p][s].
+     */
+    private double[][] evaluate(double[][][] strategy) {
+        double[][] system = new double[states][states];
+        double[][] reward = new double[2][states];
+        for (int s = 0; s < states; s++) {
+            system[s][s] = 1;
+            double[] x = strategy[s][0];
+            double[] y = strategy[s][1];
+            for (int a = 0; a < rows[s]; a++) {
+                for (int b = 0; b < columns[s]; b++) {
+                    double weight = x[a] * y[b];
+                    if (weight == 0)
+                        continue;
+                    int cell = a * columns[s] + b;
+                    reward[0][s] += weight * payoff[s][0][cell];
+                    reward[1][s] += weight * payoff[s][1][cell];
+                    for (int t = 0; t < next[s][cell].length; t++) {
+                        system[s][next[s][cell][t]] -= discount * weight * chance[s][cell][t];
+                    }
+                }
+            }
+        }
+        double[][] value = new double[2][];
+        for (int p = 0; p < 2; p++) {
+            value[p] = solveLinear(system, reward[p]);
+        }
+        return value;
+    }
+
+    private boolean isEquilibrium(int s, double[][] mix, double[] q0, double[] q1, double tolerance) {
+        int m = rows[s];
+        int n = columns[s];
+        double[] rowPayoff = new double[m];
+        double[] columnPayoff = new double[n];
+        double expected0 = 0;
+        double expected1 = 0;
+        for (int a = 0; a < m; a++) {
+            for (int b = 0; b < n; b++) {
+                rowPayoff[a] += mix[1][b] * q0[a * n + b];
+                columnPayoff[b] += mix[0][a] * q1[a * n + b];
+            }
+            expected0 += mix[0][a] * rowPayoff[a];
+        }
+        for (int b = 0; b < n; b++) {
+            expected1 += mix[1][b] * columnPayoff[b];
+        }
+        for (int a = 0; a < m; a++) {
+            if (rowPayoff[a] > expected0 + tolerance)
+                return false;
+        }
+        for (int b = 0; b < n; b++) {
+            if (columnPayoff[b] > expected1 + tolerance)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * An equilibrium of the bimatrix game (q0, q1): the first pure one in
+     * row-major order, otherwise one found by enumerating supports of equal
+     * size.
+     */
+    private double[][] equilibrium(int s, double[] q0, double[] q1, double tolerance) {
+        int m = rows[s];
+        int n = columns[s];
+        for (int a = 0; a < m; a++) {
+            for (int b = 0; b < n; b++) {
+                double[][] pure = { new double[m], new double[n] };
+                pure[0][a] = 1;
+                pure[1][b] = 1;
+                if (isEquilibrium(s, pure, q0, q1, tolerance))
+                    return pure;
+            }
+        }
+        for (int k = 2; k <= Math.min(m, n); k++) {
+            for (int rowSet = 1; rowSet < (1 << m); rowSet++) {
+                if (Integer.bitCount(rowSet) != k)
+                    continue;
+                for (int columnSet = 1; columnSet < (1 << n); columnSet++) {
+                    if (Integer.bitCount(columnSet) != k)
+                        continue;
+                    double[] y = indifferent(q0, m, n, rowSet, columnSet, false);
+                    double[] x = indifferent(q1, m, n, columnSet, rowSet, true);
+                    if (x == null || y == null)
+                        continue;
+                    double[][] mix = { x, y };
+                    if (isEquilibrium(s, mix, q0, q1, tolerance))
+                        return mix;
+                }
+            }
+        }
+        throw new RuntimeError(where, "Found no equilibrium of the stage game in state '" + stateNames[s] +
+                "'; its payoffs may be degenerate.");
+    }
+
+    /**
+     * Mix over 'support' (of the player whose strategy is sought) that makes
+     * the opponent indifferent among the actions in 'opponentSupport'. Returns
+     * null if there is none with non-negative weights.
+     */
+    private static double[] indifferent(double[] q, int m, int n, int opponentSupport, int support,
+            boolean forRow) {
+        int size = forRow ? m : n;
+        int[] mine = members(support, size);
+        int[] theirs = members(opponentSupport, forRow ? n : m);
+        int k = mine.length;
+
+        // Unknowns: k weights and the opponent's common payoff
+        double[][] system = new double[k + 1][k + 1];
+        double[] rhs = new double[k + 1];
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                int cell = forRow ? mine[j] * n + theirs[i] : theirs[i] * n + mine[j];
+                system[i][j] = q[cell];
+            }
+            system[i][k] = -1;
+        }
+        for (int j = 0; j < k; j++) {
+            system[k][j] = 1;
+        }
+        rhs[k] = 1;
+        double[] solution = solveLinear(system, rhs);
+        if (solution == null)
+            return null;
+        double[] mix = new double[size];
+        for (int j = 0; j < k; j++) {
+            if (solution[j] < -EPSILON)
+                return null;
+            mix[mine[j]] = Math.max(0, solution[j]);
+        }
+        return mix;
+    }
+
+    private static int[] members(int set, int size) {
+        int[] members = new int[Integer.bitCount(set)];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if ((set & (1 << i)) != 0)
+                members[count++] = i;
+        }
+        return members;
+    }
+
+    /**
+     * Optimal mix of the row player of a zero-sum matrix game (q[a * n + b]
+     * paid to the row player), followed by the game's value. Payoffs are
+     * shifted to be positive so the value variable can be non-negative.
+     */
+    static double[] solveMatrixGame(double[] q, int m, int n) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double entry : q) {
+            min = Math.min(min, entry);
+        }
+        double shift = 1 - min;
+
+        // Variables: the row player's weights, then the value
+        LinearProgram program = new LinearProgram(m + 1);
+        double[] objective = new double[m + 1];
+        objective[m] = 1;
+        program.maximize(objective);
+        for (int b = 0; b < n; b++) {
+            double[] row = new double[m + 1];
+            for (int a = 0; a < m; a++) {
+                row[a] = -(q[a * n + b] + shift);
+            }
+            row[m] = 1;
+            program.atMost(row, 0);
+        }
+        double[] total = new double[m + 1];
+        Arrays.fill(total, 0, m, 1);
+        program.equal(total, 1);
+        if (program.solve() != LinearProgram.Status.OPTIMAL)
+            throw new IllegalStateException("A matrix game always has a value.");
+
+        double[] result = program.solution.clone();
+        result[m] -= shift;
+        return result;
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting; null if the system is
+     * singular. The arguments are not modified.
+     */
+    static double[] solveLinear(double[][] matrix, double[] rhs) {
+        int n = rhs.length;
+        double[][] a = new double[n][];
+        for (int i = 0; i < n; i++) {
+            a[i] = Arrays.copyOf(matrix[i], n + 1);
+            a[i][n] = rhs[i];
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int i = col + 1; i < n; i++) {
+                if (Math.abs(a[i][col]) > Math.abs(a[pivot][col]))
+                    pivot = i;
+            }
+            if (Math.abs(a[pivot][col]) < EPSILON)
+                return null;
+            double[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+            for (int i = col + 1; i < n; i++) {
+                double factor = a[i][col] / a[col][col];
+                if (factor == 0)
+                    continue;
+                for (int j = col; j <= n; j++) {
+                    a[i][j] -= factor * a[col][j];
+                }
+            }
+        }
+        double[] x = new double[n];
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = a[i][n];
+            for (int j = i + 1; j < n; j++) {
+                sum -= a[i][j] * x[j];
+            }
+            x[i] = sum / a[i][i];
+        }
+        return x;
+    }
+}
@@ -0,0 +1,128 @@
+package org.axiom.tenet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runtime representation of a stochastic game. Stage games are looked up
+ * when the declaration runs; their payoffs are evaluated each time the game
+ * is compiled for a solver, so they follow the variables they read.
+ */
+class StochasticGameValue {
+    final String name;
+    final List<Token> players;
+    final double discount;
+    final Stmt.Stochastic declaration;
+    private final GameValue[] stages;
+
+    StochasticGameValue(Stmt.Stochastic declaration, GameValue[] stages) {
+        this.name = declaration.name.lexeme;
+        this.players = declaration.players;
+        this.discount = (double) declaration.discount.literal;
+        this.declaration = declaration;
+        this.stages = stages;
+    }
+
+    /**
+     * Evaluates stage payoffs and transitions into a solver's arrays,
+     * checking each transition profile against its stage game.
+     */
+    StochasticGameSolver compile(Interpreter interpreter, Token where) {
+        List<Stmt.StochasticState> states = declaration.states;
+        int count = states.size();
+        Map<String, Integer> ids = new HashMap<>();
+        for (int s = 0; s < count; s++) {
+            ids.put(states.get(s).name.lexeme, s);
+        }
+
+        String[] stateNames = new String[count];
+        String[][][] actionNames = new String[count][2][];
+        double[][][] payoff = new double[count][2][];
+        int[][][] next = new int[count][][];
+        double[][][] chance = new double[count][][];
+        for (int s = 0; s < count; s++) {
+            Stmt.StochasticState state = states.get(s);
+            GameValue stage = stages[s];
+            stateNames[s] = state.name.lexeme;
+            List<Token> rowActions = stage.strategiesFor(0);
+            List<Token> columnActions = stage.strategiesFor(1);
+            int m = rowActions.size();
+            int n = columnActions.size();
+            actionNames[s][0] = names(rowActions);
+            actionNames[s][1] = names(columnActions);
+
+            payoff[s][0] = new double[m * n];
+            payoff[s][1] = new double[m * n];
+            next[s] = new int[m * n][];
+            chance[s] = new double[m * n][];
+            for (int a = 0; a < m; a++) {
+                for (int b = 0; b < n; b++) {
+                    StrategyProfile profile = new StrategyProfile(
+                            Arrays.asList(rowActions.get(a), columnActions.get(b)));
+                    for (int p = 0; p < 2; p++) {
+                        Object value = stage.getPayoff(stage.players.get(p), profile, interpreter);
+                        if (!(value instanceof Double)) {
+                            throw new RuntimeError(state.game, "Payoffs of stage game '" + stage.name +
+                                    "' must be numbers.");
+                        }
+                        payoff[s][p][a * n + b] = (Double) value;
+                    }
+                    // Unlisted profiles stay put
+                    next[s][a * n + b] = new int[] { s };
+                    chance[s][a * n + b] = new double[] { 1 };
+                }
+            }
+
+            for (int t = 0; t < state.profiles.size(); t++) {
+                List<Token> profile = state.profiles.get(t);
+                if (profile.size() != 2) {
+                    throw new RuntimeError(profile.get(0), "A transition profile names one action per player.");
+                }
+                int cell = index(rowActions, profile.get(0), stage) * n +
+                        index(columnActions, profile.get(1), stage);
+                List<Token> targets = state.targets.get(t);
+                List<Double> odds = state.probabilities.get(t);
+                double total = 0;
+                for (double p : odds) {
+                    total += p;
+                }
+                int extra = total < 1 - 1e-9 ? 1 : 0;
+                next[s][cell] = new int[targets.size() + extra];
+                chance[s][cell] = new double[targets.size() + extra];
+                for (int i = 0; i < targets.size(); i++) {
+                    next[s][cell][i] = ids.get(targets.get(i).lexeme);
+                    chance[s][cell][i] = odds.get(i);
+                }
+                if (extra == 1) {
+                    next[s][cell][targets.size()] = s;
+                    chance[s][cell][targets.size()] = 1 - total;
+                }
+            }
+        }
+        return new StochasticGameSolver(stateNames, actionNames, payoff, next, chance, discount, where);
+    }
+
+    private static String[] names(List<Token> actions) {
+        String[] names = new String[actions.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = actions.get(i).lexeme;
+        }
+        return names;
+    }
+
+    private static int index(List<Token> actions, Token action, GameValue stage) {
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i).lexeme.equals(action.lexeme))
+                return i;
+        }
+        throw new RuntimeError(action, "'" + action.lexeme + "' is not an action in stage game '" +
+                stage.name + "'.");
+    }
+
+    @Override
+    public String toString() {
+        return "<stochastic game " + name + ">";
+    }
+}
@@ -0,0 +1,555 @@
+package org.axiom.tenet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Grid tweaks spread over local worker processes, each with a heap of its
+ * own, for sweeps too big for one JVM.
+ *
+ * Every worker runs the same script with its output muted, so it reaches each
+ * grid tweak with the same games as the coordinator, and skips the other
+ * analyses. Only those analyses and printing are skipped: with N workers,
+ * everything else the script does (its loops, function calls, procedural
+ * game expansion, random() draws) runs N+1 times, so a script that spends
+ * long outside its grid tweaks gains little here. With each sweep the coordinator sends the globals the game reads:
+ * the variables in its payoffs, or every global when a payoff calls a
+ * function or reads a field. Numbers, strings and booleans are taken over, so
+ * a script that drew them from random() still sweeps the coordinator's game;
+ * a function, class or object that differs fails the sweep, since it cannot
+ * be sent. The worker then solves shards of the grid, ranges of points
+ * handed out one at a time to whichever worker is free, so a slow worker
+ * simply takes fewer. Once none are left, idle workers also take shards still
+ * running on a single other worker, and the first result wins; a worker that
+ * dies has its shard handed on. Shards are merged in sweep order, so set ids
+ * and output match an in-process sweep.
+ *
+ * Messages are DataStream ints and strings over each worker's stdin and
+ * stdout: the coordinator sends SWEEP (sweep number, points, globals), then SHARD
+ * (from, to) until DONE; the worker answers READY or FAILED (reason), and
+ * RESULT (from, to, its sets, an id per point) for each shard.
+ */
+abstract class SweepCluster {
+    private static final int SWEEP = 1;
+    private static final int SHARD = 2;
+    private static final int DONE = 3;
+    private static final int READY = 4;
+    private static final int RESULT = 5;
+    private static final int FAILED = 6;
+
+    // Kinds of global sent with a sweep
+    private static final int NIL = 0;
+    private static final int NUMBER = 1;
+    private static final int STRING = 2;
+    private static final int BOOLEAN = 3;
+    private static final int OTHER = 4; // sent as a description, only compared
+
+    /** Solves points from..to-1 into the grid's ids, against a table of its own. */
+    interface Shards {
+        TweakGrid.Sets solve(int from, int to);
+    }
+
+    /**
+     * Fills the grid. The coordinator hands it to the workers along with the
+     * named globals; a worker takes those over and solves what it is sent with
+     * the shards from 'local'.
+     */
+    abstract TweakGrid sweep(TweakGrid grid, Token where, Environment globals, List<String> inputs,
+            Supplier<Shards> local);
+
+    /** True in a worker, which prints nothing and sweeps only when sent shards. */
+    abstract boolean serving();
+
+    static void writeSets(DataOutputStream out, TweakGrid.Sets sets) throws IOException {
+        out.writeInt(sets.list.size());
+        for (List<StrategyProfile> set : sets.list) {
+            out.writeInt(set.size());
+            for (StrategyProfile profile : set) {
+                out.writeInt(profile.strategies.size());
+                for (Token strategy : profile.strategies) {
+                    out.writeUTF(strategy.lexeme);
+                }
+            }
+        }
+    }
+
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A value that cannot be sent, as text that is the same in every process
+     * running the script: instances by class and fields, functions by name,
+     * line and any enclosing scopes short of the globals.
+     */
+    static String describe(Object value, Environment globals) {
+        StringBuilder text = new StringBuilder();
+        describe(value, globals, text, new IdentityHashMap<>());
+        return text.toString();
+    }
+
+    private static void describe(Object value, Environment globals, StringBuilder text, Map<Object, Integer> seen) {
+        if (value instanceof TenetInstance || value instanceof TenetFunction || value instanceof Environment) {
+            Integer at = seen.get(value);
+            if (at != null) {
+                text.append('#').append(at); // a cycle, or shared with an earlier value
+                return;
+            }
+            seen.put(value, seen.size());
+        }
+        if (value == null || value instanceof Double || value instanceof Boolean) {
+            text.append(value);
+        } else if (value instanceof String) {
+            text.append('"').append(((String) value).length()).append(':').append(value).append('"');
+        } else if (value instanceof TenetInstance) {
+            TenetInstance instance = (TenetInstance) value;
+            text.append(instance.className()).append('(');
+            for (Map.Entry<String, Object> field : new TreeMap<>(instance.fields()).entrySet()) {
+                text.append(field.getKey()).append('=');
+                describe(field.getValue(), globals, text, seen);
+                text.append(',');
+            }
+            text.append(')');
+        } else if (value instanceof TenetFunction) {
+            TenetFunction function = (TenetFunction) value;
+            text.append(function).append('@').append(function.line());
+            describe(function.closure(), globals, text, seen);
+        } else if (value instanceof Environment) {
+            Environment scope = (Environment) value;
+            if (scope == globals)
+                return;
+            text.append('{');
+            for (Map.Entry<String, Object> entry : new TreeMap<>(scope.values()).entrySet()) {
+                text.append(entry.getKey()).append('=');
+                describe(entry.getValue(), globals, text, seen);
+                text.append(',');
+            }
+            text.append('}');
+            describe(scope.enclosing, globals, text, seen);
+        } else if (value instanceof TenetClass) {
+            TenetClass klass = (TenetClass) value;
+            text.append("<class ").append(klass.name).append('>');
+            if (klass.superclass != null)
+                describe(klass.superclass, globals, text, seen);
+        } else {
+            text.append(value); // natives and declared games, by name
+        }
+    }
+
+    static TweakGrid.Sets readSets(DataInputStream in) throws IOException {
+        TweakGrid.Sets sets = new TweakGrid.Sets();
+        int count = in.readInt();
+        for (int id = 0; id < count; id++) {
+            List<StrategyProfile> set = new ArrayList<>();
+            int profiles = in.readInt();
+            for (int p = 0; p < profiles; p++) {
+                List<Token> strategies = new ArrayList<>();
+                int size = in.readInt();
+                for (int s = 0; s < size; s++) {
+                    strategies.add(new Token(TokenType.IDENTIFIER, in.readUTF(), null, 0));
+                }
+                set.add(new StrategyProfile(strategies));
+            }
+            sets.intern(set);
+        }
+        return sets;
+    }
+
+    /** Starts the workers at the first sweep, and hands out its shards. */
+    static class Coordinator extends SweepCluster {
+        private static final int SHARDS_PER_WORKER = 16;
+        private static final int SHARD_LIMIT = 1 << 16; // points per shard
+
+        private final int size;
+        private final String script;
+        private final List<Link> links = new ArrayList<>();
+        private int sweeps;
+
+        // One worker process and the thread talking to it
+        private static class Link {
+            Process process;
+            DataInputStream in;
+            DataOutputStream out;
+            Thread thread; // still draining a duplicate shard after a sweep
+            boolean alive = true;
+        }
+
+        Coordinator(int size, String script) {
+            this.size = size;
+            this.script = script;
+        }
+
+        @Override
+        boolean serving() {
+            return false;
+        }
+
+        @Override
+        TweakGrid sweep(TweakGrid grid, Token where, Environment globals, List<String> inputs,
+                Supplier<Shards> local) {
+            if (links.isEmpty())
+                start(where);
+            int sweep = sweeps++;
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (String name : inputs) {
+                values.put(name, globals.values().get(name));
+            }
+            int shardSize = Math.max(1, Math.min(SHARD_LIMIT, grid.points / (size * SHARDS_PER_WORKER)));
+            int shards = (grid.points + shardSize - 1) / shardSize;
+            TweakGrid.Sets[] results = new TweakGrid.Sets[shards];
+            Board board = new Board(shards);
+            List<Link> alive = new ArrayList<>();
+            for (Link link : links) {
+                join(link);
+                if (link.alive)
+                    alive.add(link);
+            }
+            board.live = alive.size();
+            for (Link link : alive) {
+                link.thread = new Thread(() -> serve(link, board, grid, sweep, globals, values, shardSize, results));
+                link.thread.setDaemon(true);
+                link.thread.start();
+            }
+            if (!board.await()) {
+                throw new RuntimeError(where, "Every sweep worker failed" +
+                        (board.reason != null ? ": " + board.reason : "."));
+            }
+            for (int shard = 0; shard < shards; shard++) {
+                int from = shard * shardSize;
+                grid.merge(from, Math.min(grid.points, from + shardSize), results[shard]);
+            }
+            return grid;
+        }
+
+        private void serve(Link link, Board board, TweakGrid grid, int sweep, Environment globals,
+                Map<String, Object> values, int shardSize, TweakGrid.Sets[] results) {
+            int shard = -1;
+            try {
+                link.out.writeInt(SWEEP);
+                link.out.writeInt(sweep);
+                link.out.writeInt(grid.points);
+                link.out.writeInt(values.size());
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    writeText(link.out, entry.getKey());
+                    writeValue(link.out, entry.getValue(), globals);
+                }
+                link.out.flush();
+                if (link.in.readInt() != READY)
+                    throw new IOException(readText(link.in));
+                int[] ids = new int[shardSize];
+                while ((shard = board.next()) >= 0) {
+                    int from = shard * shardSize;
+                    int to = Math.min(grid.points, from + shardSize);
+                    link.out.writeInt(SHARD);
+                    link.out.writeInt(from);
+                    link.out.writeInt(to);
+                    link.out.flush();
+                    if (link.in.readInt() != RESULT || link.in.readInt() != from || link.in.readInt() != to)
+                        throw new IOException("Sweep worker sent an unexpected reply.");
+                    TweakGrid.Sets sets = readSets(link.in);
+                    for (int point = from; point < to; point++) {
+                        ids[point - from] = link.in.readInt();
+                    }
+                    int done = shard;
+                    board.finish(shard, () -> {
+                        System.arraycopy(ids, 0, grid.setId, from, to - from);
+                        results[done] = sets;
+                    });
+                    shard = -1;
+                }
+                link.out.writeInt(DONE);
+                link.out.flush();
+            } catch (IOException e) {
+                link.alive = false;
+                link.process.destroy();
+                board.drop(shard, e instanceof EOFException ? "a worker exited" : e.getMessage());
+            }
+        }
+
+        private static void writeValue(DataOutputStream out, Object value, Environment globals)
+                throws IOException {
+            if (value == null) {
+                out.writeInt(NIL);
+            } else if (value instanceof Double) {
+                out.writeInt(NUMBER);
+                out.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                out.writeInt(STRING);
+                writeText(out, (String) value);
+            } else if (value instanceof Boolean) {
+                out.writeInt(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                out.writeInt(OTHER);
+                writeText(out, describe(value, globals));
+            }
+        }
+
+        private void start(Token where) {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            // Heap and other -X settings carry over, so each worker gets a heap of the same size
+            for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (argument.startsWith("-X"))
+                    command.add(argument);
+            }
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), Tenet.class.getName(),
+                    "--sweep-worker", script));
+            ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                for (int w = 0; w < size; w++) {
+                    Link link = new Link();
+                    link.process = builder.start();
+                    link.in = new DataInputStream(new BufferedInputStream(link.process.getInputStream(), 1 << 16));
+                    link.out = new DataOutputStream(new BufferedOutputStream(link.process.getOutputStream(),
+                            1 << 16));
+                    links.add(link);
+                }
+            } catch (IOException e) {
+                links.forEach(link -> link.process.destroy());
+                links.clear();
+                throw new RuntimeError(where, "Could not start sweep workers: " + e.getMessage());
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> links.forEach(link -> link.process.destroy())));
+        }
+
+        private static void join(Link link) {
+            if (link.thread == null)
+                return;
+            try {
+                link.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Which shards are waiting, running and done, shared by the threads of a sweep
+    private static class Board {
+        private final Deque<Integer> waiting = new ArrayDeque<>();
+        private final boolean[] done;
+        private final int[] running; // workers on each shard
+        private int remaining;
+        int live; // workers still serving
+        String reason; // why the first worker failed
+
+        Board(int shards) {
+            for (int shard = 0; shard < shards; shard++) {
+                waiting.add(shard);
+            }
+            done = new boolean[shards];
+            running = new int[shards];
+            remaining = shards;
+        }
+
+        // The next shard to solve, or -1 once all are done
+        synchronized int next() {
+            while (remaining > 0) {
+                Integer shard = waiting.poll();
+                if (shard == null) {
+                    // Nothing waiting: take a shard from a worker that may be slow
+                    for (int s = 0; s < done.length && shard == null; s++) {
+                        if (!done[s] && running[s] == 1)
+                            shard = s;
+                    }
+                }
+                if (shard != null) {
+                    running[shard]++;
+                    return shard;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        // Keeps the first result of a shard, before the sweep can see it done
+        synchronized void finish(int shard, Runnable keep) {
+            running[shard]--;
+            if (done[shard])
+                return;
+            keep.run();
+            done[shard] = true;
+            remaining--;
+            notifyAll();
+        }
+
+        // A worker failed, on the given shard or -1
+        synchronized void drop(int shard, String why) {
+            if (shard >= 0) {
+                running[shard]--;
+                if (!done[shard] && running[shard] == 0)
+                    waiting.addFirst(shard);
+            }
+            if (reason == null)
+                reason = why;
+            live--;
+            notifyAll();
+        }
+
+        // Waits until every shard is done, or no worker is left; true if done
+        synchronized boolean await() {
+            while (remaining > 0 && live > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return remaining == 0;
+        }
+    }
+
+    /** Runs in a worker process, talking to the coordinator over stdin and stdout. */
+    static class Worker extends SweepCluster {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private int sweeps;
+
+        // Takes over the standard streams; the script sees empty input and muted output
+        Worker() {
+            in = new DataInputStream(new BufferedInputStream(System.in, 1 << 16));
+            out = new DataOutputStream(new BufferedOutputStream(System.out, 1 << 16));
+            System.setIn(InputStream.nullInputStream());
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @Override
+        boolean serving() {
+            return true;
+        }
+
+        @Override
+        TweakGrid sweep(TweakGrid grid, Token where, Environment globals, List<String> inputs,
+                Supplier<Shards> local) {
+            int sweep = sweeps++;
+            try {
+                if (in.readInt() != SWEEP || in.readInt() != sweep || in.readInt() != grid.points) {
+                    fail("Worker reached a different sweep; the script must run the same way every time.");
+                }
+                // The coordinator's inputs, read in full before any is taken over
+                int count = in.readInt();
+                String[] names = new String[count];
+                Object[] values = new Object[count];
+                String differs = null;
+                for (int i = 0; i < count; i++) {
+                    names[i] = readText(in);
+                    values[i] = readValue(in);
+                    if (values[i] instanceof Description && differs == null
+                            && !values[i].toString().equals(describe(globals.values().get(names[i]), globals)))
+                        differs = names[i];
+                }
+                if (differs != null) {
+                    fail("Worker reached sweep " + (sweep + 1) + " with a different value of '" + differs +
+                            "'; globals other than numbers, strings and booleans must come out the same every run.");
+                }
+                for (int i = 0; i < count; i++) {
+                    if (!(values[i] instanceof Description))
+                        globals.define(names[i], values[i]);
+                }
+                out.writeInt(READY);
+                out.flush();
+                Shards shards = local.get();
+                while (in.readInt() == SHARD) {
+                    int from = in.readInt();
+                    int to = in.readInt();
+                    TweakGrid.Sets sets = shards.solve(from, to);
+                    out.writeInt(RESULT);
+                    out.writeInt(from);
+                    out.writeInt(to);
+                    writeSets(out, sets);
+                    for (int point = from; point < to; point++) {
+                        out.writeInt(grid.setId[point]);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                System.exit(0); // The coordinator is gone; nothing is left to do
+            }
+            return grid;
+        }
+
+        // A value sent as its description
+        private static class Description {
+            final String text;
+
+            Description(String text) {
+                this.text = text;
+            }
+
+            @Override
+            public String toString() {
+                return text;
+            }
+        }
+
+        private Object readValue(DataInputStream in) throws IOException {
+            int kind = in.readInt();
+            switch (kind) {
+                case NIL:
+                    return null;
+                case NUMBER:
+                    return in.readDouble();
+                case STRING:
+                    return readText(in);
+                case BOOLEAN:
+                    return in.readBoolean();
+                case OTHER:
+                    return new Description(readText(in));
+                default:
+                    throw new IOException("Unknown kind of value " + kind + ".");
+            }
+        }
+
+        /** After the script: waits for the coordinator to finish. */
+        void finish() {
+            try {
+                if (in.read() >= 0)
+                    fail("Worker finished the script before the coordinator's sweep.");
+            } catch (IOException e) {
+                // Closed either way
+            }
+        }
+
+        private void fail(String reason) throws IOException {
+            out.writeInt(FAILED);
+            writeText(out, reason);
+            out.flush();
+            System.exit(1);
+        }
+    }
+}
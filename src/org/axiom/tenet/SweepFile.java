@@ -0,0 +1,234 @@
+package org.axiom.tenet;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a tweak grid as a columnar binary file, so tools can load a sweep
+ * of millions of points without parsing text. All numbers are little-endian.
+ *
+ * <pre>
+ * header      "TNSW", int32 version (1), int32 variables, int32 sets, int64 points
+ * variables   per variable: string name
+ * dictionary  per set: int32 profiles; per profile: int32 strategies, then each strategy as a string
+ * padding     zero bytes up to a multiple of 8
+ * columns     per variable: float64[points] of its value at each point; then int32[points] of set ids
+ * </pre>
+ *
+ * A string is an int32 byte count followed by UTF-8 bytes. Points are in
+ * sweep order, the last variable varying fastest, so every column starts
+ * 8-byte aligned and can be mapped straight into an array.
+ *
+ * {@link #read} maps a file back and checks that layout; the export reads
+ * every file it writes back through it.
+ */
+class SweepFile {
+    static final int VERSION = 1;
+    private static final int BUFFER = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+    private long written;
+
+    /** What a sweep file holds, as read back by {@link #read}. */
+    static class Contents {
+        final String[] variables;
+        final int sets;
+        final long points;
+        final long columnsAt; // byte offset of the first column
+        final double[] first; // per variable, its value at the first and last points
+        final double[] last;
+        final long[] count; // points with each set id
+
+        Contents(String[] variables, int sets, long points, long columnsAt, double[] first, double[] last,
+                long[] count) {
+            this.variables = variables;
+            this.sets = sets;
+            this.points = points;
+            this.columnsAt = columnsAt;
+            this.first = first;
+            this.last = last;
+            this.count = count;
+        }
+    }
+
+    private SweepFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the grid to the path, replacing any file there and creating
+     * missing directories; returns the bytes written.
+     */
+    static long write(TweakGrid grid, Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SweepFile file = new SweepFile(channel);
+            file.writeGrid(grid);
+            file.flush();
+            return file.written;
+        }
+    }
+
+    /**
+     * Maps a sweep file and checks its header, the zero padding before the
+     * columns, the file's length and every set id.
+     */
+    static Contents read(Path path) throws IOException {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("files over 2 GB cannot be read back");
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        try {
+            byte[] magic = new byte[4];
+            file.get(magic);
+            if (!new String(magic, StandardCharsets.US_ASCII).equals("TNSW"))
+                throw new IOException("not a sweep file");
+            int version = file.getInt();
+            if (version != VERSION)
+                throw new IOException("unknown version " + version);
+            int variableCount = file.getInt();
+            int sets = file.getInt();
+            long points = file.getLong();
+            if (variableCount < 0 || sets < 0 || points < 0)
+                throw new IOException("negative count in header");
+            String[] variables = new String[variableCount];
+            for (int v = 0; v < variables.length; v++) {
+                variables[v] = getString(file);
+            }
+            for (int set = 0; set < sets; set++) {
+                int profiles = file.getInt();
+                for (int p = 0; p < profiles; p++) {
+                    int strategies = file.getInt();
+                    for (int k = 0; k < strategies; k++) {
+                        getString(file);
+                    }
+                }
+            }
+            while (file.position() % 8 != 0) {
+                if (file.get() != 0)
+                    throw new IOException("padding at byte " + (file.position() - 1) + " is not zero");
+            }
+            long columnsAt = file.position();
+            long length = columnsAt + points * (8L * variables.length + 4);
+            if (file.limit() != length)
+                throw new IOException(file.limit() + " bytes where the header implies " + length);
+
+            double[] first = new double[variables.length];
+            double[] last = new double[variables.length];
+            for (int v = 0; v < variables.length && points > 0; v++) {
+                int at = (int) (columnsAt + v * points * 8);
+                first[v] = file.getDouble(at);
+                last[v] = file.getDouble(at + (int) (points - 1) * 8);
+            }
+            long[] count = new long[sets];
+            int ids = (int) (columnsAt + variables.length * points * 8);
+            for (long point = 0; point < points; point++) {
+                int id = file.getInt(ids + (int) point * 4);
+                if (id < 0 || id >= sets)
+                    throw new IOException("set id " + id + " at point " + point + " is not in the dictionary");
+                count[id]++;
+            }
+            return new Contents(variables, sets, points, columnsAt, first, last, count);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("file ends early");
+        }
+    }
+
+    private static String getString(ByteBuffer file) throws IOException {
+        int length = file.getInt();
+        if (length < 0 || length > file.remaining())
+            throw new IOException("string of " + length + " bytes at byte " + (file.position() - 4));
+        byte[] bytes = new byte[length];
+        file.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeGrid(TweakGrid grid) throws IOException {
+        room(24);
+        buffer.put("TNSW".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(VERSION);
+        buffer.putInt(grid.values.length);
+        buffer.putInt(grid.sets.list.size());
+        buffer.putLong(grid.points);
+        for (Stmt.TweakRange range : grid.ranges) {
+            putString(range.variable.lexeme);
+        }
+        for (List<StrategyProfile> set : grid.sets.list) {
+            room(4);
+            buffer.putInt(set.size());
+            for (StrategyProfile profile : set) {
+                room(4);
+                buffer.putInt(profile.strategies.size());
+                for (Token strategy : profile.strategies) {
+                    putString(strategy.lexeme);
+                }
+            }
+        }
+        room(8);
+        while ((written + buffer.position()) % 8 != 0) {
+            buffer.put((byte) 0);
+        }
+
+        // Each variable's value repeats for every point of the variables after it
+        for (int v = 0; v < grid.values.length; v++) {
+            double[] values = grid.values[v];
+            int repeat = grid.points;
+            for (int u = 0; u <= v; u++) {
+                repeat /= grid.values[u].length;
+            }
+            int index = 0;
+            int run = 0;
+            for (int point = 0; point < grid.points; point++) {
+                room(8);
+                buffer.putDouble(values[index]);
+                if (++run == repeat) {
+                    run = 0;
+                    index = index + 1 == values.length ? 0 : index + 1;
+                }
+            }
+        }
+        for (int point = 0; point < grid.points; point++) {
+            room(4);
+            buffer.putInt(grid.setId[point]);
+        }
+    }
+
+    private void putString(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        room(4);
+        buffer.putInt(bytes.length);
+        for (int at = 0; at < bytes.length; at += BUFFER) {
+            int length = Math.min(BUFFER, bytes.length - at);
+            room(length);
+            buffer.put(bytes, at, length);
+        }
+    }
+
+    // Flushes first unless the buffer has room for the given bytes
+    private void room(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -27,9 +27,13 @@ public class Tenet {
                 generateGraph(args[1], "tree");
             } else if (args[0].equals("--matrix")) {
                 generateGraph(args[1], "matrix");
+            } else if (args[0].equals("--sweep-worker")) {
+                runSweepWorker(args[1]);
             } else {
                 printHelp();
             }
+        } else if (args.length == 3 && args[0].equals("--sweep-workers")) {
+            runSweepCoordinator(args[1], args[2]);
         } else {
             printHelp();
         }
@@ -43,6 +47,8 @@ public class Tenet {
         System.out.println("  tenet <file>             Run a .tenet file");
         System.out.println("  tenet --graph <file>     Generate game tree (DOT format)");
         System.out.println("  tenet --matrix <file>    Generate payoff matrix (DOT format)");
+        System.out.println("  tenet --sweep-workers <n> <file>");
+        System.out.println("                           Run a .tenet file, spreading grid tweaks over n processes");
         System.out.println("  tenet --help             Show this help message");
         System.out.println();
         System.out.println("Examples:");
@@ -93,6 +99,29 @@ public class Tenet {
             System.exit(70);
     }
 
+    private static void runSweepCoordinator(String workers, String path) throws IOException {
+        int size;
+        try {
+            size = Integer.parseInt(workers);
+        } catch (NumberFormatException e) {
+            size = 0;
+        }
+        if (size < 1) {
+            System.err.println("Expect a positive number of sweep workers.");
+            System.exit(64);
+        }
+        interpreter.cluster = new SweepCluster.Coordinator(size, path);
+        runFile(path);
+    }
+
+    // Started by a coordinator; replays the script, solving the grid shards it is sent
+    private static void runSweepWorker(String path) throws IOException {
+        SweepCluster.Worker worker = new SweepCluster.Worker();
+        interpreter.cluster = worker;
+        runFile(path);
+        worker.finish();
+    }
+
     // ANSI Color Codes
     private static final String RESET = "\u001B[0m";
     private static final String BOLD = "\u001B[1m";
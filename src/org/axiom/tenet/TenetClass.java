@@ -1,5 +1,6 @@
 package org.axiom.tenet;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -14,6 +15,10 @@ class TenetClass implements TenetCallable {
         this.methods = methods;
     }
 
+    Map<String, TenetFunction> methods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
     TenetFunction findMethod(String name) {
         if (methods.containsKey(name)) {
             return methods.get(name);
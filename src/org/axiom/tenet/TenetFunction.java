@@ -19,6 +19,19 @@ class TenetFunction implements TenetCallable {
         return new TenetFunction(declaration, environment, isInitializer);
     }
 
+    TenetFunction withClosure(Environment closure) {
+        return new TenetFunction(declaration, closure, isInitializer);
+    }
+
+    Environment closure() {
+        return closure;
+    }
+
+    // Line of the declaration, telling apart functions of the same name
+    int line() {
+        return declaration.name.line;
+    }
+
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         Environment environment = new Environment(closure);
@@ -1,5 +1,6 @@
 package org.axiom.tenet;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +29,22 @@ class TenetInstance {
         fields.put(name.lexeme, value);
     }
 
+    void set(String name, Object value) {
+        fields.put(name, value);
+    }
+
+    TenetClass klass() {
+        return klass;
+    }
+
+    String className() {
+        return klass.name;
+    }
+
+    Map<String, Object> fields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
     @Override
     public String toString() {
         return klass.name + " instance";
@@ -18,6 +18,30 @@ enum TokenType {
     // Sequential game tokens
     SEQUENTIAL, NODE, MOVE, ARROW, VISUALIZE,
 
+    // Repeated game tokens
+    REPEATED, AUTOMATON, TOURNAMENT,
+
+    // Stochastic game tokens
+    STOCHASTIC,
+
+    // Bayesian game tokens
+    BAYESIAN, PIPE,
+
+    // Cooperative game tokens
+    COALITION,
+
+    // Matching market tokens
+    MATCH,
+
+    // Mechanism optimizer tokens
+    OPTIMIZE, LEFT_BRACKET, RIGHT_BRACKET,
+
+    // Sensitivity analysis tokens
+    SENSITIVITY, TILDE,
+
+    // Auction simulation tokens
+    AUCTION,
+
     EOF
 
 }
@@ -0,0 +1,171 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Round-robin tournament of repeated-game strategies, every pair (and every
+ * strategy against itself) playing one match. Matches are independent, so
+ * they are spread over a thread pool. The interpreter is not thread-safe:
+ * each worker owns an isolated copy, and its globals are reset from the
+ * snapshot before every match, so a strategy that keeps state in global
+ * variables sees the same start whichever worker runs it and in whatever
+ * order.
+ */
+class Tournament {
+
+    /** One side of a match, fresh for every match. */
+    interface Player {
+        // Index of the action to play; last moves are -1 in the first round
+        int move(int round, int myLast, int theirLast);
+    }
+
+    /** A strategy entered in the tournament. */
+    interface Entrant {
+        String name();
+
+        Player start(Interpreter interpreter, Snapshot snapshot);
+    }
+
+    /** Strategy written as a Tenet function of (round, myLast, theirLast). */
+    static Entrant function(Token name, TenetFunction function, List<Token> actions) {
+        return new Entrant() {
+            @Override
+            public String name() {
+                return name.lexeme;
+            }
+
+            @Override
+            public Player start(Interpreter interpreter, Snapshot snapshot) {
+                TenetFunction own = (TenetFunction) snapshot.copy(function);
+                return (round, myLast, theirLast) -> {
+                    Object action = own.call(interpreter, Arrays.asList((double) round,
+                            myLast < 0 ? null : actions.get(myLast).lexeme,
+                            theirLast < 0 ? null : actions.get(theirLast).lexeme));
+                    for (int a = 0; a < actions.size(); a++) {
+                        if (actions.get(a).lexeme.equals(action))
+                            return a;
+                    }
+                    throw new RuntimeError(name, "Strategy '" + name.lexeme + "' returned " +
+                            (action instanceof String ? "'" + action + "'" : "a value") +
+                            " in round " + round + ", which is not an action of this game.");
+                };
+            }
+        };
+    }
+
+    /** Built-in or declared automaton strategy. */
+    static Entrant automaton(RepeatedGameSolver.Automaton automaton) {
+        return new Entrant() {
+            @Override
+            public String name() {
+                return automaton.name;
+            }
+
+            @Override
+            public Player start(Interpreter interpreter, Snapshot snapshot) {
+                int[] state = new int[1];
+                return (round, myLast, theirLast) -> {
+                    if (theirLast >= 0)
+                        state[0] = automaton.next[state[0]][theirLast];
+                    return automaton.play[state[0]];
+                };
+            }
+        };
+    }
+
+    private final double[][][] stage; // stage[a][b][player]
+    private final int rounds;
+    private final List<Entrant> entrants;
+
+    final double[][] score; // score[i][j]: average per round of i against j
+    final long[][] nanos; // time of the match between i and j, i <= j
+    long wallNanos;
+
+    Tournament(double[][][] stage, int rounds, List<Entrant> entrants) {
+        this.stage = stage;
+        this.rounds = rounds;
+        this.entrants = entrants;
+        int k = entrants.size();
+        this.score = new double[k][k];
+        this.nanos = new long[k][k];
+    }
+
+    /**
+     * Plays all k(k + 1)/2 matches on the given number of threads. If any
+     * match fails, the error of the first failing match in round-robin order
+     * is thrown.
+     */
+    void run(Interpreter source, int threads) {
+        int k = entrants.size();
+        ThreadLocal<Interpreter> worker = ThreadLocal.withInitial(() -> Snapshot.isolate(source));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> matches = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                for (int j = i; j < k; j++) {
+                    int row = i;
+                    int column = j;
+                    matches.add(pool.submit(() -> {
+                        Interpreter interpreter = worker.get();
+                        play(interpreter, Snapshot.restore(source, interpreter), row, column);
+                    }));
+                }
+            }
+            for (Future<?> match : matches) {
+                match.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        wallNanos = System.nanoTime() - start;
+    }
+
+    private void play(Interpreter interpreter, Snapshot snapshot, int i, int j) {
+        long start = System.nanoTime();
+        Player row = entrants.get(i).start(interpreter, snapshot);
+        Player column = entrants.get(j).start(interpreter, snapshot);
+        double rowTotal = 0;
+        double columnTotal = 0;
+        int a = -1;
+        int b = -1;
+        for (int round = 1; round <= rounds; round++) {
+            int nextA = row.move(round, a, b);
+            b = column.move(round, b, a);
+            a = nextA;
+            rowTotal += stage[a][b][0];
+            columnTotal += stage[a][b][1];
+        }
+        // Each cell is written by exactly one match
+        score[i][j] = rowTotal / rounds;
+        if (i != j)
+            score[j][i] = columnTotal / rounds;
+        nanos[i][j] = System.nanoTime() - start;
+    }
+
+    /** Average score of each entrant over all its matches, self-play included. */
+    double[] averages() {
+        int k = entrants.size();
+        double[] average = new double[k];
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                average[i] += score[i][j];
+            }
+            average[i] /= k;
+        }
+        return average;
+    }
+}
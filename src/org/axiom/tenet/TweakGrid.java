@@ -0,0 +1,143 @@
+package org.axiom.tenet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a tweak over one or more variables. Each point of the grid holds
+ * only an id into a table of the distinct equilibrium sets found, so a grid
+ * of a million points takes about 4 MB however many equilibria it has.
+ * Points are numbered with the last variable varying fastest, and ids are
+ * given in order of first appearance.
+ */
+class TweakGrid {
+    static final int POINT_LIMIT = 1 << 27;
+
+    final List<Stmt.TweakRange> ranges;
+    final double[][] values; // per variable, in sweep order
+    final int points;
+    final int[] setId; // per point
+    final Sets sets = new Sets();
+
+    /** Distinct equilibrium sets, each given the next id when first seen. */
+    static class Sets {
+        final List<List<StrategyProfile>> list = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        int intern(List<StrategyProfile> equilibria) {
+            String key = key(equilibria);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = list.size();
+                ids.put(key, id);
+                list.add(equilibria);
+            }
+            return id;
+        }
+
+        /** Rewrites ids from..to-1 from the chunk's table to this one, as TweakGrid.merge does. */
+        void merge(int[] setId, int from, int to, Sets chunk) {
+            int[] global = new int[chunk.list.size()];
+            for (int id = 0; id < global.length; id++) {
+                global[id] = intern(chunk.list.get(id));
+            }
+            for (int point = from; point < to; point++) {
+                setId[point] = global[setId[point]];
+            }
+        }
+
+        static boolean same(List<StrategyProfile> a, List<StrategyProfile> b) {
+            return a == b || key(a).equals(key(b));
+        }
+
+        static String key(List<StrategyProfile> equilibria) {
+            StringBuilder key = new StringBuilder();
+            for (StrategyProfile profile : equilibria) {
+                for (Token strategy : profile.strategies) {
+                    key.append(strategy.lexeme).append(',');
+                }
+                key.append(';');
+            }
+            return key.toString();
+        }
+    }
+
+    /** A change of equilibria found by an adaptive sweep, somewhere in (below, above]. */
+    static class Threshold {
+        final double below;
+        final double above;
+        final List<StrategyProfile> equilibria; // from the threshold on
+
+        Threshold(double below, double above, List<StrategyProfile> equilibria) {
+            this.below = below;
+            this.above = above;
+            this.equilibria = equilibria;
+        }
+    }
+
+    TweakGrid(List<Stmt.TweakRange> ranges) {
+        this.ranges = ranges;
+        this.values = new double[ranges.size()][];
+        long total = 1;
+        for (int v = 0; v < values.length; v++) {
+            Stmt.TweakRange range = ranges.get(v);
+            // The same accumulation as a single-variable sweep, so the points match it
+            List<Double> sweep = new ArrayList<>();
+            for (double value = range.fromValue; value <= range.toValue; value += range.stepValue) {
+                sweep.add(value);
+            }
+            values[v] = sweep.stream().mapToDouble(Double::doubleValue).toArray();
+            total *= values[v].length;
+            if (total > POINT_LIMIT) {
+                throw new RuntimeError(range.variable, "A tweak grid can have at most " + POINT_LIMIT + " points.");
+            }
+        }
+        this.points = (int) total;
+        this.setId = new int[points];
+    }
+
+    /** A grid along one variable at the given values. */
+    TweakGrid(Stmt.TweakRange range, double[] values) {
+        this.ranges = Collections.singletonList(range);
+        this.values = new double[][] { values };
+        this.points = values.length;
+        this.setId = new int[points];
+    }
+
+    int coordinate(int point, int variable) {
+        for (int v = values.length - 1; v > variable; v--) {
+            point /= values[v].length;
+        }
+        return point % values[variable].length;
+    }
+
+    /** First variable whose value differs between two points, or the variable count if none does. */
+    int firstChange(int from, int to) {
+        for (int v = 0; v < values.length; v++) {
+            if (coordinate(from, v) != coordinate(to, v))
+                return v;
+        }
+        return values.length;
+    }
+
+    /**
+     * Rewrites a chunk's points from ids in its own table to ids in this
+     * grid's. Merging chunks in sweep order keeps ids in order of first
+     * appearance.
+     */
+    void merge(int from, int to, Sets chunk) {
+        sets.merge(setId, from, to, chunk);
+    }
+
+    /** Points with each set id. */
+    int[] counts() {
+        int[] count = new int[sets.list.size()];
+        for (int id : setId) {
+            count[id]++;
+        }
+        return count;
+    }
+}
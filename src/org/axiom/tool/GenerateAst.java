@@ -47,7 +47,7 @@ public class GenerateAst {
                 "While      : Expr condition, Stmt body",
                 // Game Theory extensions
                 "Game       : Token name, List<Token> players, List<Token> strategies, java.util.Map<Token, java.util.Map<StrategyProfile, Expr>> payoffs",
-                "Solve      : Token gameName, Token algorithm"));
+                "Solve      : Token gameName, Token algorithm, java.util.Map<Token, Token> options"));
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types)
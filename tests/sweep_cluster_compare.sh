@@ -0,0 +1,18 @@
+#!/bin/sh
+# Runs a script in one process and spread over sweep workers, and fails if
+# the outputs differ. Run from the repository root after compiling into out/:
+#
+#   tests/sweep_cluster_compare.sh [script] [workers]
+script=${1:-tests/sweep_cluster_test.tenet}
+workers=${2:-3}
+classes=${TENET_CLASSES:-out}
+plain=$(mktemp)
+cluster=$(mktemp)
+trap 'rm -f "$plain" "$cluster"' EXIT
+java -cp "$classes" org.axiom.tenet.Tenet "$script" > "$plain" || exit 1
+java -cp "$classes" org.axiom.tenet.Tenet --sweep-workers "$workers" "$script" > "$cluster" || exit 1
+if ! diff "$plain" "$cluster"; then
+    echo "Outputs differ for $script with $workers sweep workers."
+    exit 1
+fi
+echo "Same output for $script in one process and over $workers sweep workers."